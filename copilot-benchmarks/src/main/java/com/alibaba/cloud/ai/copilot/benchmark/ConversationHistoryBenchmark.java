@@ -0,0 +1,107 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.ConversationFixtures;
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.LegacyMessageConverter;
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.alibaba.cloud.ai.copilot.service.message.ChatMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话历史还原基准
+ * <p>
+ * 覆盖 ConversationHistoryHook 加载历史时的两步：ChatMessageConverter 把 chat_message 记录还原为消息，
+ * 以及 validateAndFixToolCallChain 修复工具调用链。brokenRatio 控制缺少工具响应的比例，
+ * 用于观察修复路径（移除 tool_calls、重建 AssistantMessage）的开销随会话长度的变化，修复应与会话长度保持线性。
+ * </p>
+ * <p>
+ * *Legacy 方法使用 {@link LegacyMessageConverter}（原先的逐行 Map 解析、每次反射构造和向后扫描的修复）作为对照。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ConversationHistoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int messageCount;
+
+    @Param({"0", "0.02"})
+    private double brokenRatio;
+
+    @Param({"4096"})
+    private int fileChars;
+
+    private final ChatMessageConverter converter = new ChatMessageConverter();
+    private final LegacyMessageConverter legacyConverter = new LegacyMessageConverter();
+
+    private List<ChatMessageEntity> entities;
+    private List<Message> messages;
+
+    @Setup
+    public void setUp() {
+        entities = ConversationFixtures.conversation(messageCount, brokenRatio, fileChars, 42L);
+        messages = ConversationFixtures.messages(entities);
+    }
+
+    @Benchmark
+    public List<Message> convert() {
+        List<Message> result = new ArrayList<>(entities.size());
+        for (ChatMessageEntity entity : entities) {
+            Message message = converter.convert(entity);
+            if (message != null) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Message> repairToolCallChain() {
+        return converter.validateAndFixToolCallChain(messages);
+    }
+
+    @Benchmark
+    public List<Message> convertAndRepair() {
+        return converter.validateAndFixToolCallChain(convert());
+    }
+
+    @Benchmark
+    public List<Message> convertLegacy() {
+        List<Message> result = new ArrayList<>(entities.size());
+        for (ChatMessageEntity entity : entities) {
+            Message message = legacyConverter.convert(entity);
+            if (message != null) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Message> repairToolCallChainLegacy() {
+        return legacyConverter.validateAndFixToolCallChain(messages);
+    }
+
+    @Benchmark
+    public List<Message> convertAndRepairLegacy() {
+        return legacyConverter.validateAndFixToolCallChain(convertLegacy());
+    }
+}
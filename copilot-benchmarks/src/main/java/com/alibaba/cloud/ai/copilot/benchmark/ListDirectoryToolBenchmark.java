@@ -0,0 +1,101 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.ConversationFixtures;
+import com.alibaba.cloud.ai.copilot.tools.ListDirectoryTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 目录列表工具基准
+ * <p>
+ * 在临时目录下生成一个前端项目结构的 workspace（每层 fanout 个子目录、每个目录 filesPerDir 个文件），
+ * 测量 ListDirectoryTool 的单层列表和递归遍历（默认深度 3）。
+ * 工具以 user.dir/workspace 为根目录，构造工具前临时切换 user.dir。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListDirectoryToolBenchmark {
+
+    @Param({"4", "8"})
+    private int fanout;
+
+    @Param({"20"})
+    private int filesPerDir;
+
+    @Param({"false", "true"})
+    private boolean recursive;
+
+    private Path root;
+    private ListDirectoryTool tool;
+    private ListDirectoryTool.ListDirectoryParams params;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("copilot-bench").toRealPath();
+        Path workspace = Files.createDirectories(root.resolve("workspace"));
+        createTree(workspace.resolve("src"), 3, new Random(fanout));
+        Files.writeString(workspace.resolve("package.json"), "{\"name\":\"demo\",\"private\":true}");
+        Files.writeString(workspace.resolve("index.html"), "<!doctype html><div id=\"app\"></div>");
+
+        String userDir = System.getProperty("user.dir");
+        System.setProperty("user.dir", root.toString());
+        try {
+            tool = new ListDirectoryTool();
+        } finally {
+            System.setProperty("user.dir", userDir);
+        }
+        params = new ListDirectoryTool.ListDirectoryParams();
+        params.filePath = workspace.toString();
+        params.recursive = recursive;
+        params.maxDepth = 3;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String listDirectory() {
+        return tool.apply(params, null);
+    }
+
+    private void createTree(Path dir, int depth, Random random) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < filesPerDir; i++) {
+            String name = (i % 2 == 0 ? "Component" : "use-feature-") + i + (i % 3 == 0 ? ".ts" : ".vue");
+            Files.writeString(dir.resolve(name), ConversationFixtures.sourceFile(512 + random.nextInt(8192), random));
+        }
+        if (depth <= 1) {
+            return;
+        }
+        for (int i = 0; i < fanout; i++) {
+            createTree(dir.resolve("module" + i), depth - 1, random);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话消息分页基准（需要 MySQL）
+ * <p>
+ * 在 chat_message 表中为一个临时会话写入 messageCount 条种子消息（混入 tool 消息和空内容消息，
+ * created_time 按秒重复），对比原 OFFSET 分页与 (created_time, id) 游标分页在不同翻页深度下读取一页的耗时。
+ * SQL 与 ChatMessageMapper 中的 selectByConversationIdWithPagination / selectPageBefore 保持一致。
+ * 结束后删除种子数据。
+ * </p>
+ * <p>
+ * 通过 -p jdbcUrl=... -p username=... -p password=... 指定数据库（需已执行 docs/scripts/sql 中的建表脚本）。
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessagePaginationBenchmark {
+
+    private static final String OFFSET_PAGE_SQL = "SELECT * FROM chat_message WHERE conversation_id = ? "
+            + "ORDER BY created_time DESC, id DESC LIMIT ? OFFSET ?";
+
+    private static final String KEYSET_PAGE_SQL = "SELECT * FROM chat_message WHERE conversation_id = ? "
+            + "AND created_time <= ? AND (created_time < ? OR id < ?) "
+            + "AND role IN ('user', 'assistant') AND (is_compressed = 0 OR is_compressed IS NULL) "
+            + "AND content IS NOT NULL AND TRIM(content) <> '' "
+            + "ORDER BY created_time DESC, id DESC LIMIT ?";
+
+    private static final String INSERT_SQL = "INSERT INTO chat_message "
+            + "(id, conversation_id, message_id, role, content, is_compressed, created_time, updated_time) "
+            + "VALUES (?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Param({"jdbc:mysql://localhost:3306/spring_ai_copilot?rewriteBatchedStatements=true"})
+    private String jdbcUrl;
+
+    @Param({"root"})
+    private String username;
+
+    @Param({""})
+    private String password;
+
+    @Param({"100000"})
+    private int messageCount;
+
+    @Param({"50"})
+    private int pageSize;
+
+    /**
+     * 翻页深度（从最新消息往前的比例）
+     */
+    @Param({"0.01", "0.5", "0.99"})
+    private double depth;
+
+    private Connection connection;
+    private String conversationId;
+    private int offset;
+    private Timestamp cursorTime;
+    private long cursorId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(jdbcUrl, username, password);
+        conversationId = "bench-" + UUID.randomUUID();
+        seed();
+        offset = (int) (messageCount * depth);
+        // 游标取 OFFSET 分页在同一深度读到的第一条消息之前的那一条
+        try (PreparedStatement statement = connection.prepareStatement(OFFSET_PAGE_SQL)) {
+            statement.setString(1, conversationId);
+            statement.setInt(2, 1);
+            statement.setInt(3, Math.max(0, offset - 1));
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                cursorTime = rs.getTimestamp("created_time");
+                cursorId = rs.getLong("id");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM chat_message WHERE conversation_id = ?")) {
+            statement.setString(1, conversationId);
+            statement.executeUpdate();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int offsetPage() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(OFFSET_PAGE_SQL)) {
+            statement.setString(1, conversationId);
+            statement.setInt(2, pageSize);
+            statement.setInt(3, offset);
+            return drain(statement);
+        }
+    }
+
+    @Benchmark
+    public int keysetPage() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(KEYSET_PAGE_SQL)) {
+            statement.setString(1, conversationId);
+            statement.setTimestamp(2, cursorTime);
+            statement.setTimestamp(3, cursorTime);
+            statement.setLong(4, cursorId);
+            statement.setInt(5, pageSize);
+            return drain(statement);
+        }
+    }
+
+    private static int drain(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rs.getString("content");
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 写入种子消息：每 3 条共用一个秒级 created_time；约 10% 为 tool 消息，约 2% 内容为空
+     */
+    private void seed() throws SQLException {
+        Random random = new Random(42L);
+        LocalDateTime base = LocalDateTime.now().withNano(0).minusSeconds(messageCount);
+        long baseId = System.currentTimeMillis() * 1000;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+            for (int i = 0; i < messageCount; i++) {
+                String role = random.nextInt(10) == 0 ? "tool" : (i % 2 == 0 ? "user" : "assistant");
+                String content = random.nextInt(50) == 0 ? "" : "message " + i + " " + "x".repeat(random.nextInt(400));
+                Timestamp createdTime = Timestamp.valueOf(base.plusSeconds(i / 3));
+                statement.setLong(1, baseId + i);
+                statement.setString(2, conversationId);
+                statement.setString(3, UUID.randomUUID().toString());
+                statement.setString(4, role);
+                statement.setString(5, content);
+                statement.setTimestamp(6, createdTime);
+                statement.setTimestamp(7, createdTime);
+                statement.addBatch();
+                if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.utils.PathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路径规范化基准
+ * <p>
+ * 每个工具事件都会调用 PathUtils.normalizeWorkspacePath，
+ * 样本覆盖 Windows / Linux 绝对路径、已规范化路径、多余的前导斜杠和不在 workspace 下的路径。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathUtilsBenchmark {
+
+    private static final String[] PATHS = {
+        "D:\\project\\alicode\\copilot\\workspace\\src\\components\\TodoList.vue",
+        "C:\\Users\\dev\\AppData\\Local\\copilot\\workspace\\package.json",
+        "/home/app/copilot/workspace/src/views/dashboard/widgets/RevenueChart.vue",
+        "/pro/aicode/workspace/index.html",
+        "workspace/src/main.ts",
+        "///workspace/src/router/index.ts",
+        "/opt/data/myworkspace/notes.md",
+        "/var/lib/copilot/projects/demo/src/App.vue"
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void normalizeWorkspacePath(Blackhole blackhole) {
+        for (String path : PATHS) {
+            blackhole.consume(PathUtils.normalizeWorkspacePath(path));
+        }
+    }
+}
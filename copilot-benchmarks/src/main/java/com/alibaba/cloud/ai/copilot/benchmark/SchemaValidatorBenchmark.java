@@ -0,0 +1,81 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.ConversationFixtures;
+import com.alibaba.cloud.ai.copilot.domain.schema.JsonSchema;
+import com.alibaba.cloud.ai.copilot.domain.schema.SchemaValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具参数校验基准
+ * <p>
+ * 使用与 edit_file 工具一致的参数结构，content 为整段文件内容。
+ * valid 为校验通过的参数，invalid 缺少必填字段且 replace_count 越界。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaValidatorBenchmark {
+
+    @Param({"256", "65536"})
+    private int contentChars;
+
+    private final SchemaValidator validator = new SchemaValidator();
+
+    private JsonSchema schema;
+    private Map<String, Object> valid;
+    private Map<String, Object> invalid;
+
+    @Setup
+    public void setUp() {
+        schema = JsonSchema.object()
+            .addProperty("file_path", JsonSchema.string("Absolute path of the file to edit")
+                .pattern("^(/|[A-Za-z]:\\\\).+"))
+            .addProperty("old_string", JsonSchema.string("Exact text to replace"))
+            .addProperty("new_string", JsonSchema.string("Replacement text"))
+            .addProperty("replace_count", JsonSchema.integer("Expected number of replacements")
+                .minimum(1).maximum(100))
+            .addProperty("mode", JsonSchema.string("Edit mode").enumValues("replace", "append", "prepend"))
+            .required("file_path", "old_string", "new_string");
+
+        Random random = new Random(contentChars);
+        valid = new HashMap<>();
+        valid.put("file_path", "/home/app/workspace/src/App.vue");
+        valid.put("old_string", ConversationFixtures.sourceFile(contentChars, random));
+        valid.put("new_string", ConversationFixtures.sourceFile(contentChars, random));
+        valid.put("replace_count", 1);
+        valid.put("mode", "replace");
+
+        invalid = new HashMap<>(valid);
+        invalid.remove("new_string");
+        invalid.put("replace_count", 1000);
+    }
+
+    @Benchmark
+    public String validateValid() {
+        return validator.validate(schema, valid);
+    }
+
+    @Benchmark
+    public String validateInvalid() {
+        return validator.validate(schema, invalid);
+    }
+}
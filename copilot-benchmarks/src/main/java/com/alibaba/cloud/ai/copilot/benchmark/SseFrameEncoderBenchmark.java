@@ -0,0 +1,126 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.ConversationFixtures;
+import com.alibaba.cloud.ai.copilot.service.stream.SseFrameEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 帧编码基准
+ * <p>
+ * 对比 SseEventServiceImpl 使用的 SseFrameEncoder 与原先的写法
+ * （构建 Map → ObjectMapper 序列化为字符串 → SseEmitter.event() 拼帧 → 写出时再转 UTF-8）。
+ * payloadChars 覆盖单个 token、思考片段和整段文件内容三种量级。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseFrameEncoderBenchmark {
+
+    @Param({"8", "512", "16384"})
+    private int payloadChars;
+
+    private final SseFrameEncoder encoder = new SseFrameEncoder();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String payload;
+    private String filePath;
+
+    @Setup
+    public void setUp() {
+        payload = ConversationFixtures.sourceFile(payloadChars, new Random(payloadChars));
+        filePath = "workspace/src/components/TodoList.vue";
+    }
+
+    @Benchmark
+    public byte[] chatContentEncoder() throws Exception {
+        return encoder.encodeChatContent(payload);
+    }
+
+    @Benchmark
+    public long chatContentLegacy() throws Exception {
+        Map<String, Object> delta = new HashMap<>();
+        delta.put("content", payload);
+        Map<String, Object> choice = new HashMap<>();
+        choice.put("delta", delta);
+        choice.put("finish_reason", null);
+        Map<String, Object> data = new HashMap<>();
+        data.put("choices", Arrays.asList(choice));
+        return legacyFrame(SseEmitter.event().data(objectMapper.writeValueAsString(data)));
+    }
+
+    @Benchmark
+    public byte[] fileEditProgressEncoder() throws Exception {
+        return encoder.encodeFileEditProgress(filePath, payload, 0);
+    }
+
+    @Benchmark
+    public long fileEditProgressLegacy() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("event", "edit-progress");
+        data.put("messageId", UUID.randomUUID().toString());
+        data.put("operationId", UUID.randomUUID().toString());
+        data.put("data", Map.of(
+            "type", "edit-progress",
+            "filePath", filePath,
+            "content", payload
+        ));
+        return legacyFrame(SseEmitter.event().name("edit-progress").data(objectMapper.writeValueAsString(data)));
+    }
+
+    @Benchmark
+    public byte[] thinkingEncoder() throws Exception {
+        return encoder.encodeThinking(payload);
+    }
+
+    @Benchmark
+    public byte[] genericEventEncoder() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("event", "edit-progress");
+        data.put("messageId", encoder.nextOperationId());
+        data.put("operationId", encoder.nextOperationId());
+        data.put("data", Map.of(
+            "type", "add",
+            "filePath", filePath,
+            "content", payload
+        ));
+        return encoder.encodeEvent("edit-progress", data);
+    }
+
+    /**
+     * 原写法的帧最终由 StringHttpMessageConverter 逐段转成 UTF-8 写出
+     */
+    private static long legacyFrame(SseEmitter.SseEventBuilder event) {
+        Set<ResponseBodyEmitter.DataWithMediaType> parts = event.build();
+        long bytes = 0;
+        for (ResponseBodyEmitter.DataWithMediaType part : parts) {
+            bytes += part.getData().toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+}
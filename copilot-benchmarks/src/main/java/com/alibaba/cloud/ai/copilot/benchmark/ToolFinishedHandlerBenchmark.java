@@ -0,0 +1,155 @@
+package com.alibaba.cloud.ai.copilot.benchmark;
+
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.ConversationFixtures;
+import com.alibaba.cloud.ai.copilot.benchmark.fixture.RecordingSseEventService;
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.handler.ToolFinishedHandler;
+import com.alibaba.cloud.ai.copilot.service.stream.FileContentStreamer;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工具完成事件处理基准
+ * <p>
+ * 模拟一次 ReactAgent 运行：每轮工具调用结束都会产生一个 AGENT_TOOL_FINISHED 输出，
+ * 其状态中携带到目前为止的完整消息列表。基准测量处理整次运行所有输出的耗时，
+ * 即随着消息列表增长，ToolFinishedHandler 是否只处理新增的部分。
+ * </p>
+ * <p>
+ * messageShape 为 message 时消息是 Spring AI 对象；为 map 时是从检查点恢复的 Map 结构。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolFinishedHandlerBenchmark {
+
+    @Param({"10", "100"})
+    private int toolRounds;
+
+    @Param({"8192"})
+    private int fileChars;
+
+    @Param({"message", "map"})
+    private String messageShape;
+
+    private RecordingSseEventService sseEventService;
+    private ScheduledExecutorService scheduler;
+    private ToolFinishedHandler handler;
+    private List<StreamingOutput<?>> outputs;
+
+    @Setup
+    public void setUp() {
+        sseEventService = new RecordingSseEventService();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        handler = new ToolFinishedHandler(sseEventService,
+            new FileContentStreamer(sseEventService, new ChatProperties(), scheduler));
+
+        Random random = new Random(7L);
+        boolean asMap = "map".equals(messageShape);
+        List<Object> messages = new ArrayList<>();
+        messages.add(asMap ? userMap("实现一个待办事项应用") : new UserMessage("实现一个待办事项应用"));
+        outputs = new ArrayList<>(toolRounds);
+        for (int round = 0; round < toolRounds; round++) {
+            String toolCallId = "call_" + round;
+            String toolName = round % 3 == 0 ? "edit_file" : "write_file";
+            String arguments = ConversationFixtures.arguments(
+                "/home/app/workspace/src/components/Component" + round + ".vue",
+                ConversationFixtures.sourceFile(fileChars, random));
+            if (asMap) {
+                messages.add(assistantMap(toolCallId, toolName, arguments));
+                messages.add(toolResponseMap(toolCallId, toolName));
+            } else {
+                messages.add(AssistantMessage.builder()
+                    .content("")
+                    .toolCalls(List.of(new AssistantMessage.ToolCall(toolCallId, "function", toolName, arguments)))
+                    .build());
+                messages.add(ToolResponseMessage.builder()
+                    .responses(List.of(new ToolResponseMessage.ToolResponse(toolCallId, toolName, "ok")))
+                    .build());
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("messages", new ArrayList<>(messages));
+            OverAllState state = new OverAllState(data);
+            Message last = asMap ? null : (Message) messages.get(messages.size() - 1);
+            outputs.add(new StreamingOutput<>(last, "_AGENT_TOOL_", "copilot", state, OutputType.AGENT_TOOL_FINISHED));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public long handleRun() {
+        SseEmitter emitter = new SseEmitter();
+        for (StreamingOutput<?> output : outputs) {
+            handler.handle(output, emitter);
+        }
+        handler.release(emitter);
+        return sseEventService.getBytes();
+    }
+
+    private static Map<String, Object> userMap(String text) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("messageType", "USER");
+        message.put("text", text);
+        return message;
+    }
+
+    private static Map<String, Object> assistantMap(String toolCallId, String toolName, String arguments) {
+        Map<String, Object> toolCall = new LinkedHashMap<>();
+        toolCall.put("id", toolCallId);
+        toolCall.put("type", "function");
+        toolCall.put("name", toolName);
+        toolCall.put("arguments", arguments);
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("messageType", "ASSISTANT");
+        message.put("text", "");
+        message.put("toolCalls", List.of(toolCall));
+        return message;
+    }
+
+    private static Map<String, Object> toolResponseMap(String toolCallId, String toolName) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", toolCallId);
+        response.put("name", toolName);
+        response.put("responseData", "ok");
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("messageType", "TOOL");
+        message.put("responses", List.of(response));
+        return message;
+    }
+}
@@ -0,0 +1,172 @@
+package com.alibaba.cloud.ai.copilot.benchmark.fixture;
+
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.alibaba.cloud.ai.copilot.service.message.ChatMessageConverter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 会话数据夹具
+ * <p>
+ * 按真实的编码对话生成 chat_message 记录：每轮为
+ * 用户提问 → 助手调用 read_file → 工具返回文件内容 → 助手调用 write_file → 工具返回结果 → 助手总结，
+ * metadata 格式与 ConversationSaveHook 写入的一致。随机数使用固定种子，多次运行结果可比较。
+ * </p>
+ */
+public final class ConversationFixtures {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final String[] FILE_NAMES = {
+        "src/App.vue", "src/main.ts", "src/router/index.ts", "src/views/Home.vue",
+        "src/components/TodoList.vue", "src/stores/user.ts", "package.json", "index.html"
+    };
+
+    private static final String[] CODE_LINES = {
+        "import { ref, computed, onMounted } from 'vue'",
+        "export default defineComponent({",
+        "  const items = ref<Array<{ id: number; title: string; done: boolean }>>([])",
+        "  // 加载待办列表，失败时展示错误提示",
+        "  const remaining = computed(() => items.value.filter(item => !item.done).length)",
+        "  onMounted(async () => { items.value = await fetch('/api/todos').then(r => r.json()) })",
+        "<template>\n  <div class=\"todo-list\">\n    <h1>{{ title }}</h1>\n  </div>\n</template>",
+        "  \"scripts\": { \"dev\": \"vite\", \"build\": \"vue-tsc && vite build\" },",
+        "\tconsole.log(`remaining: ${remaining.value}\\t(total ${items.value.length})`)",
+        "})"
+    };
+
+    private ConversationFixtures() {
+    }
+
+    /**
+     * 生成按时间正序的会话记录
+     *
+     * @param messageCount 消息条数
+     * @param brokenRatio  工具调用缺少响应的比例（模拟流被中断后落库的不完整调用链）
+     * @param fileChars    每次读写的文件内容长度
+     * @param seed         随机种子
+     */
+    public static List<ChatMessageEntity> conversation(int messageCount, double brokenRatio, int fileChars, long seed) {
+        Random random = new Random(seed);
+        List<ChatMessageEntity> entities = new ArrayList<>(messageCount + 6);
+        String conversationId = "bench-" + seed;
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 9, 0);
+        int round = 0;
+        while (entities.size() < messageCount) {
+            String file = "/home/app/workspace/" + FILE_NAMES[random.nextInt(FILE_NAMES.length)];
+            String readId = "call_" + round + "_read";
+            String writeId = "call_" + round + "_write";
+            String original = sourceFile(fileChars, random);
+            String updated = sourceFile(fileChars, random);
+
+            entities.add(message(conversationId, "user", "请帮我修改 " + file + "，第 " + round + " 轮需求", null, time));
+            entities.add(message(conversationId, "assistant", "我先看一下当前文件内容。",
+                toolCallsMetadata(readId, "read_file", arguments(file, null)), time));
+            if (random.nextDouble() >= brokenRatio) {
+                entities.add(message(conversationId, "tool", original, toolMetadata(readId, "read_file"), time));
+            }
+            entities.add(message(conversationId, "assistant", "已经了解结构，开始写入修改。",
+                toolCallsMetadata(writeId, "write_file", arguments(file, updated)), time));
+            if (random.nextDouble() >= brokenRatio) {
+                entities.add(message(conversationId, "tool", "Successfully wrote " + updated.length() + " characters to " + file,
+                    toolMetadata(writeId, "write_file"), time));
+            }
+            entities.add(message(conversationId, "assistant", "修改完成：调整了组件结构并补充了错误处理。", null, time));
+            time = time.plusMinutes(1);
+            round++;
+        }
+        List<ChatMessageEntity> result = new ArrayList<>(entities.subList(0, messageCount));
+        for (int i = 0; i < result.size(); i++) {
+            result.get(i).setId((long) i + 1);
+            result.get(i).setMessageId(conversationId + "-" + (i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * 把会话记录还原为 Spring AI 消息（跳过无法还原的记录，与历史加载逻辑一致）
+     */
+    public static List<Message> messages(List<ChatMessageEntity> entities) {
+        ChatMessageConverter converter = new ChatMessageConverter();
+        List<Message> messages = new ArrayList<>(entities.size());
+        for (ChatMessageEntity entity : entities) {
+            Message message = converter.convert(entity);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 生成近似前端源码的文本（包含中文、引号、反斜杠和制表符，覆盖 JSON 转义路径）
+     */
+    public static String sourceFile(int chars, Random random) {
+        StringBuilder builder = new StringBuilder(chars + 128);
+        while (builder.length() < chars) {
+            builder.append(CODE_LINES[random.nextInt(CODE_LINES.length)]).append('\n');
+        }
+        builder.setLength(chars);
+        return builder.toString();
+    }
+
+    /**
+     * 工具参数 JSON（content 为 null 时只包含 file_path）
+     */
+    public static String arguments(String filePath, String content) {
+        Map<String, Object> arguments = new LinkedHashMap<>();
+        arguments.put("file_path", filePath);
+        if (content != null) {
+            arguments.put("content", content);
+        }
+        return toJson(arguments);
+    }
+
+    private static ChatMessageEntity message(String conversationId, String role, String content,
+                                             String metadata, LocalDateTime time) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setConversationId(conversationId);
+        entity.setRole(role);
+        entity.setContent(content);
+        entity.setMetadata(metadata);
+        entity.setIsCompressed(false);
+        entity.setCreatedTime(time);
+        entity.setUpdatedTime(time);
+        return entity;
+    }
+
+    private static String toolCallsMetadata(String id, String name, String arguments) {
+        Map<String, Object> toolCall = new LinkedHashMap<>();
+        toolCall.put("id", id);
+        toolCall.put("type", "function");
+        toolCall.put("name", name);
+        toolCall.put("arguments", arguments);
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("hasToolCalls", true);
+        metadata.put("toolCalls", List.of(toolCall));
+        return toJson(metadata);
+    }
+
+    private static String toolMetadata(String toolCallId, String toolName) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("toolCallId", toolCallId);
+        metadata.put("toolName", toolName);
+        return toJson(metadata);
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
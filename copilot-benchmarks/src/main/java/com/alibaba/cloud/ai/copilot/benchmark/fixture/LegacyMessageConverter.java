@@ -0,0 +1,155 @@
+package com.alibaba.cloud.ai.copilot.benchmark.fixture;
+
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 原先的消息还原与工具调用链修复写法，仅作为 ConversationHistoryBenchmark 的对照
+ * <p>
+ * 与改造前的 ChatMessageConverter / ConversationHistoryHook 逻辑一致（去掉了日志）：
+ * metadata 每行解析为 Map，构造函数每次反射获取，调用链修复从每条带 tool_calls 的助手消息向后扫描。
+ * </p>
+ */
+public final class LegacyMessageConverter {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public Message convert(ChatMessageEntity entity) {
+        try {
+            return switch (entity.getRole().toLowerCase()) {
+                case "user" -> new UserMessage(entity.getContent());
+                case "assistant" -> convertAssistantMessage(entity);
+                case "system" -> new SystemMessage(entity.getContent());
+                case "tool" -> convertToolMessage(entity);
+                default -> new UserMessage(entity.getContent());
+            };
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public List<Message> validateAndFixToolCallChain(List<Message> messages) {
+        List<Message> fixedMessages = new ArrayList<>();
+        int i = 0;
+        while (i < messages.size()) {
+            Message msg = messages.get(i);
+            if (msg instanceof AssistantMessage assistantMsg
+                && assistantMsg.getToolCalls() != null
+                && !assistantMsg.getToolCalls().isEmpty()) {
+                Set<String> expectedToolCallIds = new HashSet<>();
+                for (AssistantMessage.ToolCall tc : assistantMsg.getToolCalls()) {
+                    expectedToolCallIds.add(tc.id());
+                }
+                boolean hasToolResponse = false;
+                int j = i + 1;
+                while (j < messages.size()) {
+                    if (messages.get(j) instanceof ToolResponseMessage toolRespMsg) {
+                        for (ToolResponseMessage.ToolResponse resp : toolRespMsg.getResponses()) {
+                            if (expectedToolCallIds.remove(resp.id())) {
+                                hasToolResponse = true;
+                            }
+                        }
+                        if (expectedToolCallIds.isEmpty()) {
+                            break;
+                        }
+                    }
+                    j++;
+                }
+                if (hasToolResponse && expectedToolCallIds.isEmpty()) {
+                    fixedMessages.add(assistantMsg);
+                    for (int k = i + 1; k <= j && k < messages.size(); k++) {
+                        fixedMessages.add(messages.get(k));
+                    }
+                    i = j + 1;
+                } else {
+                    String content = assistantMsg.getText() != null ? assistantMsg.getText() : "";
+                    try {
+                        fixedMessages.add(newAssistantMessage(content, new ArrayList<>()));
+                    } catch (ReflectiveOperationException e) {
+                        fixedMessages.add(new AssistantMessage(content));
+                    }
+                    i++;
+                }
+            } else {
+                fixedMessages.add(msg);
+                i++;
+            }
+        }
+        return fixedMessages;
+    }
+
+    private AssistantMessage convertAssistantMessage(ChatMessageEntity entity) {
+        String content = entity.getContent() != null ? entity.getContent() : "";
+        if (entity.getMetadata() != null && !entity.getMetadata().trim().isEmpty()) {
+            try {
+                Map<String, Object> metadataMap = objectMapper.readValue(entity.getMetadata(), MAP_TYPE);
+                if (Boolean.TRUE.equals(metadataMap.get("hasToolCalls"))) {
+                    @SuppressWarnings("unchecked")
+                    List<Map<String, Object>> toolCallsData = (List<Map<String, Object>>) metadataMap.get("toolCalls");
+                    if (toolCallsData != null && !toolCallsData.isEmpty()) {
+                        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+                        for (Map<String, Object> callData : toolCallsData) {
+                            String id = (String) callData.get("id");
+                            String type = (String) callData.get("type");
+                            String name = (String) callData.get("name");
+                            String arguments = callData.get("arguments") != null
+                                ? callData.get("arguments").toString() : "{}";
+                            toolCalls.add(new AssistantMessage.ToolCall(
+                                id != null ? id : "", type != null ? type : "function", name != null ? name : "", arguments));
+                        }
+                        return newAssistantMessage(content, toolCalls);
+                    }
+                }
+            } catch (Exception e) {
+                // 与原写法一致：解析失败时按普通消息还原
+            }
+        }
+        return new AssistantMessage(content);
+    }
+
+    private ToolResponseMessage convertToolMessage(ChatMessageEntity entity) throws Exception {
+        if (entity.getMetadata() == null || entity.getMetadata().trim().isEmpty()) {
+            return null;
+        }
+        Map<String, Object> metadata = objectMapper.readValue(entity.getMetadata(), MAP_TYPE);
+        String toolCallId = (String) metadata.get("toolCallId");
+        String toolName = (String) metadata.get("toolName");
+        if (toolCallId == null || toolName == null) {
+            return null;
+        }
+        String content = entity.getContent() != null ? entity.getContent() : "";
+        Constructor<ToolResponseMessage.ToolResponse> toolResponseConstructor = ToolResponseMessage.ToolResponse.class
+            .getDeclaredConstructor(String.class, String.class, String.class);
+        List<ToolResponseMessage.ToolResponse> responses =
+            List.of(toolResponseConstructor.newInstance(toolCallId, toolName, content));
+        Constructor<ToolResponseMessage> constructor = ToolResponseMessage.class
+            .getDeclaredConstructor(List.class, Map.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(responses, new HashMap<String, Object>());
+    }
+
+    private static AssistantMessage newAssistantMessage(String content, List<AssistantMessage.ToolCall> toolCalls)
+        throws ReflectiveOperationException {
+        Constructor<AssistantMessage> constructor = AssistantMessage.class
+            .getDeclaredConstructor(String.class, Map.class, List.class, List.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(content, new HashMap<String, Object>(), toolCalls, new ArrayList<>());
+    }
+}
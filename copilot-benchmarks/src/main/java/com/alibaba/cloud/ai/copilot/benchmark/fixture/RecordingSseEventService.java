@@ -0,0 +1,101 @@
+package com.alibaba.cloud.ai.copilot.benchmark.fixture;
+
+import com.alibaba.cloud.ai.copilot.service.SseEventService;
+import com.alibaba.cloud.ai.copilot.service.stream.SseFrameEncoder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * 只编码不写出的 SSE 事件服务
+ * <p>
+ * 与 SseEventServiceImpl 使用相同的 SseFrameEncoder 编码帧，但不写入连接，只累计字节数，
+ * 用于在没有 HTTP 连接的情况下测量事件生成的开销。
+ * </p>
+ */
+public class RecordingSseEventService implements SseEventService {
+
+    private final SseFrameEncoder encoder = new SseFrameEncoder();
+
+    private long frames;
+    private long bytes;
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void sendFileEditProgress(SseEmitter emitter, String filePath, String content) {
+        try {
+            record(encoder.encodeFileEditProgress(filePath, content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendFileEditProgress(SseEmitter emitter, String filePath, String content, int offset) {
+        try {
+            record(encoder.encodeFileEditProgress(filePath, content, offset));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendChatContent(SseEmitter emitter, String content) {
+        try {
+            record(encoder.encodeChatContent(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendThinkingContent(SseEmitter emitter, String thinkingContent) {
+        try {
+            record(encoder.encodeThinking(thinkingContent));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendComplete(SseEmitter emitter) {
+        record(encoder.encodeComplete());
+    }
+
+    @Override
+    public void sendSseEvent(SseEmitter emitter, String eventName, Map<String, Object> data) {
+        try {
+            record(encoder.encodeEvent(eventName, data));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendConversationId(SseEmitter emitter, String conversationId) {
+        try {
+            record(encoder.encodeConversationId(conversationId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendError(SseEmitter emitter, String code, String message, long retryAfterMs) {
+        sendSseEvent(emitter, "error", Map.of("code", code, "message", message, "retryAfterMs", retryAfterMs));
+    }
+
+    private void record(byte[] frame) {
+        frames++;
+        bytes += frame.length;
+    }
+}
@@ -22,4 +22,49 @@ public interface CacheConstants {
      */
     String SYS_DICT_KEY = "sys_dict:";
 
+    /**
+     * 工具快照变更通知 redis topic
+     */
+    String TOOL_SNAPSHOT_TOPIC = "copilot:topic:tool_snapshot";
+
+    /**
+     * 聊天流重放缓冲区 redis key
+     */
+    String CHAT_STREAM_REPLAY_KEY = "chat_stream_replay:";
+
+    /**
+     * 聊天流跨节点转发 redis topic 前缀
+     */
+    String CHAT_STREAM_TOPIC = "copilot:topic:chat_stream:";
+
+    /**
+     * 正在运行的聊天流 redis key（值为执行节点ID）
+     */
+    String CHAT_STREAM_ACTIVE_KEY = "chat_stream_active:";
+
+    /**
+     * 会话历史尾部缓存 redis key
+     */
+    String CHAT_HISTORY_TAIL_KEY = "chat_history_tail:";
+
+    /**
+     * 会话历史尾部缓存版本号 redis key
+     */
+    String CHAT_HISTORY_VERSION_KEY = "chat_history_version:";
+
+    /**
+     * 会话历史变更 redis topic（消息格式: 节点ID:会话ID）
+     */
+    String CHAT_HISTORY_INVALIDATE_TOPIC = "copilot:topic:chat_history_invalidate";
+
+    /**
+     * 会话信息变更 redis topic（消息格式: 节点ID:会话ID）
+     */
+    String CONVERSATION_INVALIDATE_TOPIC = "copilot:topic:conversation_invalidate";
+
+    /**
+     * 模型配置变更 redis topic（消息格式: 节点ID:配置ID，配置ID 为 * 表示全部）
+     */
+    String MODEL_CONFIG_INVALIDATE_TOPIC = "copilot:topic:model_config_invalidate";
+
 }
@@ -76,10 +76,32 @@ public class RedisUtils {
      * @param channelKey 通道key
      * @param clazz      消息类型
      * @param consumer   自定义处理
+     * @return 监听器ID，可用于取消订阅
      */
-    public static <T> void subscribe(String channelKey, Class<T> clazz, Consumer<T> consumer) {
+    public static <T> int subscribe(String channelKey, Class<T> clazz, Consumer<T> consumer) {
         RTopic topic = CLIENT.getTopic(channelKey);
-        topic.addListener(clazz, (channel, msg) -> consumer.accept(msg));
+        return topic.addListener(clazz, (channel, msg) -> consumer.accept(msg));
+    }
+
+    /**
+     * 取消订阅
+     *
+     * @param channelKey 通道key
+     * @param listenerId 订阅时返回的监听器ID
+     */
+    public static void unsubscribe(String channelKey, int listenerId) {
+        RTopic topic = CLIENT.getTopic(channelKey);
+        topic.removeListener(listenerId);
+    }
+
+    /**
+     * 获取通道的订阅者数量（所有节点）
+     *
+     * @param channelKey 通道key
+     */
+    public static long countSubscribers(String channelKey) {
+        RTopic topic = CLIENT.getTopic(channelKey);
+        return topic.countSubscribers();
     }
 
     /**
@@ -0,0 +1,18 @@
+package com.alibaba.cloud.ai.copilot.loadtest;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * 模拟模型服务启动类
+ * <p>
+ * 提供 OpenAI 兼容的 /v1/chat/completions 接口，按配置的速率流式返回 token，
+ * 在 Copilot 中以 OpenAiCompatible 供应商注册后即可在不消耗真实模型额度的情况下压测聊天链路。
+ * </p>
+ */
+@SpringBootApplication
+public class StubLlmApplication {
+    public static void main(String[] args) {
+        SpringApplication.run(StubLlmApplication.class, args);
+    }
+}
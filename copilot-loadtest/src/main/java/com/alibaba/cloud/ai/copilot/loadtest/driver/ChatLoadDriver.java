@@ -0,0 +1,288 @@
+package com.alibaba.cloud.ai.copilot.loadtest.driver;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * /api/chat 并发压测工具
+ * <p>
+ * 以固定并发数持续发起 SSE 聊天请求（每个工作线程同一时间保持一个流），读取完整的事件流并统计：
+ * 首 token 时间（TTFT，收到第一个内容或思考帧）、完整响应时间、吞吐量和错误率。
+ * 收到 complete 事件且至少有一个内容帧才算成功，模型报错时服务端只发送 complete，会计为 empty 错误。
+ * </p>
+ * <p>
+ * 用法见模块 README，参数形如 --concurrency=100。
+ * </p>
+ */
+public final class ChatLoadDriver {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Options options;
+    private final HttpClient httpClient;
+
+    private ChatLoadDriver(Options options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ChatLoadDriver driver = new ChatLoadDriver(options);
+        String modelConfigId = options.modelConfigId != null ? options.modelConfigId : driver.registerStubModel();
+        System.out.printf("压测开始: url=%s, modelConfigId=%s, concurrency=%d, requests=%s, duration=%ss%n",
+            options.url, modelConfigId, options.concurrency,
+            options.requests == Integer.MAX_VALUE ? "-" : options.requests,
+            options.durationSeconds > 0 ? options.durationSeconds : "-");
+        LoadReport report = driver.run(modelConfigId);
+        report.print(System.out);
+    }
+
+    private LoadReport run(String modelConfigId) throws InterruptedException {
+        LoadReport report = new LoadReport();
+        AtomicInteger remaining = new AtomicInteger(options.requests);
+        long start = System.nanoTime();
+        long deadline = options.durationSeconds > 0
+            ? start + TimeUnit.SECONDS.toNanos(options.durationSeconds) : Long.MAX_VALUE;
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency);
+        for (int i = 0; i < options.concurrency; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline && remaining.getAndDecrement() > 0) {
+                    report.record(chat(modelConfigId));
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * 发起一次聊天并读取完整的 SSE 流
+     */
+    private ChatResult chat(String modelConfigId) {
+        long start = System.nanoTime();
+        try {
+            ObjectNode body = OBJECT_MAPPER.createObjectNode();
+            body.putObject("message")
+                .put("id", UUID.randomUUID().toString())
+                .put("role", "user")
+                .put("content", options.prompt);
+            body.put("modelConfigId", modelConfigId);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(options.url + "/api/chat"))
+                .timeout(Duration.ofSeconds(options.timeoutSeconds))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("Authorization", "Bearer " + options.token)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+            HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                return ChatResult.failed("http_" + response.statusCode(), System.nanoTime() - start);
+            }
+            return readStream(response.body(), start);
+        } catch (HttpTimeoutException e) {
+            return ChatResult.failed("timeout", System.nanoTime() - start);
+        } catch (IOException e) {
+            return ChatResult.failed("io", System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ChatResult.failed("interrupted", System.nanoTime() - start);
+        }
+    }
+
+    private ChatResult readStream(Stream<String> lines, long start) {
+        long firstTokenNanos = -1;
+        int contentFrames = 0;
+        String event = null;
+        String error = null;
+        boolean completed = false;
+        long deadline = start + TimeUnit.SECONDS.toNanos(options.timeoutSeconds);
+        try (lines) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext() && !completed) {
+                String line = iterator.next();
+                if (line.isEmpty()) {
+                    event = null;
+                } else if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if (event == null && line.contains("\"choices\"")) {
+                        contentFrames++;
+                    }
+                    if (firstTokenNanos < 0 && ((event == null && contentFrames > 0) || "thinking".equals(event))) {
+                        firstTokenNanos = System.nanoTime() - start;
+                    }
+                    if ("error".equals(event)) {
+                        error = "error_event";
+                    } else if ("complete".equals(event)) {
+                        completed = true;
+                    }
+                }
+                if (System.nanoTime() > deadline) {
+                    error = "timeout";
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            error = "io";
+        }
+        long latency = System.nanoTime() - start;
+        if (error == null && !completed) {
+            error = "truncated";
+        }
+        if (error == null && contentFrames == 0) {
+            error = "empty";
+        }
+        return new ChatResult(error, firstTokenNanos, latency, contentFrames);
+    }
+
+    /**
+     * 以 OpenAiCompatible 供应商注册模拟模型服务，返回模型配置ID
+     */
+    private String registerStubModel() throws IOException, InterruptedException {
+        if (options.registerStub == null) {
+            throw new IllegalArgumentException("需要指定 --model-config-id 或 --register-stub");
+        }
+        // modelKey 即请求中的 model 字段，模拟服务原样返回
+        String modelKey = options.modelName;
+        Map<String, Object> config = new HashMap<>();
+        config.put("userId", options.userId);
+        config.put("visibility", "PUBLIC");
+        config.put("modelName", options.modelName);
+        config.put("modelKey", modelKey);
+        config.put("modelType", "llm");
+        config.put("provider", "OpenAiCompatible");
+        config.put("apiUrl", options.registerStub);
+        config.put("apiKey", "stub");
+        config.put("maxToken", 4096);
+        config.put("functionCall", true);
+        config.put("enabled", true);
+        config.put("description", "Stub OpenAI-compatible model for load testing");
+        HttpResponse<String> saved = httpClient.send(authorized(options.url + "/api/model/save")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(OBJECT_MAPPER.writeValueAsString(config)))
+                .build(),
+            HttpResponse.BodyHandlers.ofString());
+        // 已注册过时 model_key 唯一约束会使保存失败，直接按 modelKey 查询
+        System.out.printf("注册模拟模型: status=%d, body=%s%n", saved.statusCode(), saved.body());
+
+        HttpResponse<String> found = httpClient.send(
+            authorized(options.url + "/api/model/name/" + URLEncoder.encode(modelKey, StandardCharsets.UTF_8)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        JsonNode root = OBJECT_MAPPER.readTree(found.body());
+        JsonNode entity = root.has("data") ? root.get("data") : root;
+        if (entity == null || !entity.hasNonNull("id")) {
+            throw new IllegalStateException("注册模拟模型失败: " + found.body());
+        }
+        return entity.get("id").asText();
+    }
+
+    private HttpRequest.Builder authorized(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofSeconds(30))
+            .header("Authorization", "Bearer " + options.token);
+    }
+
+    /**
+     * 单次聊天结果
+     *
+     * @param error          错误类型，成功时为 null
+     * @param ttftNanos      首 token 时间，未收到时为 -1
+     * @param latencyNanos   完整响应时间
+     * @param contentFrames  内容帧数量
+     */
+    record ChatResult(String error, long ttftNanos, long latencyNanos, int contentFrames) {
+
+        static ChatResult failed(String error, long latencyNanos) {
+            return new ChatResult(error, -1, latencyNanos, 0);
+        }
+
+        boolean success() {
+            return error == null;
+        }
+    }
+
+    /**
+     * 命令行参数
+     */
+    private static final class Options {
+
+        private String url = "http://localhost:8080";
+        private String token;
+        private String modelConfigId;
+        private String registerStub;
+        private String modelName = "stub-chat";
+        private long userId = 1L;
+        private int concurrency = 10;
+        private int requests = 100;
+        private long durationSeconds;
+        private long timeoutSeconds = 300;
+        private String prompt = "用 Vue 写一个待办事项列表组件";
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            boolean requestsSet = false;
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("参数格式应为 --name=value: " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "url" -> options.url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                    case "token" -> options.token = value;
+                    case "model-config-id" -> options.modelConfigId = value;
+                    case "register-stub" -> options.registerStub = value;
+                    case "model-name" -> options.modelName = value;
+                    case "user-id" -> options.userId = Long.parseLong(value);
+                    case "concurrency" -> options.concurrency = Integer.parseInt(value);
+                    case "requests" -> {
+                        options.requests = Integer.parseInt(value);
+                        requestsSet = true;
+                    }
+                    case "duration-seconds" -> options.durationSeconds = Long.parseLong(value);
+                    case "timeout-seconds" -> options.timeoutSeconds = Long.parseLong(value);
+                    case "prompt" -> options.prompt = value;
+                    default -> throw new IllegalArgumentException("未知参数: " + name);
+                }
+            }
+            if (options.token == null) {
+                throw new IllegalArgumentException("需要指定 --token（登录后获取的访问令牌）");
+            }
+            if (options.concurrency < 1) {
+                throw new IllegalArgumentException("--concurrency 必须大于 0");
+            }
+            // 只指定时长时按时长运行
+            if (options.durationSeconds > 0 && !requestsSet) {
+                options.requests = Integer.MAX_VALUE;
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.alibaba.cloud.ai.copilot.loadtest.driver;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测结果统计
+ * <p>
+ * 记录每次请求的 TTFT 和完整响应时间，结束后排序计算分位数。
+ * 样本数等于请求数，压测规模下直接保存原始值即可，不需要直方图近似。
+ * </p>
+ */
+class LoadReport {
+
+    private long[] ttft = new long[1024];
+    private long[] latency = new long[1024];
+    private int ttftCount;
+    private int latencyCount;
+    private int total;
+    private int succeeded;
+    private long contentFrames;
+    private long elapsedNanos;
+    private final Map<String, Integer> errors = new TreeMap<>();
+
+    synchronized void record(ChatLoadDriver.ChatResult result) {
+        total++;
+        contentFrames += result.contentFrames();
+        if (result.ttftNanos() >= 0) {
+            if (ttftCount == ttft.length) {
+                ttft = Arrays.copyOf(ttft, ttftCount * 2);
+            }
+            ttft[ttftCount++] = result.ttftNanos();
+        }
+        if (result.success()) {
+            succeeded++;
+            if (latencyCount == latency.length) {
+                latency = Arrays.copyOf(latency, latencyCount * 2);
+            }
+            latency[latencyCount++] = result.latencyNanos();
+        } else {
+            errors.merge(result.error(), 1, Integer::sum);
+        }
+    }
+
+    synchronized void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+        Arrays.sort(ttft, 0, ttftCount);
+        Arrays.sort(latency, 0, latencyCount);
+    }
+
+    synchronized void print(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println();
+        out.printf("请求数: %d, 成功: %d, 失败: %d, 错误率: %.2f%%%n",
+            total, succeeded, total - succeeded, total > 0 ? (total - succeeded) * 100.0 / total : 0);
+        out.printf("耗时: %.1fs, 吞吐量: %.2f 会话/s, 内容帧: %.1f 帧/s%n",
+            seconds, seconds > 0 ? succeeded / seconds : 0, seconds > 0 ? contentFrames / seconds : 0);
+        out.printf("%-8s %10s %10s %10s %10s %10s%n", "(ms)", "p50", "p90", "p99", "max", "samples");
+        printRow(out, "TTFT", ttft, ttftCount);
+        printRow(out, "latency", latency, latencyCount);
+        if (!errors.isEmpty()) {
+            out.println("错误分布: " + errors);
+        }
+    }
+
+    private static void printRow(PrintStream out, String name, long[] values, int count) {
+        if (count == 0) {
+            out.printf("%-8s %10s %10s %10s %10s %10d%n", name, "-", "-", "-", "-", 0);
+            return;
+        }
+        out.printf("%-8s %10.1f %10.1f %10.1f %10.1f %10d%n", name,
+            millis(percentile(values, count, 0.50)),
+            millis(percentile(values, count, 0.90)),
+            millis(percentile(values, count, 0.99)),
+            millis(values[count - 1]),
+            count);
+    }
+
+    /**
+     * 最近秩法计算分位数（values 已排序）
+     */
+    private static long percentile(long[] values, int count, double quantile) {
+        int rank = (int) Math.ceil(quantile * count);
+        return values[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,380 @@
+package com.alibaba.cloud.ai.copilot.loadtest.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI 兼容的模拟聊天接口
+ * <p>
+ * 流式请求按 tokensPerSecond 由共享的定时线程池逐块发送，不占用请求线程；
+ * 根据请求中本轮用户消息之后已有的工具调用次数执行工具调用脚本，脚本执行完后返回文本回答。
+ * 支持按比例直接返回错误状态码，或在输出中途断开（不发送 [DONE]）。
+ * </p>
+ */
+@Slf4j
+@RestController
+public class StubChatCompletionController {
+
+    private static final String DONE = "data: [DONE]\n\n";
+
+    /**
+     * 显式指定 UTF-8，否则 StringHttpMessageConverter 对 text/event-stream 默认使用 ISO-8859-1
+     */
+    private static final MediaType EVENT_STREAM = new MediaType("text", "event-stream", StandardCharsets.UTF_8);
+
+    private static final String[] WORDS = {
+        "好的", "，", "我", "已经", "根据", "你的", "需求", "完成", "了", "修改", "。",
+        "The ", "component ", "now ", "renders ", "the ", "list ", "and ", "handles ", "errors", ".\n"
+    };
+
+    /**
+     * 非流式请求和流式请求的最长保持时间
+     */
+    private static final long EMITTER_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final StubLlmProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public StubChatCompletionController(StubLlmProperties properties) {
+        this.properties = properties;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, properties.getSchedulerThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "stub-llm-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 模型列表（健康检查和模型发现使用）
+     */
+    @GetMapping("/v1/models")
+    public ObjectNode models() {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("object", "list");
+        ArrayNode data = result.putArray("data");
+        for (String model : properties.getModels()) {
+            data.addObject()
+                .put("id", model)
+                .put("object", "model")
+                .put("owned_by", "stub");
+        }
+        return result;
+    }
+
+    @PostMapping("/v1/chat/completions")
+    public ResponseEntity<ResponseBodyEmitter> completions(@RequestBody JsonNode request) {
+        StubLlmProperties.Errors errors = properties.getErrors();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (errors.getRate() > 0 && random.nextDouble() < errors.getRate()) {
+            return error(errors);
+        }
+
+        String model = request.path("model").asText(properties.getModels().isEmpty() ? "stub-chat" : properties.getModels().get(0));
+        int round = toolRound(request.path("messages"));
+        List<StubLlmProperties.ToolCallStep> script = properties.getToolCalls();
+        StubLlmProperties.ToolCallStep step = round < script.size() ? script.get(round) : null;
+        long delayMs = properties.getFirstTokenLatencyMs()
+            + (properties.getLatencyJitterMs() > 0 ? random.nextLong(properties.getLatencyJitterMs() + 1) : 0);
+        Completion completion = new Completion("chatcmpl-" + sequence.incrementAndGet(), model,
+            System.currentTimeMillis() / 1000, estimateTokens(request), step);
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(EMITTER_TIMEOUT_MS);
+        if (!request.path("stream").asBoolean(false)) {
+            scheduler.schedule(() -> sendCompletion(emitter, completion), delayMs, TimeUnit.MILLISECONDS);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(emitter);
+        }
+
+        int failAfterChunks = errors.getMidStreamRate() > 0 && random.nextDouble() < errors.getMidStreamRate()
+            ? random.nextInt(Math.max(1, properties.getResponseTokens() / Math.max(1, properties.getTokensPerChunk())))
+            : -1;
+        StubStream stream = new StubStream(emitter, completion,
+            request.path("stream_options").path("include_usage").asBoolean(false), failAfterChunks);
+        emitter.onCompletion(stream::stop);
+        emitter.onTimeout(stream::stop);
+        emitter.onError(e -> stream.stop());
+
+        double tokensPerSecond = properties.getTokensPerSecond();
+        int tokensPerChunk = Math.max(1, properties.getTokensPerChunk());
+        synchronized (stream) {
+            if (tokensPerSecond > 0) {
+                long periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) * tokensPerChunk / tokensPerSecond));
+                stream.future = scheduler.scheduleAtFixedRate(stream::sendNext,
+                    TimeUnit.MILLISECONDS.toNanos(delayMs), periodNanos, TimeUnit.NANOSECONDS);
+            } else {
+                stream.future = scheduler.schedule(stream::sendAll, delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return ResponseEntity.ok()
+            .contentType(EVENT_STREAM)
+            .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+            .body(emitter);
+    }
+
+    /**
+     * 本轮用户消息之后已经发生的工具调用次数
+     */
+    private static int toolRound(JsonNode messages) {
+        int round = 0;
+        for (JsonNode message : messages) {
+            String role = message.path("role").asText();
+            if ("user".equals(role)) {
+                round = 0;
+            } else if ("assistant".equals(role) && message.path("tool_calls").size() > 0) {
+                round++;
+            }
+        }
+        return round;
+    }
+
+    /**
+     * 按约 4 个字符 1 个 token 估算提示词长度
+     */
+    private static int estimateTokens(JsonNode request) {
+        int chars = 0;
+        for (JsonNode message : request.path("messages")) {
+            chars += message.path("content").asText("").length();
+        }
+        return Math.max(1, chars / 4);
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> error(StubLlmProperties.Errors errors) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(EMITTER_TIMEOUT_MS);
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error")
+            .put("message", "Injected error from stub LLM")
+            .put("type", errors.getStatus() == 429 ? "rate_limit_exceeded" : "server_error")
+            .put("code", errors.getStatus());
+        try {
+            emitter.send(body.toString(), MediaType.APPLICATION_JSON);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(errors.getStatus()).contentType(MediaType.APPLICATION_JSON);
+        if (errors.getStatus() == 429) {
+            builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(errors.getRetryAfterSeconds()));
+        }
+        return builder.body(emitter);
+    }
+
+    /**
+     * 非流式响应：一次性返回完整回答或工具调用
+     */
+    private void sendCompletion(ResponseBodyEmitter emitter, Completion completion) {
+        ObjectNode result = completion.envelope(objectMapper, "chat.completion");
+        ObjectNode choice = result.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        int completionTokens;
+        if (completion.step != null) {
+            message.putNull("content");
+            writeToolCall(message.putArray("tool_calls").addObject(), completion.step);
+            choice.put("finish_reason", "tool_calls");
+            completionTokens = 16;
+        } else {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < properties.getResponseTokens(); i++) {
+                content.append(WORDS[i % WORDS.length]);
+            }
+            message.put("content", content.toString());
+            choice.put("finish_reason", "stop");
+            completionTokens = properties.getResponseTokens();
+        }
+        writeUsage(result, completion.promptTokens, completionTokens);
+        try {
+            emitter.send(result.toString(), MediaType.APPLICATION_JSON);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void writeToolCall(ObjectNode toolCall, StubLlmProperties.ToolCallStep step) {
+        toolCall.put("id", "call_" + sequence.incrementAndGet());
+        toolCall.put("type", "function");
+        toolCall.putObject("function")
+            .put("name", step.getName())
+            .put("arguments", step.getArguments().replace("{{seq}}", String.valueOf(sequence.incrementAndGet())));
+    }
+
+    private static void writeUsage(ObjectNode result, int promptTokens, int completionTokens) {
+        result.putObject("usage")
+            .put("prompt_tokens", promptTokens)
+            .put("completion_tokens", completionTokens)
+            .put("total_tokens", promptTokens + completionTokens);
+    }
+
+    /**
+     * 单次请求的公共信息
+     */
+    private record Completion(String id, String model, long created, int promptTokens,
+                              StubLlmProperties.ToolCallStep step) {
+
+        ObjectNode envelope(ObjectMapper objectMapper, String object) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("id", id);
+            node.put("object", object);
+            node.put("created", created);
+            node.put("model", model);
+            return node;
+        }
+    }
+
+    /**
+     * 单个流式响应的发送进度
+     */
+    private class StubStream {
+
+        private final ResponseBodyEmitter emitter;
+        private final Completion completion;
+        private final boolean includeUsage;
+        private final int failAfterChunks;
+        private int sentTokens;
+        private int sentChunks;
+        private boolean done;
+        private ScheduledFuture<?> future;
+
+        StubStream(ResponseBodyEmitter emitter, Completion completion, boolean includeUsage, int failAfterChunks) {
+            this.emitter = emitter;
+            this.completion = completion;
+            this.includeUsage = includeUsage;
+            this.failAfterChunks = failAfterChunks;
+        }
+
+        /**
+         * 不限速时一次发送全部内容
+         */
+        synchronized void sendAll() {
+            while (!done) {
+                sendNext();
+            }
+        }
+
+        synchronized void sendNext() {
+            if (done) {
+                return;
+            }
+            try {
+                if (sentChunks == failAfterChunks) {
+                    finish();
+                    emitter.completeWithError(new IOException("Injected mid-stream failure"));
+                    return;
+                }
+                if (completion.step != null) {
+                    sendToolCall();
+                    return;
+                }
+                int tokensPerChunk = Math.max(1, properties.getTokensPerChunk());
+                int end = Math.min(sentTokens + tokensPerChunk, properties.getResponseTokens());
+                StringBuilder content = new StringBuilder();
+                for (int i = sentTokens; i < end; i++) {
+                    content.append(WORDS[i % WORDS.length]);
+                }
+                ObjectNode delta = objectMapper.createObjectNode();
+                if (sentTokens == 0) {
+                    delta.put("role", "assistant");
+                }
+                delta.put("content", content.toString());
+                send(chunk(delta, null));
+                sentTokens = end;
+                sentChunks++;
+                if (sentTokens >= properties.getResponseTokens()) {
+                    sendEnd("stop", sentTokens);
+                }
+            } catch (Exception e) {
+                log.debug("模拟输出中断: id={}, error={}", completion.id, e.getMessage());
+                stop();
+            }
+        }
+
+        void stop() {
+            synchronized (this) {
+                finish();
+            }
+        }
+
+        private void sendToolCall() throws IOException {
+            ObjectNode delta = objectMapper.createObjectNode();
+            delta.put("role", "assistant");
+            delta.putNull("content");
+            ObjectNode toolCall = delta.putArray("tool_calls").addObject();
+            toolCall.put("index", 0);
+            writeToolCall(toolCall, completion.step);
+            send(chunk(delta, null));
+            sendEnd("tool_calls", 16);
+        }
+
+        private void sendEnd(String finishReason, int completionTokens) throws IOException {
+            send(chunk(objectMapper.createObjectNode(), finishReason));
+            if (includeUsage) {
+                ObjectNode usage = completion.envelope(objectMapper, "chat.completion.chunk");
+                usage.putArray("choices");
+                writeUsage(usage, completion.promptTokens, completionTokens);
+                send(usage);
+            }
+            emitter.send(DONE, EVENT_STREAM);
+            finish();
+            emitter.complete();
+        }
+
+        private ObjectNode chunk(ObjectNode delta, String finishReason) {
+            ObjectNode chunk = completion.envelope(objectMapper, "chat.completion.chunk");
+            ObjectNode choice = chunk.putArray("choices").addObject();
+            choice.put("index", 0);
+            choice.set("delta", delta);
+            if (finishReason != null) {
+                choice.put("finish_reason", finishReason);
+            } else {
+                choice.putNull("finish_reason");
+            }
+            return chunk;
+        }
+
+        private void send(ObjectNode chunk) throws IOException {
+            emitter.send("data: " + chunk + "\n\n", EVENT_STREAM);
+        }
+
+        private void finish() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.alibaba.cloud.ai.copilot.loadtest.stub;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 模拟模型服务配置属性
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "stub.llm")
+public class StubLlmProperties {
+
+    /**
+     * /v1/models 返回的模型列表
+     */
+    private List<String> models = new ArrayList<>(List.of("stub-chat"));
+
+    /**
+     * 首个 token 前的延迟（毫秒）
+     */
+    private long firstTokenLatencyMs = 300;
+
+    /**
+     * 首 token 延迟的随机抖动上限（毫秒）
+     */
+    private long latencyJitterMs = 100;
+
+    /**
+     * 每秒输出的 token 数（小于等于 0 时不限速）
+     */
+    private double tokensPerSecond = 50;
+
+    /**
+     * 每个 chunk 包含的 token 数
+     */
+    private int tokensPerChunk = 1;
+
+    /**
+     * 文本回答的 token 数
+     */
+    private int responseTokens = 200;
+
+    /**
+     * 定时发送 token 的线程数
+     */
+    private int schedulerThreads = 4;
+
+    /**
+     * 工具调用脚本：第 N 次模型调用（本轮用户消息之后已有 N 次工具调用）返回第 N 个工具调用，
+     * 脚本执行完后返回文本回答
+     */
+    private List<ToolCallStep> toolCalls = new ArrayList<>();
+
+    /**
+     * 错误注入配置
+     */
+    private Errors errors = new Errors();
+
+    /**
+     * 单个工具调用
+     */
+    @Data
+    public static class ToolCallStep {
+
+        /**
+         * 工具名称
+         */
+        private String name;
+
+        /**
+         * 参数 JSON，{{seq}} 会被替换为全局递增序号（用于生成不重复的文件路径）
+         */
+        private String arguments = "{}";
+    }
+
+    /**
+     * 错误注入配置
+     */
+    @Data
+    public static class Errors {
+
+        /**
+         * 直接返回错误状态码的请求比例（0-1）
+         */
+        private double rate = 0;
+
+        /**
+         * 返回的错误状态码
+         */
+        private int status = 503;
+
+        /**
+         * 状态码为 429 时返回的 Retry-After（秒）
+         */
+        private int retryAfterSeconds = 1;
+
+        /**
+         * 输出中途断开连接的请求比例（0-1）
+         */
+        private double midStreamRate = 0;
+    }
+}
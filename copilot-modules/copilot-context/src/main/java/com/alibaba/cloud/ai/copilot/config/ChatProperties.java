@@ -0,0 +1,523 @@
+package com.alibaba.cloud.ai.copilot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天链路配置属性
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.chat")
+public class ChatProperties {
+
+    /**
+     * Agent 模板缓存配置
+     */
+    private AgentCache agentCache = new AgentCache();
+
+    /**
+     * 聊天消息持久化配置
+     */
+    private Persistence persistence = new Persistence();
+
+    /**
+     * 流式输出配置
+     */
+    private Streaming streaming = new Streaming();
+
+    /**
+     * 断线重连（Last-Event-ID 重放）配置
+     */
+    private Resume resume = new Resume();
+
+    /**
+     * 跨节点聊天流转发配置
+     */
+    private Relay relay = new Relay();
+
+    /**
+     * 会话历史尾部缓存配置
+     */
+    private HistoryCache historyCache = new HistoryCache();
+
+    /**
+     * 会话信息近端缓存配置
+     */
+    private ConversationCache conversationCache = new ConversationCache();
+
+    /**
+     * 会话消息计数聚合配置
+     */
+    private MessageCounter messageCounter = new MessageCounter();
+
+    /**
+     * Agent 检查点存储配置
+     */
+    private Checkpoint checkpoint = new Checkpoint();
+
+    /**
+     * 模型实例缓存配置
+     */
+    private ModelCache modelCache = new ModelCache();
+
+    /**
+     * 同名模型多端点路由配置
+     */
+    private Routing routing = new Routing();
+
+    /**
+     * 模型调用共享 HTTP 连接池配置
+     */
+    private ModelHttp modelHttp = new ModelHttp();
+
+    /**
+     * 模型端点熔断配置
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * 模型端点自适应并发限制配置
+     */
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+
+
+    @Data
+    public static class AgentCache {
+        /**
+         * 是否启用 Agent 模板缓存，关闭后每次请求重新构建 ReactAgent
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最多缓存的 Agent 模板数量
+         */
+        private int maxSize = 256;
+
+        /**
+         * 模板创建后的有效期（秒），到期后下次访问重新构建；与 model-cache 一致，避免长期持有旧的 ChatModel 和 API Key
+         */
+        private long ttlSeconds = 3600;
+    }
+
+    @Data
+    public static class Persistence {
+        /**
+         * 是否异步批量写入（write-behind），关闭后同步写库，便于测试
+         */
+        private boolean async = true;
+
+        /**
+         * 待写入队列容量，队列满时退化为同步写入
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * 队列满时等待空位的最长时间（毫秒），超时后同步写入该会话已排队的消息和本条消息
+         */
+        private long offerTimeoutMs = 50;
+
+        /**
+         * 每批写入的最大条数
+         */
+        private int batchSize = 100;
+
+        /**
+         * 最大刷新延迟（毫秒），未攒满一批时最多等待该时间后写入
+         */
+        private long flushIntervalMs = 200;
+
+        /**
+         * 关闭时等待刷新线程退出的最长时间（毫秒）
+         */
+        private long shutdownTimeoutMs = 10000;
+
+        /**
+         * 写库失败时的落盘文件，启动后及之后定期自动重放
+         */
+        private String spillFile = "./data/chat-message-spill.jsonl";
+
+        /**
+         * 落盘文件的定期重放间隔（毫秒）
+         */
+        private long spillReplayIntervalMs = 60000;
+    }
+
+    @Data
+    public static class Streaming {
+        /**
+         * 流式调度线程池大小
+         */
+        private int schedulerPoolSize = 2;
+
+        /**
+         * 是否合并模型输出的 token 后再发送
+         */
+        private boolean coalesceEnabled = true;
+
+        /**
+         * 合并窗口（毫秒），首个 token 立即发送，之后最多等待该时间刷新一次
+         */
+        private long coalesceWindowMs = 30;
+
+        /**
+         * 缓冲区达到该字符数时立即刷新
+         */
+        private int coalesceMaxChars = 64;
+
+        /**
+         * 文件内容伪流式输出每帧的字符数
+         */
+        private int fileChunkSize = 1024;
+
+        /**
+         * 文件内容伪流式输出的帧间隔（毫秒），0 表示一次性发送
+         */
+        private long fileChunkIntervalMs = 50;
+
+        /**
+         * 同时进行的文件内容伪流式输出上限，超过后直接发送完整内容
+         */
+        private int maxConcurrentFileStreams = 64;
+    }
+
+    @Data
+    public static class Resume {
+        /**
+         * 每个会话保留的最近帧数量
+         */
+        private int replayBufferSize = 512;
+
+        /**
+         * 所有客户端断开后等待重连的时间（毫秒），超时后取消上游流；0 表示立即取消
+         */
+        private long graceMs = 30000;
+
+        /**
+         * 流结束后保留重放缓冲区的时间（毫秒）
+         */
+        private long retentionMs = 60000;
+
+        /**
+         * 是否同时把帧写入 Redis，进程重启或本地缓冲已清理时仍可重放
+         */
+        private boolean redisEnabled = false;
+
+        /**
+         * Redis 中重放缓冲区的过期时间（秒）
+         */
+        private long redisTtlSeconds = 600;
+    }
+
+    @Data
+    public static class Relay {
+        /**
+         * 是否通过 Redis 发布订阅跨节点转发聊天流（启用后总是写入 Redis 重放缓冲区，用于补齐丢失的帧）
+         */
+        private boolean enabled = false;
+
+        /**
+         * 发布线程数（按会话分片，保证同一会话内有序）
+         */
+        private int publishThreads = 2;
+
+        /**
+         * 每个发布线程的待发布队列容量，队列满时丢弃，订阅端通过 Redis 重放缓冲区补齐
+         */
+        private int publishQueueSize = 1024;
+
+        /**
+         * 订阅端推送线程数
+         */
+        private int deliveryThreads = 4;
+
+        /**
+         * 每个订阅客户端的最大积压帧数，超过后断开该客户端，由客户端携带 Last-Event-ID 重连
+         */
+        private int lagBufferSize = 256;
+
+        /**
+         * 发布前等待该帧写入 Redis 重放缓冲区确认的最长时间（毫秒），超时后直接发布
+         */
+        private long mirrorAckTimeoutMs = 1000;
+    }
+
+    @Data
+    public static class HistoryCache {
+        /**
+         * 是否缓存会话最近的历史消息（已转换为 Spring AI Message）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最多缓存的会话数量
+         */
+        private int maxConversations = 1024;
+
+        /**
+         * 缓存消息的估算总大小上限（字节），超过后淘汰最久未使用的会话
+         */
+        private long maxWeightBytes = 64L * 1024 * 1024;
+
+        /**
+         * 是否启用 Redis 二级缓存（多节点部署时共享尾部消息，按版本号校验）；
+         * 未启用时通过 Redis 发布订阅通知其他节点失效本地尾部
+         */
+        private boolean redisEnabled = false;
+
+        /**
+         * Redis 二级缓存过期时间（秒）
+         */
+        private long redisTtlSeconds = 1800;
+    }
+
+    @Data
+    public static class ConversationCache {
+        /**
+         * 是否缓存会话信息（getConversation）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最多缓存的会话数量，超过后淘汰最久未使用的会话
+         */
+        private int maxSize = 4096;
+
+        /**
+         * 缓存有效期（秒），兜底处理丢失的跨节点失效通知
+         */
+        private long ttlSeconds = 300;
+    }
+
+    @Data
+    public static class MessageCounter {
+        /**
+         * 是否在内存中聚合消息计数并批量刷新（关闭时每条消息直接 UPDATE）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 刷新间隔（毫秒）
+         */
+        private long flushIntervalMs = 1000;
+
+        /**
+         * 单条批量 UPDATE 最多包含的会话数量
+         */
+        private int batchSize = 200;
+
+        /**
+         * 校正任务 cron 表达式
+         */
+        private String reconcileCron = "0 17 * * * *";
+
+        /**
+         * 校正最近多少小时内有消息的会话，0 表示不校正
+         */
+        private int reconcileWindowHours = 24;
+
+        /**
+         * 只校正静默超过多少分钟的会话（确保消息和计数增量都已落库）
+         */
+        private int reconcileQuietMinutes = 5;
+    }
+
+    @Data
+    public static class Checkpoint {
+        /**
+         * 是否使用有界的检查点存储（关闭时每个 Agent 模板使用不限大小的 MemorySaver）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 每个线程最多保留的检查点数量（最新的在前）
+         */
+        private int maxCheckpointsPerThread = 4;
+
+        /**
+         * 每个线程检查点的总大小上限（字节，压缩后），超过时淘汰较旧的检查点
+         */
+        private long maxBytesPerThread = 4L * 1024 * 1024;
+
+        /**
+         * 状态序列化后超过该大小（字节）时进行 GZIP 压缩
+         */
+        private int compressThresholdBytes = 4096;
+
+        /**
+         * 进程内最多缓存的线程数量
+         */
+        private int localMaxThreads = 512;
+
+        /**
+         * 进程内缓存的检查点总大小上限（字节）
+         */
+        private long localMaxWeightBytes = 64L * 1024 * 1024;
+    }
+
+    @Data
+    public static class ModelCache {
+        /**
+         * 最多缓存的模型实例数量，超过后淘汰最久未使用的实例
+         */
+        private int maxSize = 256;
+
+        /**
+         * 模型实例创建后的有效期（秒），到期后下次访问重新读取配置创建；兜底处理丢失的跨节点失效通知
+         */
+        private long ttlSeconds = 3600;
+    }
+
+    @Data
+    public static class Routing {
+        /**
+         * 是否启用路由：同名的多条模型配置组合为一个模型，按延迟、错误率和剩余配额选择端点并自动故障切换
+         */
+        private boolean enabled = true;
+
+        /**
+         * 延迟和错误率 EWMA 的平滑系数（0-1），越大越偏向最近的请求
+         */
+        private double ewmaAlpha = 0.2;
+
+        /**
+         * 错误率惩罚系数，得分 = 延迟 × (1 + 系数 × 错误率) / 剩余配额比例
+         */
+        private double errorPenalty = 4.0;
+
+        /**
+         * 单次请求最多尝试的端点数量
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * 端点返回 429 后的冷却时间（毫秒），冷却期内不再选择该端点
+         */
+        private long quotaCooldownMs = 30000;
+    }
+
+    @Data
+    public static class ModelHttp {
+        /**
+         * 是否对 HTTPS 端点启用 HTTP/2（通过 ALPN 协商，不支持时回退 HTTP/1.1）
+         */
+        private boolean http2Enabled = true;
+
+        /**
+         * 每个目标地址的最大连接数
+         */
+        private int maxConnectionsPerHost = 200;
+
+        /**
+         * 连接耗尽时最多排队等待的请求数
+         */
+        private int pendingAcquireMaxCount = 1000;
+
+        /**
+         * 等待空闲连接的最长时间（毫秒）
+         */
+        private long pendingAcquireTimeoutMs = 10000;
+
+        /**
+         * 连接最大空闲时间（毫秒），应小于供应商网关的空闲断开时间
+         */
+        private long maxIdleTimeMs = 30000;
+
+        /**
+         * 连接最大存活时间（毫秒），到期后不再复用，便于跟随 DNS 变化
+         */
+        private long maxLifeTimeMs = 300000;
+
+        /**
+         * 后台清理空闲和过期连接的间隔（毫秒）
+         */
+        private long evictIntervalMs = 10000;
+
+        /**
+         * 建立连接超时（毫秒）
+         */
+        private int connectTimeoutMs = 10000;
+
+        /**
+         * 同步调用的读超时（毫秒），流式调用不受此限制
+         */
+        private long readTimeoutMs = 300000;
+
+        /**
+         * 是否注册连接池和请求指标
+         */
+        private boolean metricsEnabled = true;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        /**
+         * 是否启用：按供应商 + Base URL 统计可重试错误（429、5xx、网络错误），失败率过高时暂停调用该端点
+         */
+        private boolean enabled = true;
+
+        /**
+         * 失败率统计窗口（最近的调用次数）
+         */
+        private int windowSize = 20;
+
+        /**
+         * 窗口内至少有这么多次调用才判断是否打开
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * 打开熔断的失败率阈值（百分比）
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 打开状态持续时间（毫秒），到期后进入半开状态
+         */
+        private long openDurationMs = 30000;
+
+        /**
+         * 半开状态放行的探测请求数，全部成功后关闭熔断
+         */
+        private int halfOpenPermits = 3;
+    }
+
+    @Data
+    public static class ConcurrencyLimit {
+        /**
+         * 是否启用：按供应商 + Base URL 限制并发，上限按 AIMD 随 429、5xx 和延迟突增自动收缩
+         */
+        private boolean enabled = true;
+
+        /**
+         * 初始并发上限
+         */
+        private int initialLimit = 20;
+
+        /**
+         * 最小并发上限
+         */
+        private int minLimit = 2;
+
+        /**
+         * 最大并发上限
+         */
+        private int maxLimit = 200;
+
+        /**
+         * 收缩系数，出错或延迟突增时上限乘以该值
+         */
+        private double backoffRatio = 0.7;
+
+        /**
+         * 延迟超过基线的倍数时视为延迟突增
+         */
+        private double latencySpikeRatio = 3.0;
+
+        /**
+         * 延迟基线 EWMA 的平滑系数（0-1）
+         */
+        private double latencyAlpha = 0.1;
+    }
+}
@@ -0,0 +1,125 @@
+package com.alibaba.cloud.ai.copilot.config;
+
+import com.alibaba.cloud.ai.copilot.service.guard.ProviderCallGuard;
+import com.alibaba.cloud.ai.copilot.service.guard.ProviderCallGuards;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * 模型调用共享 HTTP 客户端
+ * <p>
+ * 所有 OpenAiApi（动态模型缓存、健康检测、提示词增强）共用同一个 Reactor Netty 连接池：
+ * 同步调用（RestClient）和流式调用（WebClient）走同一个 HttpClient，按目标地址保持长连接，
+ * HTTPS 端点通过 ALPN 协商 HTTP/2 多路复用，避免每个模型实例各自建连、重复 TLS 握手。
+ * </p>
+ * <p>
+ * 连接池指标（reactor.netty.connection.provider.*）和请求指标（reactor.netty.http.client.*，
+ * 包括 TLS 握手、建连耗时）注册到 Micrometer 全局注册表，由 Spring Boot 汇总到 Prometheus。
+ * </p>
+ * <p>
+ * 指定供应商和 Base URL 获取的 Builder 会挂上该端点的 {@link ProviderCallGuard}（熔断和自适应并发限制）。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ModelHttpClients {
+
+    private static final String POOL_NAME = "copilot-model";
+
+    private final ConnectionProvider connectionProvider;
+    private final ReactorClientHttpRequestFactory requestFactory;
+    private final ReactorClientHttpConnector connector;
+    private final ProviderCallGuards providerCallGuards;
+
+    public ModelHttpClients(ChatProperties chatProperties, ProviderCallGuards providerCallGuards) {
+        this.providerCallGuards = providerCallGuards;
+        ChatProperties.ModelHttp config = chatProperties.getModelHttp();
+        this.connectionProvider = ConnectionProvider.builder(POOL_NAME)
+                .maxConnections(config.getMaxConnectionsPerHost())
+                .pendingAcquireMaxCount(config.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(config.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofMillis(config.getMaxIdleTimeMs()))
+                .maxLifeTime(Duration.ofMillis(config.getMaxLifeTimeMs()))
+                .evictInBackground(Duration.ofMillis(config.getEvictIntervalMs()))
+                .metrics(config.isMetricsEnabled())
+                .build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMs())
+                .keepAlive(true);
+        if (config.isHttp2Enabled()) {
+            // HTTPS 端点通过 ALPN 协商 HTTP/2，不支持时回退 HTTP/1.1；明文 HTTP 端点使用 HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        if (config.isMetricsEnabled()) {
+            // 只保留路径作为 uri 标签，避免查询参数导致标签膨胀
+            httpClient = httpClient.metrics(true, ModelHttpClients::uriTag);
+        }
+
+        this.requestFactory = new ReactorClientHttpRequestFactory(httpClient);
+        this.requestFactory.setReadTimeout(Duration.ofMillis(config.getReadTimeoutMs()));
+        this.connector = new ReactorClientHttpConnector(httpClient);
+
+        log.info("模型 HTTP 连接池已创建: maxConnectionsPerHost={}, maxIdleTime={}ms, http2={}",
+                config.getMaxConnectionsPerHost(), config.getMaxIdleTimeMs(), config.isHttp2Enabled());
+    }
+
+    /**
+     * 基于共享连接池的 RestClient.Builder（每次返回新的 Builder，调用方可继续定制）
+     */
+    public RestClient.Builder restClientBuilder() {
+        return RestClient.builder().requestFactory(requestFactory);
+    }
+
+    /**
+     * 基于共享连接池的 WebClient.Builder（每次返回新的 Builder，调用方可继续定制）
+     */
+    public WebClient.Builder webClientBuilder() {
+        return WebClient.builder().clientConnector(connector);
+    }
+
+    /**
+     * 带端点调用保护的 RestClient.Builder
+     *
+     * @param provider 供应商名称
+     * @param baseUrl  Base URL，为空表示使用 SDK 默认地址
+     */
+    public RestClient.Builder restClientBuilder(String provider, String baseUrl) {
+        return restClientBuilder().requestInterceptor(providerCallGuards.get(provider, baseUrl).restInterceptor());
+    }
+
+    /**
+     * 带端点调用保护的 WebClient.Builder
+     *
+     * @param provider 供应商名称
+     * @param baseUrl  Base URL，为空表示使用 SDK 默认地址
+     */
+    public WebClient.Builder webClientBuilder(String provider, String baseUrl) {
+        return webClientBuilder().filter(providerCallGuards.get(provider, baseUrl).exchangeFilter());
+    }
+
+    private static String uriTag(String uri) {
+        int query = uri.indexOf('?');
+        return query >= 0 ? uri.substring(0, query) : uri;
+    }
+
+    /**
+     * 销毁事件
+     */
+    @PreDestroy
+    public void destroy() {
+        log.info("关闭模型 HTTP 连接池");
+        connectionProvider.disposeLater().block(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,56 @@
+package com.alibaba.cloud.ai.copilot.config;
+
+import com.alibaba.cloud.ai.copilot.core.utils.Threads;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式输出配置类
+ * 提供 SSE 输出共享的定时调度线程池
+ */
+@Slf4j
+@Configuration
+public class StreamingConfig {
+
+    private ScheduledExecutorService streamingScheduler;
+
+    /**
+     * 流式输出定时调度线程池（token 合并刷新等）
+     */
+    @Bean(name = "streamingScheduler", destroyMethod = "")
+    public ScheduledExecutorService streamingScheduler(ChatProperties chatProperties) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "streaming-scheduler-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                chatProperties.getStreaming().getSchedulerPoolSize(), threadFactory) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                super.afterExecute(r, t);
+                Threads.printException(r, t);
+            }
+        };
+        executor.setRemoveOnCancelPolicy(true);
+        this.streamingScheduler = executor;
+        return executor;
+    }
+
+    /**
+     * 销毁事件
+     */
+    @PreDestroy
+    public void destroy() {
+        log.info("关闭流式输出调度线程池");
+        Threads.shutdownAndAwaitTermination(streamingScheduler);
+    }
+}
@@ -1,7 +1,12 @@
 package com.alibaba.cloud.ai.copilot.controller.chat;
 
+import com.alibaba.cloud.ai.copilot.core.exception.ServiceException;
 import com.alibaba.cloud.ai.copilot.domain.dto.ChatRequest;
+import com.alibaba.cloud.ai.copilot.domain.dto.ConversationDTO;
+import com.alibaba.cloud.ai.copilot.satoken.utils.LoginHelper;
 import com.alibaba.cloud.ai.copilot.service.ChatService;
+import com.alibaba.cloud.ai.copilot.service.ConversationService;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamSessionManager;
 import cn.dev33.satoken.stp.StpUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,6 +24,8 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 public class ChatController {
 
     private final ChatService chatService;
+    private final ConversationService conversationService;
+    private final ChatStreamSessionManager chatStreamSessionManager;
 
     /**
      * Handle chat requests
@@ -31,4 +38,28 @@ public class ChatController {
         chatService.handleBuilderMode(request, userId, emitter);
         return emitter;
     }
+
+    /**
+     * 断线重连：从 Last-Event-ID 之后重放，并继续接收正在进行的回答
+     * 不会重新调用模型
+     */
+    @GetMapping(value = "/resume/{conversationId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter resume(@PathVariable String conversationId,
+                             @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader,
+                             @RequestParam(value = "lastEventId", required = false) Long lastEventIdParam) {
+        // 验证权限
+        ConversationDTO conversation = conversationService.getConversation(conversationId);
+        if (conversation == null) {
+            throw new ServiceException("会话不存在");
+        }
+        if (!conversation.getUserId().equals(LoginHelper.getUserId())) {
+            throw new ServiceException("无权访问该会话");
+        }
+
+        long lastEventId = lastEventIdHeader != null ? lastEventIdHeader
+            : lastEventIdParam != null ? lastEventIdParam : 0L;
+        SseEmitter emitter = new SseEmitter(0L);
+        chatStreamSessionManager.resume(conversationId, lastEventId, emitter);
+        return emitter;
+    }
 }
@@ -3,6 +3,8 @@ package com.alibaba.cloud.ai.copilot.controller.chat;
 import com.alibaba.cloud.ai.copilot.core.domain.R;
 import com.alibaba.cloud.ai.copilot.domain.dto.ConversationDTO;
 import com.alibaba.cloud.ai.copilot.domain.dto.CreateConversationRequest;
+import com.alibaba.cloud.ai.copilot.domain.dto.CursorPage;
+import com.alibaba.cloud.ai.copilot.domain.dto.MessageCursor;
 import com.alibaba.cloud.ai.copilot.domain.dto.PageResult;
 import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
 import com.alibaba.cloud.ai.copilot.mapper.ChatMessageMapper;
@@ -13,6 +15,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -89,11 +92,21 @@ public class ConversationController {
     }
 
     /**
-     * 获取会话历史消息
+     * 单页消息数量上限
+     */
+    private static final int MAX_MESSAGE_PAGE_SIZE = 200;
+
+    /**
+     * 获取会话历史消息（游标分页，从最新的消息往前翻页）
+     *
+     * @param cursor 上一页返回的 nextCursor，为空时返回最新一页
+     * @param size   每页数量
      */
     @GetMapping("/{conversationId}/messages")
-    public R<List<com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage>> getConversationMessages(
-        @PathVariable String conversationId
+    public R<CursorPage<com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage>> getConversationMessages(
+        @PathVariable String conversationId,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "50") int size
     ) {
         try {
             // 验证权限
@@ -108,23 +121,35 @@ public class ConversationController {
                 return R.fail("无权访问该会话");
             }
 
-            // 从数据库读取历史消息
-            List<ChatMessageEntity> entities = chatMessageMapper.selectByConversationId(conversationId);
+            // 按 (created_time, id) 游标读取一页（多取一条用于判断是否还有更多）
+            // SQL 中仅返回内容非空的 user/assistant，过滤 tool/system，避免历史记录污染前端展示，且每页都是满的
+            int pageSize = Math.max(1, Math.min(size, MAX_MESSAGE_PAGE_SIZE));
+            MessageCursor messageCursor;
+            try {
+                messageCursor = MessageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return R.fail(e.getMessage());
+            }
+            List<ChatMessageEntity> entities = messageCursor == null
+                ? chatMessageMapper.selectLatestPage(conversationId, pageSize + 1)
+                : chatMessageMapper.selectPageBefore(conversationId, messageCursor.createdTime(), messageCursor.id(), pageSize + 1);
+            boolean hasMore = entities.size() > pageSize;
+            if (hasMore) {
+                entities = entities.subList(0, pageSize);
+            }
+            String nextCursor = null;
+            if (hasMore) {
+                ChatMessageEntity oldest = entities.get(entities.size() - 1);
+                nextCursor = new MessageCursor(oldest.getCreatedTime(), oldest.getId()).encode();
+            }
+            // 查询结果按时间倒序，页内转换为正序返回
+            entities = new ArrayList<>(entities);
+            Collections.reverse(entities);
 
             // 转换为 DTO
             List<com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage> dtos = new ArrayList<>();
             for (ChatMessageEntity entity : entities) {
-                // 仅返回 user/assistant，过滤 tool/system 以及空内容，避免历史记录污染前端展示
-                if (entity.getRole() == null) {
-                    continue;
-                }
                 String role = entity.getRole().trim();
-                if (!("user".equals(role) || "assistant".equals(role))) {
-                    continue;
-                }
-                if (entity.getContent() == null || entity.getContent().trim().isEmpty()) {
-                    continue;
-                }
                 com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage dto =
                     new com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage();
                 dto.setRole(role);
@@ -134,7 +159,11 @@ public class ConversationController {
                 dtos.add(dto);
             }
 
-            return R.ok(dtos);
+            return R.ok(CursorPage.<com.alibaba.cloud.ai.copilot.domain.dto.ChatMessage>builder()
+                .records(dtos)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build());
         } catch (Exception e) {
             log.error("获取会话消息失败", e);
             return R.fail("获取会话消息失败: " + e.getMessage());
@@ -0,0 +1,33 @@
+package com.alibaba.cloud.ai.copilot.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPage<T> {
+
+    /**
+     * 数据列表
+     */
+    private List<T> records;
+
+    /**
+     * 下一页游标（传给下一次请求的 cursor 参数），没有更多数据时为 null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+}
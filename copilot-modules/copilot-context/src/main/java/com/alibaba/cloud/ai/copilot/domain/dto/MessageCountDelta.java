@@ -0,0 +1,31 @@
+package com.alibaba.cloud.ai.copilot.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话消息计数增量（批量刷新到 chat_conversation）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageCountDelta {
+
+    /**
+     * 会话ID
+     */
+    private String conversationId;
+
+    /**
+     * 消息数量增量
+     */
+    private long delta;
+
+    /**
+     * 最后一条消息时间
+     */
+    private LocalDateTime lastMessageTime;
+}
@@ -0,0 +1,45 @@
+package com.alibaba.cloud.ai.copilot.domain.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 聊天消息游标
+ * 以 (created_time, id) 唯一定位一条消息，对外编码为不透明的 URL 安全字符串
+ *
+ * @param createdTime 创建时间
+ * @param id          主键
+ */
+public record MessageCursor(LocalDateTime createdTime, long id) {
+
+    private static final char SEPARATOR = '|';
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = createdTime.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标字符串
+     *
+     * @param cursor 游标字符串
+     * @return 游标，cursor 为空时返回 null
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public static MessageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = raw.lastIndexOf(SEPARATOR);
+            return new MessageCursor(LocalDateTime.parse(raw.substring(0, index)), Long.parseLong(raw.substring(index + 1)));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无效的游标: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.alibaba.cloud.ai.copilot.domain.dto.model;
+
+/**
+ * 模型配置变更事件
+ * 模型配置写入成功后发布，用于失效已创建的模型实例
+ *
+ * @param configId 变更的配置ID，为 null 表示批量变更（失效全部）
+ */
+public record ModelConfigChangedEvent(Long configId) {
+
+    /**
+     * 批量变更
+     */
+    public static ModelConfigChangedEvent all() {
+        return new ModelConfigChangedEvent(null);
+    }
+}
@@ -2,28 +2,38 @@ package com.alibaba.cloud.ai.copilot.handler;
 
 import com.alibaba.cloud.ai.graph.streaming.OutputType;
 import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 输出处理器注册中心
  * 自动收集所有 OutputTypeHandler 实现类并提供统一的处理入口
+ * <p>
+ * 启动时按输出类型预先构建 EnumMap 分发表和每种类型的计数器、耗时指标，
+ * 逐 token 调用的 {@link #handle} 只做数组下标查找，不做任何控制台输出。
+ * </p>
  */
 @Slf4j
 @Component
 public class OutputHandlerRegistry {
 
-    private final Map<OutputType, OutputTypeHandler> handlers = new HashMap<>();
+    private final Map<OutputType, OutputTypeHandler> handlers = new EnumMap<>(OutputType.class);
+    private final Map<OutputType, OutputMeters> meters = new EnumMap<>(OutputType.class);
 
     /**
      * 构造函数，Spring 会自动注入所有 OutputTypeHandler 实现类
      */
-    public OutputHandlerRegistry(List<OutputTypeHandler> handlerList) {
+    public OutputHandlerRegistry(List<OutputTypeHandler> handlerList, MeterRegistry meterRegistry) {
         handlerList.forEach(handler -> {
             OutputType outputType = handler.getOutputType();
             if (handlers.containsKey(outputType)) {
@@ -35,6 +45,10 @@ public class OutputHandlerRegistry {
             log.debug("注册输出处理器: {} -> {}", outputType, handler.getClass().getSimpleName());
         });
 
+        for (OutputType outputType : OutputType.values()) {
+            meters.put(outputType, new OutputMeters(meterRegistry, outputType));
+        }
+
         log.info("输出处理器注册完成，共注册 {} 个处理器", handlers.size());
     }
 
@@ -45,19 +59,36 @@ public class OutputHandlerRegistry {
      */
     public void handle(StreamingOutput output, SseEmitter emitter) {
         OutputType outputType = output.getOutputType();
+        if (outputType == null) {
+            log.warn("输出类型为空，忽略");
+            return;
+        }
+        OutputMeters outputMeters = meters.get(outputType);
+        outputMeters.received.increment();
         OutputTypeHandler handler = handlers.get(outputType);
-        System.out.println("当前输出类型："+outputType);
         if (handler != null) {
+            long start = System.nanoTime();
             try {
                 handler.handle(output, emitter);
             } catch (Exception e) {
+                outputMeters.errors.increment();
                 log.error("处理输出类型 {} 时发生异常", outputType, e);
+            } finally {
+                outputMeters.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
         } else {
-            log.warn("未找到处理器，输出类型: {}", outputType);
+            log.debug("未找到处理器，输出类型: {}", outputType);
         }
     }
 
+    /**
+     * 流结束后释放各处理器为该流保存的状态
+     * @param emitter SSE 事件发射器
+     */
+    public void release(SseEmitter emitter) {
+        handlers.values().forEach(handler -> handler.release(emitter));
+    }
+
     /**
      * 获取已注册的处理器数量
      */
@@ -71,4 +102,23 @@ public class OutputHandlerRegistry {
     public boolean supports(OutputType outputType) {
         return handlers.containsKey(outputType);
     }
-}
\ No newline at end of file
+
+    /**
+     * 单个输出类型的指标（type 标签取值为固定的枚举名，基数有限）
+     */
+    private static final class OutputMeters {
+
+        private final Counter received;
+        private final Counter errors;
+        private final Timer latency;
+
+        OutputMeters(MeterRegistry meterRegistry, OutputType outputType) {
+            String type = outputType.name().toLowerCase(Locale.ROOT);
+            this.received = meterRegistry.counter("copilot.chat.output", "type", type);
+            this.errors = meterRegistry.counter("copilot.chat.output.errors", "type", type);
+            this.latency = Timer.builder("copilot.chat.output.handle")
+                    .tag("type", type)
+                    .register(meterRegistry);
+        }
+    }
+}
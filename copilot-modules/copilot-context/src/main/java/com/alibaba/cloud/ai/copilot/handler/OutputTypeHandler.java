@@ -20,4 +20,11 @@ public interface OutputTypeHandler {
      * @param emitter SSE 事件发射器，用于向前端推送事件
      */
     void handle(StreamingOutput output, SseEmitter emitter);
-}
\ No newline at end of file
+
+    /**
+     * 流结束后释放该流相关的状态
+     * @param emitter SSE 事件发射器
+     */
+    default void release(SseEmitter emitter) {
+    }
+}
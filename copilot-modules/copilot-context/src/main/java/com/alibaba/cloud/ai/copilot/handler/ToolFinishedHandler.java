@@ -3,35 +3,56 @@ package com.alibaba.cloud.ai.copilot.handler;
 import com.alibaba.cloud.ai.copilot.domain.dto.StateDataDTO;
 import com.alibaba.cloud.ai.copilot.enums.ToolType;
 import com.alibaba.cloud.ai.copilot.service.SseEventService;
+import com.alibaba.cloud.ai.copilot.service.stream.FileContentStreamer;
 import com.alibaba.cloud.ai.copilot.utils.PathUtils;
 import com.alibaba.cloud.ai.graph.streaming.OutputType;
 import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 工具调用完成处理器
  * 处理 AGENT_TOOL_FINISHED 类型的输出
+ * <p>
+ * 每个流记录已处理的消息位置和已发送的工具调用 ID，每次只处理新增的消息，
+ * 一轮内多次工具调用的总开销为 O(n)，也不会重复发送文件事件。
+ * </p>
+ * <p>
+ * 状态中的消息以 ConversationHistoryHook 加载的会话历史开头，之前轮次的工具调用已经发送过；
+ * 首次处理（或消息被压缩后重新扫描）时只从最后一条用户消息之后开始，即本轮产生的消息。
+ * </p>
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class ToolFinishedHandler implements OutputTypeHandler {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader ARGUMENTS_READER = OBJECT_MAPPER.readerFor(FileArguments.class);
+
     private final SseEventService sseEventService;
+    private final FileContentStreamer fileContentStreamer;
 
-    // 伪流式输出配置
-    private static final int CHUNK_SIZE = 100; // 每次发送的字符数
-    private static final int DELAY_MS = 200; // 每次发送间隔毫秒数
+    /**
+     * 每个流已处理的消息位置和已发送的工具调用（key: SseEmitter）
+     */
+    private final Map<SseEmitter, StreamCursor> cursors = new ConcurrentHashMap<>();
 
     @Override
     public OutputType getOutputType() {
@@ -40,41 +61,105 @@ public class ToolFinishedHandler implements OutputTypeHandler {
 
     @Override
     public void handle(StreamingOutput output, SseEmitter emitter) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            Object stateData = output.state().data();
-            if (stateData != null) {
-                StateDataDTO data = objectMapper.convertValue(stateData, StateDataDTO.class);
-                List<StateDataDTO.MessageDTO> messages = data.getMessages();
-                for (StateDataDTO.MessageDTO message : messages) {
-                    if ("ASSISTANT".equals(message.getMessageType()) && message.getToolCalls() != null) {
-                        message.getToolCalls().forEach(toolCall -> {
-                            if (toolCall.getArguments() != null) {
-                                String filePath = toolCall.getArguments().getFilePath();
-                                String content = toolCall.getArguments().getContent();
-                                String toolName = toolCall.getName();
-
-                                if (filePath != null && !filePath.isEmpty()) {
-                                    // 统一路径格式（转换为 workspace/xxx 的标准格式）
-                                    String normalizedPath = PathUtils.normalizeWorkspacePath(filePath);
-                                    log.info("Tool: {}, Original path: {}, Normalized path: {}", toolName, filePath, normalizedPath);
-                                    // 根据工具类型发送不同的事件
-                                    ToolType toolType = ToolType.fromToolName(toolName);
-                                    if (toolType != null) {
-                                        sendToolEvent(emitter, toolType, normalizedPath, content);
-                                    } else {
-                                        log.warn("Unknown tool type: {}", toolName);
-                                        // 如果工具类型未知，使用默认的伪流式输出
-                                        sendContentWithPseudoStreaming(emitter, normalizedPath, content);
-                                    }
-                                }
-                            }
-                        });
-                    }
+            Map<String, Object> stateData = output.state().data();
+            if (stateData == null || !(stateData.get("messages") instanceof List<?> messages)) {
+                return;
+            }
+            StreamCursor cursor = cursors.computeIfAbsent(emitter, key -> new StreamCursor());
+            // 消息被压缩（条数变少）时重新扫描本轮的消息，已发送的工具调用由 ID 去重
+            int from = cursor.processedMessages > 0 && messages.size() >= cursor.processedMessages
+                ? cursor.processedMessages
+                : turnStart(messages);
+            for (int i = from; i < messages.size(); i++) {
+                handleMessage(messages.get(i), cursor, emitter);
+            }
+            cursor.processedMessages = messages.size();
+        } catch (Exception e) {
+            log.error("[Error] Failed to handle tool finished output: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void release(SseEmitter emitter) {
+        cursors.remove(emitter);
+    }
+
+    /**
+     * 本轮消息的起始位置：最后一条用户消息之后，没有用户消息时从头开始
+     */
+    private static int turnStart(List<?> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Object message = messages.get(i);
+            if (message instanceof UserMessage
+                || message instanceof Map<?, ?> map && "USER".equals(map.get("messageType"))) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 处理单条消息中尚未发送过的工具调用
+     */
+    private void handleMessage(Object message, StreamCursor cursor, SseEmitter emitter) {
+        if (message instanceof AssistantMessage assistant) {
+            if (!assistant.hasToolCalls()) {
+                return;
+            }
+            for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                if (cursor.markEmitted(toolCall.id())) {
+                    handleToolCall(emitter, toolCall.name(), readArguments(toolCall.arguments()));
+                }
+            }
+        } else if (message instanceof Map<?, ?>) {
+            // 从检查点恢复的状态中消息可能是 Map，只转换这一条
+            StateDataDTO.MessageDTO dto = OBJECT_MAPPER.convertValue(message, StateDataDTO.MessageDTO.class);
+            if (!"ASSISTANT".equals(dto.getMessageType()) || dto.getToolCalls() == null) {
+                return;
+            }
+            for (StateDataDTO.ToolCallDTO toolCall : dto.getToolCalls()) {
+                StateDataDTO.ToolArgumentsDTO arguments = toolCall.getArguments();
+                if (arguments != null && cursor.markEmitted(toolCall.getId())) {
+                    handleToolCall(emitter, toolCall.getName(),
+                        new FileArguments(arguments.getFilePath(), arguments.getContent()));
                 }
             }
+        }
+    }
+
+    private void handleToolCall(SseEmitter emitter, String toolName, FileArguments arguments) {
+        if (arguments == null || arguments.filePath() == null || arguments.filePath().isEmpty()) {
+            return;
+        }
+        String filePath = arguments.filePath();
+        String content = arguments.content();
+        // 统一路径格式（转换为 workspace/xxx 的标准格式）
+        String normalizedPath = PathUtils.normalizeWorkspacePath(filePath);
+        log.info("Tool: {}, Original path: {}, Normalized path: {}", toolName, filePath, normalizedPath);
+        // 根据工具类型发送不同的事件
+        ToolType toolType = ToolType.fromToolName(toolName);
+        if (toolType != null) {
+            sendToolEvent(emitter, toolType, normalizedPath, content);
+        } else {
+            log.warn("Unknown tool type: {}", toolName);
+            // 如果工具类型未知，使用默认的伪流式输出
+            fileContentStreamer.stream(emitter, normalizedPath, content);
+        }
+    }
+
+    /**
+     * 只解析工具参数中需要的字段（file_path、content）
+     */
+    private FileArguments readArguments(String arguments) {
+        if (arguments == null || arguments.isEmpty()) {
+            return null;
+        }
+        try {
+            return ARGUMENTS_READER.readValue(arguments);
         } catch (Exception e) {
-            log.error("[Error] Failed to convert state data to StateDataDTO: {}", e.getMessage(), e);
+            log.warn("Failed to parse tool arguments: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -109,58 +194,26 @@ public class ToolFinishedHandler implements OutputTypeHandler {
     }
 
     /**
-     * 伪流式输出内容
-     * 当内容超过100字符时，分块发送以模拟流式效果
+     * 工具参数中需要的字段
      */
-    private void sendContentWithPseudoStreaming(SseEmitter emitter, String filePath, String content) {
-        if (content == null || content.isEmpty()) {
-            return;
-        }
-
-        // 如果内容长度小于等于100字符，直接发送
-        if (content.length() <= CHUNK_SIZE) {
-            sseEventService.sendFileEditProgress(emitter, filePath, content);
-            return;
-        }
-
-        // 异步执行伪流式输出
-        CompletableFuture.runAsync(() -> {
-            try {
-                log.info("Starting pseudo streaming output for file: {}, content length: {}", filePath, content.length());
-
-                // 分块发送内容
-                StringBuilder accumulatedContent = new StringBuilder();
-                int totalLength = content.length();
-
-                for (int i = 0; i < totalLength; i += CHUNK_SIZE) {
-                    int endIndex = Math.min(i + CHUNK_SIZE, totalLength);
-                    String chunk = content.substring(i, endIndex);
-                    accumulatedContent.append(chunk);
-
-                    // 发送累积的内容（模拟逐步构建文件的效果）
-                    sseEventService.sendFileEditProgress(emitter, filePath, accumulatedContent.toString());
-
-                    log.debug("Sent chunk {}/{}, accumulated length: {}",
-                             (i / CHUNK_SIZE) + 1,
-                             (totalLength + CHUNK_SIZE - 1) / CHUNK_SIZE,
-                             accumulatedContent.length());
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record FileArguments(@JsonProperty("file_path") String filePath,
+                                 @JsonProperty("content") String content) {
+    }
 
-                    // 如果不是最后一块，添加延迟
-                    if (endIndex < totalLength) {
-                        Thread.sleep(DELAY_MS);
-                    }
-                }
+    /**
+     * 单个流的处理进度
+     */
+    private static class StreamCursor {
 
-                log.info("Completed pseudo streaming output for file: {}", filePath);
+        private final Set<String> emittedToolCallIds = new HashSet<>();
+        private int processedMessages;
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("Pseudo streaming interrupted for file: {}", filePath);
-            } catch (Exception e) {
-                log.error("Error during pseudo streaming for file: {}", filePath, e);
-                // 发生错误时，发送完整内容作为备用
-                sseEventService.sendFileEditProgress(emitter, filePath, content);
-            }
-        });
+        /**
+         * 标记工具调用已发送，已发送过时返回 false（没有 ID 的工具调用总是处理）
+         */
+        boolean markEmitted(String toolCallId) {
+            return toolCallId == null || toolCallId.isEmpty() || emittedToolCallIds.add(toolCallId);
+        }
     }
-}
\ No newline at end of file
+}
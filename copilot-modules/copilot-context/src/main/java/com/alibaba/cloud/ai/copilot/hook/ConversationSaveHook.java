@@ -1,13 +1,15 @@
 package com.alibaba.cloud.ai.copilot.hook;
 
 import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
-import com.alibaba.cloud.ai.copilot.mapper.ChatMessageMapper;
+import com.alibaba.cloud.ai.copilot.service.message.ChatMessageWriter;
+import com.alibaba.cloud.ai.copilot.service.message.ConversationHistoryCache;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.agent.hook.HookPosition;
 import com.alibaba.cloud.ai.graph.agent.hook.HookPositions;
 import com.alibaba.cloud.ai.graph.agent.hook.messages.AgentCommand;
 import com.alibaba.cloud.ai.graph.agent.hook.messages.MessagesModelHook;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.AssistantMessage;
@@ -16,14 +18,17 @@ import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 会话保存 Hook
  * 在模型调用后，保存 Assistant 的响应到 chat_message 表
+ * 消息交给 {@link ChatMessageWriter} 异步批量写入，不阻塞 Agent 执行线程，并追加到会话历史尾部缓存
  *
  * @author better
  */
@@ -33,7 +38,9 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ConversationSaveHook extends MessagesModelHook {
 
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ConversationHistoryCache conversationHistoryCache;
+    private final MeterRegistry meterRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Override
@@ -56,6 +63,7 @@ public class ConversationSaveHook extends MessagesModelHook {
         }
 
         if (conversationId != null && !messages.isEmpty()) {
+            long start = System.nanoTime();
             try {
 
                 AssistantMessage finalAssistantMessage = null;
@@ -97,7 +105,7 @@ public class ConversationSaveHook extends MessagesModelHook {
 
                     if (startIndex >= 0) {
                         // 保存从 startIndex 到 finalAssistantIndex 的所有消息
-                        int savedCount = 0;
+                        List<ChatMessageEntity> entities = new ArrayList<>();
                         for (int i = startIndex; i <= finalAssistantIndex; i++) {
                             Message msg = messages.get(i);
 
@@ -125,8 +133,7 @@ public class ConversationSaveHook extends MessagesModelHook {
                                     }
                                 }
 
-                                chatMessageMapper.insert(entity);
-                                savedCount++;
+                                entities.add(entity);
                                 log.debug("保存 Assistant 消息: conversationId={}, hasToolCalls={}",
                                     conversationId, assistantMsg.getToolCalls() != null && !assistantMsg.getToolCalls().isEmpty());
 
@@ -161,15 +168,16 @@ public class ConversationSaveHook extends MessagesModelHook {
                                     log.warn("保存 tool_call_id 到 metadata 失败", e);
                                 }
 
-                                chatMessageMapper.insert(entity);
-                                savedCount++;
+                                entities.add(entity);
                                 log.debug("保存 Tool 消息: conversationId={}, toolCallId={}",
                                     conversationId, toolCallId);
                             }
                         }
 
+                        chatMessageWriter.writeAll(entities);
+                        conversationHistoryCache.append(conversationId, entities);
                         log.debug("保存完整交互序列: conversationId={}, savedCount={}",
-                            conversationId, savedCount);
+                            conversationId, entities.size());
                     }
                 } else {
                     log.debug("工具调用未完成，暂不保存: conversationId={}, messageCount={}",
@@ -177,6 +185,10 @@ public class ConversationSaveHook extends MessagesModelHook {
                 }
             } catch (Exception e) {
                 log.error("保存消息到数据库失败: conversationId={}", conversationId, e);
+            } finally {
+                // 模型调用后保存消息占用 Agent 线程的时间（实际写库由 write-behind 线程完成）
+                meterRegistry.timer("copilot.chat.persistence.hook")
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
         }
 
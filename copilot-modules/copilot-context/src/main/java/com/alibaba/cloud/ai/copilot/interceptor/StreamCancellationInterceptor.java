@@ -0,0 +1,41 @@
+package com.alibaba.cloud.ai.copilot.interceptor;
+
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamRegistry;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 流取消拦截器
+ * 客户端断开后，阻止 Agent 在工具循环中继续发起模型调用
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StreamCancellationInterceptor extends ModelInterceptor {
+
+    private final ChatStreamRegistry chatStreamRegistry;
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        if (request.getContext() != null) {
+            Object streamId = request.getContext().get("streamId");
+            if (streamId != null && chatStreamRegistry.isCancelled(streamId.toString())) {
+                log.debug("聊天流已取消，跳过模型调用: streamId={}", streamId);
+                throw new CancellationException("聊天流已取消: " + streamId);
+            }
+        }
+        return handler.call(request);
+    }
+
+    @Override
+    public String getName() {
+        return "stream_cancellation_interceptor";
+    }
+}
@@ -1,11 +1,12 @@
 package com.alibaba.cloud.ai.copilot.mapper;
 
 import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.alibaba.cloud.ai.copilot.mybatis.core.mapper.BaseMapperPlus;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -14,16 +15,17 @@ import java.util.List;
  * @author better
  */
 @Mapper
-public interface ChatMessageMapper extends BaseMapper<ChatMessageEntity> {
+public interface ChatMessageMapper extends BaseMapperPlus<ChatMessageEntity, ChatMessageEntity> {
 
     /**
-     * 根据会话ID查询历史消息（按创建时间升序）
+     * 根据会话ID查询历史消息（按创建时间升序，不含摘要消息）
      *
      * @param conversationId 会话ID
      * @return 消息列表
      */
     @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} " +
-            "ORDER BY created_time ASC")
+            "AND (is_compressed = 0 OR is_compressed IS NULL) " +
+            "ORDER BY created_time ASC, id ASC")
     List<ChatMessageEntity> selectByConversationId(@Param("conversationId") String conversationId);
 
     /**
@@ -35,13 +37,79 @@ public interface ChatMessageMapper extends BaseMapper<ChatMessageEntity> {
      * @return 消息列表（按创建时间倒序）
      */
     @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} " +
-            "ORDER BY created_time DESC LIMIT #{limit} OFFSET #{offset}")
+            "ORDER BY created_time DESC, id DESC LIMIT #{limit} OFFSET #{offset}")
     List<ChatMessageEntity> selectByConversationIdWithPagination(
             @Param("conversationId") String conversationId,
             @Param("offset") int offset,
             @Param("limit") int limit
     );
 
+    /**
+     * 查询会话最近一次的摘要消息
+     *
+     * @param conversationId 会话ID
+     * @return 摘要消息，不存在时返回 null
+     */
+    @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} AND is_compressed = 1 " +
+            "ORDER BY compression_timestamp DESC, id DESC LIMIT 1")
+    ChatMessageEntity selectLatestSummary(@Param("conversationId") String conversationId);
+
+    /**
+     * 查询摘要边界之后的消息（按创建时间倒序，返回最新的消息，不含摘要消息）
+     * 边界只按主键判断：同一会话的消息按写入顺序分配递增的雪花 ID，而 created_time 在数据库中只有秒级精度
+     *
+     * @param conversationId 会话ID
+     * @param id             摘要覆盖的最后一条消息的主键
+     * @param limit          限制数量
+     * @return 消息列表（按创建时间倒序）
+     */
+    @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} " +
+            "AND (is_compressed = 0 OR is_compressed IS NULL) AND id > #{id} " +
+            "ORDER BY created_time DESC, id DESC LIMIT #{limit}")
+    List<ChatMessageEntity> selectAfter(
+            @Param("conversationId") String conversationId,
+            @Param("id") Long id,
+            @Param("limit") int limit
+    );
+
+    /**
+     * 游标分页：查询会话最新的一页可展示消息（内容非空的 user / assistant，按 (created_time, id) 倒序）
+     *
+     * @param conversationId 会话ID
+     * @param limit          限制数量
+     * @return 消息列表（按创建时间倒序）
+     */
+    @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} " +
+            "AND role IN ('user', 'assistant') AND (is_compressed = 0 OR is_compressed IS NULL) " +
+            "AND content IS NOT NULL AND TRIM(content) <> '' " +
+            "ORDER BY created_time DESC, id DESC LIMIT #{limit}")
+    List<ChatMessageEntity> selectLatestPage(
+            @Param("conversationId") String conversationId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * 游标分页：查询游标 (created_time, id) 之前的一页可展示消息（按 (created_time, id) 倒序）
+     * 使用 idx_conversation_time 索引定位，不随页数增加而变慢
+     *
+     * @param conversationId 会话ID
+     * @param createdTime    游标消息的创建时间
+     * @param id             游标消息的主键
+     * @param limit          限制数量
+     * @return 消息列表（按创建时间倒序）
+     */
+    @Select("SELECT * FROM chat_message WHERE conversation_id = #{conversationId} " +
+            "AND created_time <= #{createdTime} AND (created_time < #{createdTime} OR id < #{id}) " +
+            "AND role IN ('user', 'assistant') AND (is_compressed = 0 OR is_compressed IS NULL) " +
+            "AND content IS NOT NULL AND TRIM(content) <> '' " +
+            "ORDER BY created_time DESC, id DESC LIMIT #{limit}")
+    List<ChatMessageEntity> selectPageBefore(
+            @Param("conversationId") String conversationId,
+            @Param("createdTime") LocalDateTime createdTime,
+            @Param("id") Long id,
+            @Param("limit") int limit
+    );
+
     /**
      * 统计会话的消息总数
      *
@@ -1,8 +1,14 @@
 package com.alibaba.cloud.ai.copilot.mapper;
 
+import com.alibaba.cloud.ai.copilot.domain.dto.MessageCountDelta;
 import com.alibaba.cloud.ai.copilot.domain.entity.ConversationEntity;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 会话 Mapper
@@ -11,5 +17,51 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface ConversationMapper extends BaseMapper<ConversationEntity> {
-}
 
+    /**
+     * 批量累加消息计数（一条 UPDATE 刷新多个会话的增量）
+     *
+     * @param deltas 各会话的增量
+     * @return 更新行数
+     */
+    @Update("<script>" +
+            "UPDATE chat_conversation SET " +
+            "message_count = IFNULL(message_count, 0) + CASE conversation_id " +
+            "<foreach collection='deltas' item='d'>WHEN #{d.conversationId} THEN #{d.delta} </foreach>" +
+            "ELSE 0 END, " +
+            "last_message_time = CASE conversation_id " +
+            "<foreach collection='deltas' item='d'>" +
+            "WHEN #{d.conversationId} THEN GREATEST(IFNULL(last_message_time, #{d.lastMessageTime}), #{d.lastMessageTime}) " +
+            "</foreach>" +
+            "ELSE last_message_time END, " +
+            "updated_time = CASE conversation_id " +
+            "<foreach collection='deltas' item='d'>WHEN #{d.conversationId} THEN GREATEST(updated_time, #{d.lastMessageTime}) </foreach>" +
+            "ELSE updated_time END " +
+            "WHERE conversation_id IN " +
+            "<foreach collection='deltas' item='d' open='(' separator=',' close=')'>#{d.conversationId}</foreach>" +
+            "</script>")
+    int batchIncrementMessageCount(@Param("deltas") List<MessageCountDelta> deltas);
+
+    /**
+     * 按 chat_message 校正消息计数和最后消息时间（保持 updated_time 不变，不影响会话列表排序）
+     * 候选会话由 chat_message 的 created_time 决定，不依赖 chat_conversation.last_message_time：
+     * 丢失的增量同时包括计数和最后消息时间，按后者筛选会漏掉需要校正的会话
+     *
+     * @param since 最后一条消息的创建时间下限（含）
+     * @param until 最后一条消息的创建时间上限（不含），应早于当前时间，确保期间的消息和计数增量都已落库
+     * @return 校正的会话数量
+     */
+    @Update("UPDATE chat_conversation c JOIN (" +
+            "SELECT m.conversation_id, MAX(m.created_time) AS last_time, " +
+            "SUM(m.role = 'user' AND (m.is_compressed = 0 OR m.is_compressed IS NULL)) AS user_count " +
+            "FROM chat_message m WHERE m.conversation_id IN (" +
+            "SELECT r.conversation_id FROM chat_message r WHERE r.created_time >= #{since}) " +
+            "GROUP BY m.conversation_id HAVING MAX(m.created_time) < #{until}) s " +
+            "ON s.conversation_id = c.conversation_id " +
+            "SET c.message_count = s.user_count, " +
+            "c.last_message_time = GREATEST(IFNULL(c.last_message_time, s.last_time), s.last_time), " +
+            "c.updated_time = c.updated_time " +
+            "WHERE c.del_flag = 0 AND (IFNULL(c.message_count, 0) <> s.user_count " +
+            "OR c.last_message_time IS NULL OR c.last_message_time < s.last_time)")
+    int reconcileMessageCount(@Param("since") LocalDateTime since, @Param("until") LocalDateTime until);
+}
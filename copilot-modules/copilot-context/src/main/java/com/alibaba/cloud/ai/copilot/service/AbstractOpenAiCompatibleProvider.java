@@ -1,10 +1,12 @@
 package com.alibaba.cloud.ai.copilot.service;
 
 import cn.hutool.core.bean.BeanUtil;
+import com.alibaba.cloud.ai.copilot.config.ModelHttpClients;
 import com.alibaba.cloud.ai.copilot.domain.dto.model.DiscoveredModelInfo;
 import com.alibaba.cloud.ai.copilot.domain.dto.model.HealthCheckResult;
 import com.alibaba.cloud.ai.copilot.domain.entity.LlmEntity;
 import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
+import com.alibaba.cloud.ai.copilot.service.guard.ModelCallRejectedException;
 import io.micrometer.observation.ObservationRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,6 +16,8 @@ import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
@@ -36,6 +40,11 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
 
     protected final LlmService llmService;
 
+    /**
+     * 共享 HTTP 连接池，所有模型实例复用
+     */
+    protected final ModelHttpClients modelHttpClients;
+
     // ==================== 默认配置常量 ====================
     protected static final int DEFAULT_MAX_TOKENS = 4096;
     protected static final double DEFAULT_TEMPERATURE = 0.7;
@@ -120,12 +129,15 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
     // ==================== OpenAiApi 构建 ====================
 
     /**
-     * 构建 OpenAiApi 实例
+     * 构建 OpenAiApi 实例（同步和流式调用均使用共享连接池，并挂上该端点的熔断和并发限制）
      */
     protected OpenAiApi buildOpenAiApi(ModelConfigEntity config) {
+        String baseUrl = resolveBaseUrl(config);
         return OpenAiApi.builder()
-                .baseUrl(resolveBaseUrl(config))
+                .baseUrl(baseUrl)
                 .apiKey(config.getApiKey())
+                .restClientBuilder(modelHttpClients.restClientBuilder(getProviderName(), baseUrl))
+                .webClientBuilder(modelHttpClients.webClientBuilder(getProviderName(), baseUrl))
                 .build();
     }
 
@@ -154,10 +166,24 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
 
     /**
      * 构建重试模板
+     * <p>
+     * 只重试可重试的错误；熔断或并发限制拒绝的请求不再重试，避免线程在退避中等待一个已知不可用的端点
+     * </p>
      */
     protected RetryTemplate buildRetryTemplate() {
+        SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy(3) {
+            @Override
+            public boolean canRetry(RetryContext context) {
+                Throwable last = context.getLastThrowable();
+                if (last instanceof ModelCallRejectedException
+                        || (last instanceof Exception e && !isRetryableException(e))) {
+                    return false;
+                }
+                return super.canRetry(context);
+            }
+        };
         return RetryTemplate.builder()
-                .maxAttempts(3)
+                .customPolicy(retryPolicy)
                 .exponentialBackoff(1000, 2, 10000)
                 .build();
     }
@@ -510,6 +536,17 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
             504   // Gateway Timeout - 网关超时
     );
 
+    /**
+     * 判断 HTTP 状态码是否属于可重试的错误（限流或服务端错误）
+     * <p>熔断器和并发限制按此分类统计端点失败</p>
+     *
+     * @param statusCode HTTP 状态码
+     * @return true 如果可以重试
+     */
+    public static boolean isRetryableStatus(int statusCode) {
+        return RETRYABLE_STATUS_CODES.contains(statusCode) || statusCode >= 500;
+    }
+
     /**
      * 判断异常是否可重试
      * <p>
@@ -517,6 +554,7 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
      * - 5xx 服务端错误（500, 502, 503, 504）
      * - 429 限流错误
      * - 网络连接/超时错误
+     * - 熔断或并发限制拒绝（仅路由切换到其他端点，RetryTemplate 不会重试）
      * </p>
      * <p>
      * 不可重试的情况：
@@ -527,7 +565,12 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
      * @param e 异常
      * @return true 如果可以重试，false 如果不应重试
      */
-    protected boolean isRetryableException(Exception e) {
+    public boolean isRetryableException(Exception e) {
+        // 0. 端点被熔断或并发已满，其他端点仍可能可用
+        if (e instanceof ModelCallRejectedException) {
+            return true;
+        }
+
         // 1. 检查 HTTP 客户端错误（4xx）
         if (e instanceof HttpClientErrorException clientError) {
             int statusCode = clientError.getStatusCode().value();
@@ -580,7 +623,12 @@ public abstract class AbstractOpenAiCompatibleProvider implements ModelProvider
      * @param e 异常
      * @return HTTP 状态码，如果无法提取则返回 null
      */
-    protected Integer extractHttpStatusCode(Exception e) {
+    public Integer extractHttpStatusCode(Exception e) {
+        // 本地拒绝，没有发出请求
+        if (e instanceof ModelCallRejectedException) {
+            return null;
+        }
+
         // 检查异常消息中是否包含状态码信息
         String message = e.getMessage();
         if (message != null) {
@@ -15,6 +15,11 @@ public interface SseEventService {
      */
     void sendFileEditProgress(SseEmitter emitter,String filePath, String content);
 
+    /**
+     * 发送文件编辑增量事件（content 为从 offset 开始的片段，前端按偏移量拼接）
+     */
+    void sendFileEditProgress(SseEmitter emitter, String filePath, String content, int offset);
+
     /**
      * 发送聊天内容事件
      */
@@ -46,4 +51,13 @@ public interface SseEventService {
      */
     void sendConversationId(SseEmitter emitter, String conversationId);
 
+    /**
+     * 发送错误事件（如模型服务熔断、并发已满），前端据此提示用户而不是等待超时
+     * @param emitter SSE 发射器
+     * @param code 错误码
+     * @param message 错误描述
+     * @param retryAfterMs 建议的重试等待时间（毫秒），未知时为 0
+     */
+    void sendError(SseEmitter emitter, String code, String message, long retryAfterMs);
+
 }
\ No newline at end of file
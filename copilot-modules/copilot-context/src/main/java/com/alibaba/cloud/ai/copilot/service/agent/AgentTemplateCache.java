@@ -0,0 +1,161 @@
+package com.alibaba.cloud.ai.copilot.service.agent;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.service.cache.BoundedAsyncCache;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * ReactAgent 模板缓存
+ * <p>
+ * 按 (模型配置ID, 工具集版本, 用户工作目录) 缓存已构建好的 ReactAgent，
+ * 每次请求只需创建新的 RunnableConfig，避免重复构建 Hook、工具数组和系统提示词。
+ * 同一个键并发未命中时只构建一次，超出容量时淘汰最久未使用的模板（见 {@link BoundedAsyncCache}）。
+ * </p>
+ * <p>
+ * 模型配置刷新或工具变更时需要调用对应的失效方法；构建期间被失效的模板不会放入缓存（可能基于旧配置）。
+ * 模板创建后超过有效期会在下次访问时重新构建，与模型实例缓存的有效期一致，兜底处理丢失的失效通知。
+ * </p>
+ */
+@Slf4j
+@Component
+public class AgentTemplateCache {
+
+    private final ChatProperties chatProperties;
+
+    /**
+     * 模板缓存（key: 模型配置ID + 工具集版本 + 工作目录）
+     */
+    private final BoundedAsyncCache<TemplateKey, AgentTemplate> templates;
+
+    public AgentTemplateCache(ChatProperties chatProperties) {
+        this.chatProperties = chatProperties;
+        this.templates = new BoundedAsyncCache<>(
+                () -> chatProperties.getAgentCache().getMaxSize(),
+                () -> chatProperties.getAgentCache().getTtlSeconds() * 1000,
+                new BoundedAsyncCache.Listener<>() {
+                    @Override
+                    public void onRemoval(TemplateKey key, BoundedAsyncCache.RemovalCause cause) {
+                        log.debug("移除 Agent 模板: {}, cause={}", key, cause);
+                    }
+                });
+    }
+
+    /**
+     * 获取或创建 Agent 模板
+     *
+     * @param modelConfigId  模型配置ID
+     * @param toolSetVersion 工具快照版本
+     * @param workspace      用户工作目录
+     * @param factory        模板构建逻辑（缓存未命中时调用）
+     * @return Agent 模板
+     */
+    public AgentTemplate getOrCreate(String modelConfigId, long toolSetVersion, String workspace,
+                                     Supplier<AgentTemplate> factory) {
+        if (!chatProperties.getAgentCache().isEnabled()) {
+            return factory.get();
+        }
+        return templates.get(new TemplateKey(modelConfigId, toolSetVersion, workspace), () -> {
+            log.info("构建 Agent 模板: modelConfigId={}, toolSetVersion={}, workspace={}",
+                    modelConfigId, toolSetVersion, workspace);
+            return factory.get();
+        });
+    }
+
+    /**
+     * 失效指定模型配置的所有模板
+     *
+     * @param modelConfigId 模型配置ID
+     */
+    public void invalidateModelConfig(String modelConfigId) {
+        int removed = templates.removeIf((key, template) -> Objects.equals(key.modelConfigId(), modelConfigId)).size();
+        log.info("已失效 Agent 模板: modelConfigId={}, removed={}", modelConfigId, removed);
+    }
+
+    /**
+     * 工具快照已更新，移除基于旧版本工具集构建的模板
+     *
+     * @param toolSetVersion 最新的工具快照版本
+     */
+    public void onToolSetChanged(long toolSetVersion) {
+        templates.removeIf((key, template) -> key.toolSetVersion() < toolSetVersion);
+        log.info("工具集已变更，清理旧版本 Agent 模板: toolSetVersion={}", toolSetVersion);
+    }
+
+    /**
+     * 清空全部模板
+     */
+    public void invalidateAll() {
+        templates.invalidateAll();
+        log.info("清空全部 Agent 模板缓存");
+    }
+
+    /**
+     * 获取当前缓存的模板数量
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * 模板缓存键
+     */
+    private record TemplateKey(String modelConfigId, long toolSetVersion, String workspace) {
+    }
+
+    /**
+     * Agent 模板：已构建的 ReactAgent 及其共享的 CheckpointSaver
+     * <p>
+     * 多个请求共享同一个 Agent，通过各自的 threadId 隔离检查点，
+     * 请求结束后需调用 {@link #release} 释放对应线程的检查点。
+     * 完成、出错或取消时都会删除检查点，遗漏释放的检查点由 saver 的 LRU 淘汰兜底。
+     * </p>
+     */
+    public static class AgentTemplate {
+
+        private final ReactAgent agent;
+        private final BaseCheckpointSaver saver;
+        private final Tags modelTags;
+
+        public AgentTemplate(ReactAgent agent, BaseCheckpointSaver saver, Tags modelTags) {
+            this.agent = agent;
+            this.saver = saver;
+            this.modelTags = modelTags;
+        }
+
+        public ReactAgent getAgent() {
+            return agent;
+        }
+
+        public BaseCheckpointSaver getSaver() {
+            return saver;
+        }
+
+        /**
+         * 模型指标标签（provider、model）
+         */
+        public Tags getModelTags() {
+            return modelTags;
+        }
+
+        /**
+         * 释放某次执行在共享 saver 中留下的检查点（完成、出错或取消时调用）
+         *
+         * @param config 本次执行使用的 RunnableConfig
+         */
+        public void release(RunnableConfig config) {
+            try {
+                saver.clear(config);
+            } catch (Exception e) {
+                log.warn("释放 Agent 检查点失败: threadId={}", config.threadId().orElse(null), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.alibaba.cloud.ai.copilot.service.agent;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 有界的 Agent 检查点存储
+ * <p>
+ * 替代每个 Agent 模板内的 MemorySaver：检查点按 threadId 序列化（超过阈值时 GZIP 压缩）后保存在进程内，
+ * 每个线程只保留最近的若干个检查点，执行结束（完成、出错或取消）时通过 {@link #clear} 删除。
+ * </p>
+ * <p>
+ * 只保留编码后的字节，按线程数量和字节数做 LRU 淘汰，每个活跃会话占用的堆内存有上限且可通过指标观测。
+ * threadId 是每次请求随机生成的，检查点不跨请求、不跨节点使用，因此不写入 Redis。
+ * </p>
+ */
+@Slf4j
+@Component
+public class BoundedCheckpointSaver implements BaseCheckpointSaver {
+
+    private final ChatProperties chatProperties;
+    private final StateSerializer serializer = new SpringAIJacksonStateSerializer(OverAllState::new);
+
+    private final Counter oversizeCounter;
+    private final Counter evictionCounter;
+    private final DistributionSummary checkpointSize;
+
+    /**
+     * 线程检查点（访问顺序，最久未使用的在前）
+     */
+    private final LinkedHashMap<String, ThreadCheckpoints> threads = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalWeight;
+
+    public BoundedCheckpointSaver(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.chatProperties = chatProperties;
+        this.oversizeCounter = meterRegistry.counter("copilot.agent.checkpoint.oversize");
+        this.evictionCounter = meterRegistry.counter("copilot.agent.checkpoint.local.evictions");
+        this.checkpointSize = DistributionSummary.builder("copilot.agent.checkpoint.size")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("copilot.agent.checkpoint.local.threads", this, BoundedCheckpointSaver::size)
+                .register(meterRegistry);
+        Gauge.builder("copilot.agent.checkpoint.local.weight", this, BoundedCheckpointSaver::weight)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        ThreadCheckpoints checkpoints = load(threadIdOf(config));
+        if (checkpoints == null) {
+            return List.of();
+        }
+        List<Checkpoint> result = new ArrayList<>();
+        for (EncodedCheckpoint encoded : checkpoints.snapshot()) {
+            result.add(decode(encoded));
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        ThreadCheckpoints checkpoints = load(threadIdOf(config));
+        if (checkpoints == null) {
+            return Optional.empty();
+        }
+        Optional<String> checkpointId = config.checkPointId();
+        for (EncodedCheckpoint encoded : checkpoints.snapshot()) {
+            if (checkpointId.isEmpty() || checkpointId.get().equals(encoded.id())) {
+                return Optional.of(decode(encoded));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadId = threadIdOf(config);
+        ChatProperties.Checkpoint properties = chatProperties.getCheckpoint();
+        EncodedCheckpoint encoded = encode(checkpoint, properties.getCompressThresholdBytes());
+        checkpointSize.record(encoded.weight());
+
+        ThreadCheckpoints checkpoints = load(threadId);
+        if (checkpoints == null) {
+            checkpoints = new ThreadCheckpoints();
+        }
+        synchronized (checkpoints) {
+            Optional<String> checkpointId = config.checkPointId();
+            if (checkpointId.isPresent()) {
+                // 更新已有检查点（与 MemorySaver 语义一致）
+                if (!checkpoints.replace(checkpointId.get(), encoded)) {
+                    throw new IllegalArgumentException("Checkpoint with id " + checkpointId.get() + " not found!");
+                }
+            } else {
+                checkpoints.addFirst(encoded);
+            }
+            // 只保留最近的若干个检查点，且总大小不超过上限（至少保留最新的一个）
+            checkpoints.trim(Math.max(1, properties.getMaxCheckpointsPerThread()), properties.getMaxBytesPerThread());
+        }
+        if (encoded.weight() > properties.getMaxBytesPerThread()) {
+            // 最新的检查点本身已超过上限，仍然保留，供排查单个检查点过大的会话
+            oversizeCounter.increment();
+            log.warn("检查点超过大小上限: threadId={}, bytes={}", threadId, encoded.weight());
+        }
+        cache(threadId, checkpoints);
+
+        return checkpointId(config, checkpoint.getId());
+    }
+
+    /**
+     * 删除线程的全部检查点
+     */
+    @Override
+    public boolean clear(RunnableConfig config) {
+        evictLocal(threadIdOf(config));
+        return true;
+    }
+
+    /**
+     * 进程内缓存的线程数量
+     */
+    public synchronized int size() {
+        return threads.size();
+    }
+
+    /**
+     * 进程内缓存的检查点总字节数
+     */
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    /**
+     * 读取线程检查点（同时刷新 LRU 顺序）
+     */
+    private synchronized ThreadCheckpoints load(String threadId) {
+        return threads.get(threadId);
+    }
+
+    private synchronized void cache(String threadId, ThreadCheckpoints checkpoints) {
+        ThreadCheckpoints previous = threads.put(threadId, checkpoints);
+        if (previous != null) {
+            totalWeight -= previous.cachedWeight;
+        }
+        checkpoints.cachedWeight = checkpoints.weight();
+        totalWeight += checkpoints.cachedWeight;
+        evictIfNecessary();
+    }
+
+    private synchronized void evictLocal(String threadId) {
+        ThreadCheckpoints removed = threads.remove(threadId);
+        if (removed != null) {
+            totalWeight -= removed.cachedWeight;
+        }
+    }
+
+    /**
+     * 超出数量或字节上限时淘汰最久未使用的线程
+     */
+    private void evictIfNecessary() {
+        ChatProperties.Checkpoint properties = chatProperties.getCheckpoint();
+        Iterator<Map.Entry<String, ThreadCheckpoints>> iterator = threads.entrySet().iterator();
+        while (iterator.hasNext()
+                && (threads.size() > properties.getLocalMaxThreads() || totalWeight > properties.getLocalMaxWeightBytes())) {
+            Map.Entry<String, ThreadCheckpoints> eldest = iterator.next();
+            totalWeight -= eldest.getValue().cachedWeight;
+            iterator.remove();
+            evictionCounter.increment();
+            log.debug("淘汰进程内检查点: threadId={}", eldest.getKey());
+        }
+    }
+
+    private EncodedCheckpoint encode(Checkpoint checkpoint, int compressThresholdBytes) throws IOException {
+        byte[] state = serializer.dataToBytes(checkpoint.getState());
+        boolean compressed = state.length > compressThresholdBytes;
+        if (compressed) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(state.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(state);
+            }
+            state = out.toByteArray();
+        }
+        return new EncodedCheckpoint(checkpoint.getId(), checkpoint.getNodeId(), checkpoint.getNextNodeId(),
+                compressed, state);
+    }
+
+    private Checkpoint decode(EncodedCheckpoint encoded) {
+        try {
+            byte[] state = encoded.state();
+            if (encoded.compressed()) {
+                try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(state))) {
+                    state = gzip.readAllBytes();
+                }
+            }
+            return Checkpoint.builder()
+                    .id(encoded.id())
+                    .nodeId(encoded.nodeId())
+                    .nextNodeId(encoded.nextNodeId())
+                    .state(serializer.dataFromBytes(state))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException("解析检查点失败: checkpointId=" + encoded.id(), e);
+        }
+    }
+
+    private static RunnableConfig checkpointId(RunnableConfig config, String checkpointId) {
+        return RunnableConfig.builder(config)
+                .checkPointId(checkpointId)
+                .build();
+    }
+
+    private static String threadIdOf(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    /**
+     * 编码后的检查点（状态为序列化后的字节，可能已压缩）
+     */
+    private record EncodedCheckpoint(String id, String nodeId, String nextNodeId, boolean compressed, byte[] state) {
+
+        long weight() {
+            return state.length + 64L;
+        }
+    }
+
+    /**
+     * 单个线程的检查点（最新的在前）
+     */
+    private static class ThreadCheckpoints {
+
+        private final LinkedList<EncodedCheckpoint> checkpoints = new LinkedList<>();
+
+        /**
+         * 计入进程内缓存总大小的字节数（在缓存锁内读写）
+         */
+        private long cachedWeight;
+
+        synchronized List<EncodedCheckpoint> snapshot() {
+            return new ArrayList<>(checkpoints);
+        }
+
+        synchronized void addFirst(EncodedCheckpoint checkpoint) {
+            checkpoints.addFirst(checkpoint);
+        }
+
+        synchronized boolean replace(String checkpointId, EncodedCheckpoint checkpoint) {
+            for (int i = 0; i < checkpoints.size(); i++) {
+                if (checkpoints.get(i).id().equals(checkpointId)) {
+                    checkpoints.set(i, checkpoint);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void trim(int maxCheckpoints, long maxBytes) {
+            while (checkpoints.size() > maxCheckpoints) {
+                checkpoints.removeLast();
+            }
+            while (checkpoints.size() > 1 && weight() > maxBytes) {
+                checkpoints.removeLast();
+            }
+        }
+
+        synchronized long weight() {
+            long weight = 0;
+            for (EncodedCheckpoint checkpoint : checkpoints) {
+                weight += checkpoint.weight();
+            }
+            return weight;
+        }
+    }
+}
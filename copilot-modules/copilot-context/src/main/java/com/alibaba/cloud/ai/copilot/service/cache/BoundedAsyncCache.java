@@ -0,0 +1,337 @@
+package com.alibaba.cloud.ai.copilot.service.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 有界的进程内缓存
+ * <p>
+ * 同一个键并发未命中时只加载一次，其余请求等待同一个结果，加载期间不占用 Map 的锁。
+ * 淘汰顺序由按访问排序的 LinkedHashMap 维护，命中时只在锁空闲时调整顺序（竞争时跳过，近似 LRU），
+ * 超出容量时直接从最久未使用的键开始淘汰，不扫描全部条目。
+ * </p>
+ * <p>
+ * 失效按键生效：加载期间该键被失效或更新时，加载结果只返回给本次调用，不放入缓存（可能基于旧数据）。
+ * 条目加载后超过有效期会在下次访问时重新加载。容量和有效期每次使用时读取，配置刷新后立即生效。
+ * </p>
+ *
+ * @param <K> 键
+ * @param <V> 值（缓存内部共享，调用方不应修改）
+ */
+public class BoundedAsyncCache<K, V> {
+
+    /**
+     * 条目移除原因
+     */
+    public enum RemovalCause {
+        /**
+         * 超出容量
+         */
+        SIZE,
+        /**
+         * 超过有效期
+         */
+        EXPIRED,
+        /**
+         * 被失效或更新为空
+         */
+        INVALIDATED
+    }
+
+    /**
+     * 缓存事件监听（用于指标和日志），在调用线程上同步执行
+     */
+    public interface Listener<K> {
+
+        default void onHit(K key) {
+        }
+
+        default void onMiss(K key) {
+        }
+
+        default void onRemoval(K key, RemovalCause cause) {
+        }
+    }
+
+    private final IntSupplier maxSize;
+    private final LongSupplier ttlMillis;
+    private final Listener<K> listener;
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 已加载完成并放入缓存的键，按访问顺序排列（最久未使用的在前），由 lruLock 保护
+     */
+    private final LinkedHashMap<K, Boolean> accessOrder = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lruLock = new ReentrantLock();
+
+    public BoundedAsyncCache(IntSupplier maxSize, LongSupplier ttlMillis) {
+        this(maxSize, ttlMillis, new Listener<>() {
+        });
+    }
+
+    public BoundedAsyncCache(IntSupplier maxSize, LongSupplier ttlMillis, Listener<K> listener) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * 获取缓存的值，未命中或已过期时加载
+     *
+     * @param key    键
+     * @param loader 加载逻辑，返回 null 时不缓存；抛出的异常原样传给本次和等待中的调用方
+     * @return 值
+     */
+    public V get(K key, Supplier<V> loader) {
+        while (true) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(ttlMillis.getAsLong())) {
+                    listener.onHit(key);
+                    recordAccess(key);
+                    return entry.join();
+                }
+                if (entries.remove(key, entry)) {
+                    recordRemoval(key);
+                    listener.onRemoval(key, RemovalCause.EXPIRED);
+                }
+                continue;
+            }
+
+            Entry<V> created = new Entry<>(System.currentTimeMillis());
+            if (entries.putIfAbsent(key, created) != null) {
+                // 其他线程正在加载，重新读取并等待其结果
+                continue;
+            }
+            listener.onMiss(key);
+            V value;
+            try {
+                value = loader.get();
+            } catch (RuntimeException e) {
+                entries.remove(key, created);
+                created.future.completeExceptionally(e);
+                throw e;
+            }
+            created.future.complete(value);
+            if (value == null) {
+                entries.remove(key, created);
+            } else if (recordInsert(key, created)) {
+                evictIfNecessary();
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 基于缓存中的值计算新值
+     * <p>
+     * 正在加载的条目直接移除，加载结果不会放入缓存。
+     * </p>
+     *
+     * @param key     键
+     * @param updater 基于旧值计算新值，返回 null 表示移除
+     */
+    public void update(K key, UnaryOperator<V> updater) {
+        boolean[] removed = new boolean[1];
+        entries.computeIfPresent(key, (k, entry) -> {
+            V current = entry.valueIfReady();
+            V updated = current != null ? updater.apply(current) : null;
+            if (updated == null) {
+                removed[0] = true;
+                return null;
+            }
+            return entry.withValue(updated);
+        });
+        if (removed[0]) {
+            recordRemoval(key);
+            listener.onRemoval(key, RemovalCause.INVALIDATED);
+        }
+    }
+
+    /**
+     * 失效指定的键（包括正在加载的条目）
+     */
+    public void invalidate(K key) {
+        update(key, value -> null);
+    }
+
+    /**
+     * 失效满足条件的条目
+     *
+     * @param filter 判断条件，正在加载或加载失败的条目值为 null
+     * @return 被移除的键
+     */
+    public List<K> removeIf(BiPredicate<? super K, ? super V> filter) {
+        List<K> removed = new ArrayList<>();
+        entries.entrySet().removeIf(entry -> {
+            if (filter.test(entry.getKey(), entry.getValue().valueIfReady())) {
+                removed.add(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        if (removed.isEmpty()) {
+            return removed;
+        }
+        lruLock.lock();
+        try {
+            removed.forEach(accessOrder::remove);
+        } finally {
+            lruLock.unlock();
+        }
+        for (K key : removed) {
+            listener.onRemoval(key, RemovalCause.INVALIDATED);
+        }
+        return removed;
+    }
+
+    /**
+     * 清空全部条目
+     */
+    public void invalidateAll() {
+        removeIf((key, value) -> true);
+    }
+
+    /**
+     * 当前条目数量（包括正在加载的条目）
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 命中时调整访问顺序；锁被占用时跳过，不让读请求排队
+     */
+    private void recordAccess(K key) {
+        if (lruLock.tryLock()) {
+            try {
+                accessOrder.get(key);
+            } finally {
+                lruLock.unlock();
+            }
+        }
+    }
+
+    private void recordRemoval(K key) {
+        lruLock.lock();
+        try {
+            accessOrder.remove(key);
+        } finally {
+            lruLock.unlock();
+        }
+    }
+
+    /**
+     * 加载完成后登记访问顺序
+     *
+     * @return 条目仍在缓存中时返回 true；加载期间已被失效时返回 false
+     */
+    private boolean recordInsert(K key, Entry<V> created) {
+        lruLock.lock();
+        try {
+            Entry<V> current = entries.get(key);
+            if (current == null || current.origin != created) {
+                return false;
+            }
+            accessOrder.put(key, Boolean.TRUE);
+            return true;
+        } finally {
+            lruLock.unlock();
+        }
+    }
+
+    /**
+     * 超出容量时从最久未使用的键开始淘汰（只淘汰已加载完成的条目）
+     */
+    private void evictIfNecessary() {
+        int limit = maxSize.getAsInt();
+        if (entries.size() <= limit) {
+            return;
+        }
+        List<K> evicted = new ArrayList<>();
+        lruLock.lock();
+        try {
+            Iterator<K> iterator = accessOrder.keySet().iterator();
+            while (entries.size() > limit && iterator.hasNext()) {
+                K eldest = iterator.next();
+                iterator.remove();
+                Entry<V> entry = entries.get(eldest);
+                if (entry != null && entry.future.isDone() && entries.remove(eldest, entry)) {
+                    evicted.add(eldest);
+                }
+            }
+        } finally {
+            lruLock.unlock();
+        }
+        for (K key : evicted) {
+            listener.onRemoval(key, RemovalCause.SIZE);
+        }
+    }
+
+    /**
+     * 缓存条目：加载中的条目由等待的请求共享同一个结果
+     */
+    private static final class Entry<V> {
+
+        private final CompletableFuture<V> future;
+        private final long createdTime;
+        /**
+         * 最初加载的条目，更新值后仍指向它，用于判断加载结果是否还在缓存中
+         */
+        private final Entry<V> origin;
+
+        Entry(long createdTime) {
+            this.future = new CompletableFuture<>();
+            this.createdTime = createdTime;
+            this.origin = this;
+        }
+
+        private Entry(CompletableFuture<V> future, long createdTime, Entry<V> origin) {
+            this.future = future;
+            this.createdTime = createdTime;
+            this.origin = origin;
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return future.isDone() && System.currentTimeMillis() - createdTime > ttlMillis;
+        }
+
+        /**
+         * 替换值，保留加载时间
+         */
+        Entry<V> withValue(V value) {
+            return new Entry<>(CompletableFuture.completedFuture(value), createdTime, origin);
+        }
+
+        /**
+         * 已加载成功的值，加载中或加载失败时返回 null
+         */
+        V valueIfReady() {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+        }
+
+        V join() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
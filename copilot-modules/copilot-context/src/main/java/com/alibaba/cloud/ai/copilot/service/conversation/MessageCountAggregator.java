@@ -0,0 +1,221 @@
+package com.alibaba.cloud.ai.copilot.service.conversation;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.domain.dto.ConversationDTO;
+import com.alibaba.cloud.ai.copilot.domain.dto.MessageCountDelta;
+import com.alibaba.cloud.ai.copilot.mapper.ConversationMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 会话消息计数聚合器
+ * <p>
+ * 每条用户消息不再单独 UPDATE chat_conversation，而是在内存中按会话累加，
+ * 由定时任务把增量合并为一条批量 UPDATE 刷新到数据库，避免同一会话行上的锁竞争。
+ * </p>
+ * <p>
+ * 读取会话时合并尚未刷新（包括正在刷新）的增量。关闭时会刷新全部增量；
+ * 进程异常退出丢失的增量（计数和最后消息时间）由校正任务按 chat_message 修复。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageCountAggregator {
+
+    private final ConversationMapper conversationMapper;
+    private final ChatProperties chatProperties;
+
+    /**
+     * 尚未刷新的增量（key: conversationId）
+     */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 已取出、正在写库的增量（写库完成前读取时仍需合并）
+     */
+    private final Map<String, MessageCountDelta> inflight = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return chatProperties.getMessageCounter().isEnabled();
+    }
+
+    /**
+     * 记录一条新消息
+     *
+     * @param conversationId 会话ID
+     */
+    public void increment(String conversationId) {
+        LocalDateTime now = LocalDateTime.now();
+        // 在 compute 内累加，与刷新时移除空条目互斥
+        pending.compute(conversationId, (id, current) -> {
+            Pending value = current != null ? current : new Pending();
+            value.count.incrementAndGet();
+            value.lastMessageTime.accumulateAndGet(now, MessageCountAggregator::latest);
+            return value;
+        });
+    }
+
+    /**
+     * 把尚未落库的增量合并到会话信息中
+     *
+     * @param conversation 从数据库读取的会话信息（原地修改）
+     */
+    public void merge(ConversationDTO conversation) {
+        if (conversation == null) {
+            return;
+        }
+        String conversationId = conversation.getConversationId();
+        long delta = 0;
+        LocalDateTime lastMessageTime = null;
+        MessageCountDelta flushing = inflight.get(conversationId);
+        if (flushing != null) {
+            delta += flushing.getDelta();
+            lastMessageTime = flushing.getLastMessageTime();
+        }
+        Pending current = pending.get(conversationId);
+        if (current != null) {
+            delta += current.count.get();
+            lastMessageTime = latest(lastMessageTime, current.lastMessageTime.get());
+        }
+        if (delta == 0 && lastMessageTime == null) {
+            return;
+        }
+        int count = conversation.getMessageCount() != null ? conversation.getMessageCount() : 0;
+        conversation.setMessageCount((int) (count + delta));
+        conversation.setLastMessageTime(latest(conversation.getLastMessageTime(), lastMessageTime));
+        conversation.setUpdatedTime(latest(conversation.getUpdatedTime(), lastMessageTime));
+    }
+
+    /**
+     * 定时刷新增量到数据库
+     */
+    @Scheduled(fixedDelayString = "${app.chat.message-counter.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<MessageCountDelta> batch = new ArrayList<>();
+        int batchSize = Math.max(1, chatProperties.getMessageCounter().getBatchSize());
+        for (String conversationId : pending.keySet()) {
+            MessageCountDelta delta = drain(conversationId);
+            if (delta == null) {
+                continue;
+            }
+            batch.add(delta);
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    /**
+     * 校正任务：按 chat_message 中的用户消息数和最后消息时间修复会话（例如进程崩溃丢失的增量）
+     * 只处理最近有消息、且已经静默一段时间的会话，确保消息和计数增量都已落库；多节点同时执行结果一致
+     */
+    @Scheduled(cron = "${app.chat.message-counter.reconcile-cron:0 17 * * * *}")
+    public void reconcile() {
+        ChatProperties.MessageCounter config = chatProperties.getMessageCounter();
+        if (!config.isEnabled() || config.getReconcileWindowHours() <= 0) {
+            return;
+        }
+        try {
+            LocalDateTime until = LocalDateTime.now().minusMinutes(config.getReconcileQuietMinutes());
+            LocalDateTime since = until.minusHours(config.getReconcileWindowHours());
+            long start = System.currentTimeMillis();
+            int fixed = conversationMapper.reconcileMessageCount(since, until);
+            log.info("会话消息计数校正完成: fixed={}, since={}, until={}, costMs={}",
+                    fixed, since, until, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("会话消息计数校正失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.warn("关闭时仍有未刷新的会话消息计数: conversations={}，将由校正任务修复", pending.size());
+        }
+    }
+
+    /**
+     * 原子取出某个会话的增量并移入 inflight
+     */
+    private MessageCountDelta drain(String conversationId) {
+        MessageCountDelta[] drained = new MessageCountDelta[1];
+        pending.computeIfPresent(conversationId, (id, value) -> {
+            long count = value.count.getAndSet(0);
+            LocalDateTime lastMessageTime = value.lastMessageTime.getAndSet(null);
+            if (count > 0 || lastMessageTime != null) {
+                drained[0] = new MessageCountDelta(id, count, lastMessageTime);
+                inflight.merge(id, drained[0], MessageCountAggregator::combine);
+            }
+            // 已取空，移除条目（与 increment 在同一把桶锁内，不会丢失并发的累加）
+            return null;
+        });
+        return drained[0];
+    }
+
+    private void write(List<MessageCountDelta> batch) {
+        try {
+            conversationMapper.batchIncrementMessageCount(batch);
+            for (MessageCountDelta delta : batch) {
+                inflight.remove(delta.getConversationId());
+            }
+            log.debug("刷新会话消息计数: conversations={}", batch.size());
+        } catch (Exception e) {
+            log.warn("刷新会话消息计数失败，增量放回待刷新队列: conversations={}, error={}",
+                    batch.size(), e.getMessage());
+            for (MessageCountDelta delta : batch) {
+                inflight.remove(delta.getConversationId());
+                pending.compute(delta.getConversationId(), (id, current) -> {
+                    Pending value = current != null ? current : new Pending();
+                    value.count.addAndGet(delta.getDelta());
+                    if (delta.getLastMessageTime() != null) {
+                        value.lastMessageTime.accumulateAndGet(delta.getLastMessageTime(), MessageCountAggregator::latest);
+                    }
+                    return value;
+                });
+            }
+        }
+    }
+
+    private static MessageCountDelta combine(MessageCountDelta a, MessageCountDelta b) {
+        return new MessageCountDelta(a.getConversationId(), a.getDelta() + b.getDelta(),
+                latest(a.getLastMessageTime(), b.getLastMessageTime()));
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * 单个会话尚未刷新的增量
+     */
+    private static class Pending {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicReference<LocalDateTime> lastMessageTime = new AtomicReference<>();
+    }
+}
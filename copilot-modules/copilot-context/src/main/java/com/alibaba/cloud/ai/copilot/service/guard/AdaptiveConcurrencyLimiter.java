@@ -0,0 +1,94 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+
+/**
+ * AIMD 自适应并发限制
+ * <p>
+ * 请求正常完成且并发接近上限时上限加 1（加性增）；收到 429、5xx、网络错误，
+ * 或延迟超过基线的 latencySpikeRatio 倍时上限乘以 backoffRatio（乘性减）。
+ * 上限在 [minLimit, maxLimit] 之间浮动，达到上限时新请求直接拒绝，不排队等待。
+ * </p>
+ * <p>
+ * 延迟基线为 EWMA，同步调用（完整响应耗时）和流式调用（响应头耗时）分别统计，避免互相干扰。
+ * </p>
+ */
+class AdaptiveConcurrencyLimiter {
+
+    private final ChatProperties.ConcurrencyLimit config;
+
+    private double limit;
+    private int inFlight;
+
+    /**
+     * 延迟基线（毫秒），下标 0 为同步调用，1 为流式调用
+     */
+    private final double[] baselineMs = new double[2];
+    private final boolean[] sampled = new boolean[2];
+
+    AdaptiveConcurrencyLimiter(ChatProperties.ConcurrencyLimit config) {
+        this.config = config;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+    }
+
+    /**
+     * 申请并发名额，已达上限时返回 false
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 归还名额并按本次调用结果调整上限
+     *
+     * @param latencyNanos 调用耗时
+     * @param streaming    是否为流式调用
+     * @param dropped      是否为限流、服务端错误或网络错误
+     */
+    synchronized void onSample(long latencyNanos, boolean streaming, boolean dropped) {
+        int concurrency = inFlight;
+        inFlight--;
+        if (dropped) {
+            decrease();
+            return;
+        }
+
+        int kind = streaming ? 1 : 0;
+        double latencyMs = latencyNanos / 1_000_000.0;
+        boolean spike = sampled[kind] && latencyMs > baselineMs[kind] * config.getLatencySpikeRatio();
+        baselineMs[kind] = sampled[kind]
+                ? baselineMs[kind] + config.getLatencyAlpha() * (latencyMs - baselineMs[kind])
+                : latencyMs;
+        sampled[kind] = true;
+
+        if (spike) {
+            decrease();
+        } else if (concurrency * 2 >= limit) {
+            // 只在并发接近上限时增长，避免低负载时上限无限放大
+            limit = Math.min(config.getMaxLimit(), limit + 1);
+        }
+    }
+
+    /**
+     * 归还名额，不调整上限（请求被取消）
+     */
+    synchronized void release() {
+        inFlight--;
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void decrease() {
+        limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+    }
+}
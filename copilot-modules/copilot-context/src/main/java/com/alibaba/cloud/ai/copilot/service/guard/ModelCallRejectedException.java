@@ -0,0 +1,69 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import lombok.Getter;
+
+/**
+ * 模型调用被拒绝异常
+ * <p>
+ * 熔断器处于打开状态或并发已达上限时，请求在发出之前直接拒绝，不占用连接也不进入重试退避。
+ * 拒绝属于高频的预期情况，异常不收集堆栈。
+ * </p>
+ */
+@Getter
+public class ModelCallRejectedException extends RuntimeException {
+
+    /**
+     * 拒绝原因
+     */
+    public enum Reason {
+        /** 熔断器打开 */
+        CIRCUIT_OPEN("MODEL_CIRCUIT_OPEN"),
+        /** 并发已达上限 */
+        CONCURRENCY_LIMIT("MODEL_OVERLOADED");
+
+        @Getter
+        private final String code;
+
+        Reason(String code) {
+            this.code = code;
+        }
+    }
+
+    private final String provider;
+    private final Reason reason;
+
+    /**
+     * 建议的重试等待时间（毫秒），未知时为 0
+     */
+    private final long retryAfterMs;
+
+    public ModelCallRejectedException(String provider, Reason reason, long retryAfterMs) {
+        super(message(provider, reason), null, false, false);
+        this.provider = provider;
+        this.reason = reason;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * 在异常链中查找拒绝异常（Agent 执行时模型异常可能被包装）
+     *
+     * @return 拒绝异常，不存在时返回 null
+     */
+    public static ModelCallRejectedException findIn(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof ModelCallRejectedException rejected) {
+                return rejected;
+            }
+            current = current.getCause() != current ? current.getCause() : null;
+        }
+        return null;
+    }
+
+    private static String message(String provider, Reason reason) {
+        return switch (reason) {
+            case CIRCUIT_OPEN -> "模型服务暂时不可用（" + provider + " 连续出错，已暂停调用），请稍后重试";
+            case CONCURRENCY_LIMIT -> "模型服务繁忙（" + provider + " 并发已满），请稍后重试";
+        };
+    }
+}
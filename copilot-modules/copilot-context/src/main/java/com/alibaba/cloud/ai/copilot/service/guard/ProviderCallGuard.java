@@ -0,0 +1,282 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.service.AbstractOpenAiCompatibleProvider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个供应商端点（供应商 + Base URL）的调用保护
+ * <p>
+ * 组合熔断器和 AIMD 并发限制，以 RestClient 拦截器和 WebClient 过滤器的形式挂在 OpenAiApi 上，
+ * 每一次 HTTP 请求（包括 RetryTemplate 的每次重试）都先申请许可，拒绝时立即抛出
+ * {@link ModelCallRejectedException}，不发出请求也不占用连接。
+ * </p>
+ * <p>
+ * 错误分类沿用 {@link AbstractOpenAiCompatibleProvider#isRetryableStatus(int)}：429、5xx 和网络错误
+ * 计入熔断失败并收缩并发上限；其他 4xx 是请求或配置问题，不影响端点状态。
+ * 同步调用的许可在响应关闭（响应体读取完成）时归还，流式调用的许可在响应体结束（完成、出错或取消）时归还，
+ * 并发名额覆盖整个响应体的传输过程。
+ * </p>
+ */
+public class ProviderCallGuard {
+
+    private final String provider;
+    private final ChatProperties chatProperties;
+    private final ProviderCircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter circuitOpenRejections;
+    private final Counter concurrencyRejections;
+
+    ProviderCallGuard(String provider, String endpoint, ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.chatProperties = chatProperties;
+        this.circuitBreaker = new ProviderCircuitBreaker(provider + "@" + endpoint, chatProperties.getCircuitBreaker());
+        this.limiter = new AdaptiveConcurrencyLimiter(chatProperties.getConcurrencyLimit());
+        this.circuitOpenRejections = meterRegistry.counter("copilot.model.call.rejected",
+                "provider", provider, "endpoint", endpoint, "reason", "circuit_open");
+        this.concurrencyRejections = meterRegistry.counter("copilot.model.call.rejected",
+                "provider", provider, "endpoint", endpoint, "reason", "concurrency_limit");
+    }
+
+    /**
+     * 同步调用拦截器（RestClient）
+     */
+    public ClientHttpRequestInterceptor restInterceptor() {
+        return (request, body, execution) -> {
+            Permit permit = acquire(false);
+            ClientHttpResponse response;
+            int status;
+            try {
+                response = execution.execute(request, body);
+                status = response.getStatusCode().value();
+            } catch (IOException | RuntimeException e) {
+                permit.fail();
+                throw e;
+            }
+            return new GuardedResponse(response, status, permit);
+        };
+    }
+
+    /**
+     * 流式调用过滤器（WebClient）
+     */
+    public ExchangeFilterFunction exchangeFilter() {
+        return (request, next) -> Mono.defer(() -> {
+            Permit permit;
+            try {
+                permit = acquire(true);
+            } catch (ModelCallRejectedException e) {
+                return Mono.error(e);
+            }
+            return next.exchange(request)
+                    .map(response -> {
+                        permit.responded(response.statusCode().value());
+                        return response.mutate()
+                                .body(body -> body
+                                        .doOnError(error -> permit.fail())
+                                        .doFinally(signal -> {
+                                            if (signal == SignalType.CANCEL) {
+                                                permit.cancel();
+                                            } else {
+                                                permit.finish();
+                                            }
+                                        }))
+                                .build();
+                    })
+                    .doOnError(error -> permit.fail())
+                    .doOnCancel(permit::cancel);
+        });
+    }
+
+    int circuitState() {
+        return circuitBreaker.getState().code;
+    }
+
+    int concurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    int inFlight() {
+        return limiter.getInFlight();
+    }
+
+    /**
+     * 申请许可：先检查熔断器，再申请并发名额
+     */
+    private Permit acquire(boolean streaming) {
+        boolean breakerEnabled = chatProperties.getCircuitBreaker().isEnabled();
+        boolean limiterEnabled = chatProperties.getConcurrencyLimit().isEnabled();
+
+        long epoch = breakerEnabled ? circuitBreaker.tryAcquire() : 0;
+        if (epoch == ProviderCircuitBreaker.REJECTED) {
+            circuitOpenRejections.increment();
+            throw new ModelCallRejectedException(provider, ModelCallRejectedException.Reason.CIRCUIT_OPEN,
+                    circuitBreaker.remainingOpenMs());
+        }
+        if (limiterEnabled && !limiter.tryAcquire()) {
+            if (breakerEnabled) {
+                circuitBreaker.onCancel(epoch);
+            }
+            concurrencyRejections.increment();
+            throw new ModelCallRejectedException(provider, ModelCallRejectedException.Reason.CONCURRENCY_LIMIT, 0);
+        }
+        return new Permit(epoch, streaming, breakerEnabled, limiterEnabled);
+    }
+
+    /**
+     * 同步响应包装：读取响应体出错时按网络错误上报，关闭时按状态码上报（延迟为完整响应耗时）
+     */
+    private static final class GuardedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse delegate;
+        private final int status;
+        private final Permit permit;
+        private InputStream body;
+
+        GuardedResponse(ClientHttpResponse delegate, int status, Permit permit) {
+            this.delegate = delegate;
+            this.status = status;
+            this.permit = permit;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(delegate.getBody()) {
+                    @Override
+                    public int read() throws IOException {
+                        try {
+                            return super.read();
+                        } catch (IOException e) {
+                            permit.fail();
+                            throw e;
+                        }
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        try {
+                            return super.read(buffer, offset, length);
+                        } catch (IOException e) {
+                            permit.fail();
+                            throw e;
+                        }
+                    }
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                permit.responded(status);
+                permit.finish();
+            }
+        }
+    }
+
+    /**
+     * 一次 HTTP 请求的许可，结果只上报一次
+     */
+    private final class Permit {
+
+        private final long epoch;
+        private final boolean streaming;
+        private final boolean breakerEnabled;
+        private final boolean limiterEnabled;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile int status;
+        private volatile long latencyNanos;
+
+        Permit(long epoch, boolean streaming, boolean breakerEnabled, boolean limiterEnabled) {
+            this.epoch = epoch;
+            this.streaming = streaming;
+            this.breakerEnabled = breakerEnabled;
+            this.limiterEnabled = limiterEnabled;
+        }
+
+        /**
+         * 记录状态码和延迟（流式调用在收到响应头时记录，同步调用在响应关闭时记录）
+         */
+        void responded(int statusCode) {
+            status = statusCode;
+            latencyNanos = System.nanoTime() - startNanos;
+        }
+
+        /**
+         * 请求结束，按状态码分类上报
+         */
+        void finish() {
+            report(AbstractOpenAiCompatibleProvider.isRetryableStatus(status));
+        }
+
+        /**
+         * 网络错误或响应体读取失败
+         */
+        void fail() {
+            if (latencyNanos == 0) {
+                latencyNanos = System.nanoTime() - startNanos;
+            }
+            report(true);
+        }
+
+        /**
+         * 请求被取消，只归还名额
+         */
+        void cancel() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (breakerEnabled) {
+                circuitBreaker.onCancel(epoch);
+            }
+            if (limiterEnabled) {
+                limiter.release();
+            }
+        }
+
+        private void report(boolean failure) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (breakerEnabled) {
+                circuitBreaker.onResult(epoch, failure);
+            }
+            if (limiterEnabled) {
+                limiter.onSample(latencyNanos, streaming, failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 供应商端点调用保护注册表
+ * <p>
+ * 按「供应商 + Base URL」维护 {@link ProviderCallGuard}：同一端点的所有模型实例（包括缓存失效后重建的实例）
+ * 共享同一个熔断器和并发限制，某个端点故障时不影响同一供应商下的其他端点。
+ * </p>
+ * <p>
+ * 指标：copilot.model.circuit.state（0 关闭、1 打开、2 半开）、copilot.model.concurrency.limit、
+ * copilot.model.concurrency.inflight，以及拒绝次数 copilot.model.call.rejected{reason}。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class ProviderCallGuards {
+
+    /**
+     * 未配置 Base URL 时使用的端点标识（使用 SDK 默认地址）
+     */
+    private static final String DEFAULT_ENDPOINT = "default";
+
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 调用保护（key: 供应商 + Base URL）
+     */
+    private final Map<String, ProviderCallGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * 获取端点的调用保护，不存在时创建
+     *
+     * @param provider 供应商名称（不区分大小写：供应商编码和模型配置中的 provider 字段写法可能不同）
+     * @param baseUrl  Base URL，为空时使用 SDK 默认地址
+     */
+    public ProviderCallGuard get(String provider, String baseUrl) {
+        String providerName = StringUtils.hasText(provider) ? provider.trim().toLowerCase(Locale.ROOT) : "unknown";
+        String endpoint = normalize(baseUrl);
+        return guards.computeIfAbsent(providerName + "|" + endpoint, key -> create(providerName, endpoint));
+    }
+
+    private ProviderCallGuard create(String provider, String endpoint) {
+        ProviderCallGuard guard = new ProviderCallGuard(provider, endpoint, chatProperties, meterRegistry);
+        Tags tags = Tags.of("provider", provider, "endpoint", endpoint);
+        Gauge.builder("copilot.model.circuit.state", guard, ProviderCallGuard::circuitState)
+                .description("模型端点熔断状态：0 关闭、1 打开、2 半开")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("copilot.model.concurrency.limit", guard, ProviderCallGuard::concurrencyLimit)
+                .description("模型端点当前并发上限")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("copilot.model.concurrency.inflight", guard, ProviderCallGuard::inFlight)
+                .description("模型端点进行中的请求数")
+                .tags(tags)
+                .register(meterRegistry);
+        return guard;
+    }
+
+    /**
+     * 去掉末尾的斜杠和查询参数，同一地址的不同写法共用一个端点
+     */
+    private static String normalize(String baseUrl) {
+        if (!StringUtils.hasText(baseUrl)) {
+            return DEFAULT_ENDPOINT;
+        }
+        String endpoint = baseUrl.trim();
+        int query = endpoint.indexOf('?');
+        if (query >= 0) {
+            endpoint = endpoint.substring(0, query);
+        }
+        while (endpoint.endsWith("/")) {
+            endpoint = endpoint.substring(0, endpoint.length() - 1);
+        }
+        return endpoint;
+    }
+}
@@ -0,0 +1,165 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 供应商端点熔断器
+ * <p>
+ * 关闭状态下按最近 windowSize 次调用的结果统计失败率，调用数达到 minimumCalls 且失败率达到阈值时打开；
+ * 打开状态下直接拒绝调用，openDurationMs 后进入半开状态，放行 halfOpenPermits 个探测请求，
+ * 全部成功则关闭，任意一个失败则重新打开。
+ * </p>
+ * <p>
+ * 只有可重试的错误（429、5xx、网络错误）计为失败；400、401 等客户端错误说明端点可达，计为成功。
+ * 每次状态切换递增 epoch，切换前发出的请求的结果不再计入新状态的统计。
+ * </p>
+ */
+@Slf4j
+class ProviderCircuitBreaker {
+
+    /**
+     * 熔断状态，code 用于指标上报
+     */
+    enum State {
+        CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+        final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+    }
+
+    /**
+     * 拒绝调用时 tryAcquire 的返回值
+     */
+    static final long REJECTED = -1;
+
+    private final String name;
+    private final ChatProperties.CircuitBreaker config;
+
+    /**
+     * 最近调用结果的环形窗口（true 表示失败）
+     */
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long epoch;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    ProviderCircuitBreaker(String name, ChatProperties.CircuitBreaker config) {
+        this.name = name;
+        this.config = config;
+        this.window = new boolean[Math.max(1, config.getWindowSize())];
+    }
+
+    /**
+     * 申请调用
+     *
+     * @return 当前 epoch，拒绝时返回 {@link #REJECTED}
+     */
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenDurationMs()) {
+                return REJECTED;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= config.getHalfOpenPermits()) {
+                return REJECTED;
+            }
+            probesInFlight++;
+        }
+        return epoch;
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param acquiredEpoch tryAcquire 返回的 epoch
+     * @param failure       是否为可重试的错误
+     */
+    synchronized void onResult(long acquiredEpoch, boolean failure) {
+        if (acquiredEpoch != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            if (failure) {
+                transitionTo(State.OPEN);
+            } else if (++probeSuccesses >= config.getHalfOpenPermits()) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(failure);
+            if (windowCount >= config.getMinimumCalls()
+                    && windowFailures * 100 >= config.getFailureRateThreshold() * windowCount) {
+                transitionTo(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * 调用未完成即取消（客户端中断或并发限制拒绝），归还半开状态的探测名额，不计入统计
+     */
+    synchronized void onCancel(long acquiredEpoch) {
+        if (acquiredEpoch == epoch && state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    /**
+     * 打开状态剩余时间（毫秒），其他状态为 0
+     */
+    synchronized long remainingOpenMs() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, config.getOpenDurationMs() - (System.currentTimeMillis() - openedAt));
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State next) {
+        if (next == State.OPEN) {
+            log.warn("模型服务熔断打开: endpoint={}, from={}, failures={}/{}, openDurationMs={}",
+                    name, state, windowFailures, windowCount, config.getOpenDurationMs());
+            openedAt = System.currentTimeMillis();
+        } else {
+            log.info("模型服务熔断状态切换: endpoint={}, {} -> {}", name, state, next);
+        }
+        state = next;
+        epoch++;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
@@ -1,35 +1,47 @@
 package com.alibaba.cloud.ai.copilot.service.impl;
 
 import com.alibaba.cloud.ai.copilot.config.AppProperties;
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
 import com.alibaba.cloud.ai.copilot.domain.dto.ChatRequest;
 import com.alibaba.cloud.ai.copilot.domain.dto.CreateConversationRequest;
 import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
-import com.alibaba.cloud.ai.copilot.domain.entity.McpToolInfo;
+import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
 import com.alibaba.cloud.ai.copilot.handler.OutputHandlerRegistry;
 import com.alibaba.cloud.ai.copilot.hook.ConversationHistoryHook;
 import com.alibaba.cloud.ai.copilot.hook.ConversationSaveHook;
 import com.alibaba.cloud.ai.copilot.interceptor.DynamicSystemPromptInterceptor;
-import com.alibaba.cloud.ai.copilot.mapper.ChatMessageMapper;
-import com.alibaba.cloud.ai.copilot.mapper.McpToolInfoMapper;
+import com.alibaba.cloud.ai.copilot.interceptor.StreamCancellationInterceptor;
 import com.alibaba.cloud.ai.copilot.mapper.ModelConfigMapper;
-import com.alibaba.cloud.ai.copilot.enums.ToolStatus;
-import com.alibaba.cloud.ai.copilot.service.mcp.BuiltinToolRegistry;
-import com.alibaba.cloud.ai.copilot.service.mcp.McpClientManager;
+import com.alibaba.cloud.ai.copilot.service.mcp.ToolCallbackSnapshotManager;
+import com.alibaba.cloud.ai.copilot.service.mcp.ToolCallbackSnapshotManager.ToolCallbackSnapshot;
 import com.alibaba.cloud.ai.copilot.satoken.utils.LoginHelper;
 import com.alibaba.cloud.ai.copilot.service.ChatService;
 import com.alibaba.cloud.ai.copilot.service.ConversationService;
 import com.alibaba.cloud.ai.copilot.service.DynamicModelService;
 import com.alibaba.cloud.ai.copilot.service.SseEventService;
+import com.alibaba.cloud.ai.copilot.service.agent.AgentTemplateCache;
+import com.alibaba.cloud.ai.copilot.service.agent.BoundedCheckpointSaver;
+import com.alibaba.cloud.ai.copilot.service.guard.ModelCallRejectedException;
+import com.alibaba.cloud.ai.copilot.service.message.ChatMessageWriter;
+import com.alibaba.cloud.ai.copilot.service.message.ConversationHistoryCache;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamHandle;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamRegistry;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamSessionManager;
+import com.alibaba.cloud.ai.copilot.service.stream.FileContentStreamer;
+import com.alibaba.cloud.ai.copilot.service.stream.TokenCoalescer;
 import com.alibaba.cloud.ai.graph.NodeOutput;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.agent.hook.Hook;
 import com.alibaba.cloud.ai.graph.agent.hook.summarization.SummarizationHook;
 import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
 import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.alibaba.cloud.ai.graph.streaming.OutputType;
 import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
@@ -37,12 +49,15 @@ import org.springframework.ai.tool.ToolCallback;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -54,19 +69,27 @@ import java.util.UUID;
 public class ChatServiceImpl implements ChatService {
 
     private final AppProperties appProperties;
+    private final ChatProperties chatProperties;
     private final DynamicModelService dynamicModelService;
     private final OutputHandlerRegistry outputHandlerRegistry;
     private final SseEventService sseEventService;
     private final ConversationService conversationService;
-    private final ChatMessageMapper chatMessageMapper;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ConversationHistoryCache conversationHistoryCache;
     private final ModelConfigMapper modelConfigMapper;
     private final ConversationHistoryHook conversationHistoryHook;
     private final ConversationSaveHook conversationSaveHook;
     private final DynamicSystemPromptInterceptor dynamicSystemPromptInterceptor;
+    private final StreamCancellationInterceptor streamCancellationInterceptor;
     private final com.alibaba.cloud.ai.copilot.hook.MessageTraceHook messageTraceHook;
-    private final McpClientManager mcpClientManager;
-    private final BuiltinToolRegistry builtinToolRegistry;
-    private final McpToolInfoMapper mcpToolInfoMapper;
+    private final ToolCallbackSnapshotManager toolCallbackSnapshotManager;
+    private final AgentTemplateCache agentTemplateCache;
+    private final ChatStreamRegistry chatStreamRegistry;
+    private final TokenCoalescer tokenCoalescer;
+    private final ChatStreamSessionManager chatStreamSessionManager;
+    private final BoundedCheckpointSaver boundedCheckpointSaver;
+    private final FileContentStreamer fileContentStreamer;
+    private final MeterRegistry meterRegistry;
 
     @Override
     public void handleBuilderMode(ChatRequest request, String userId, SseEmitter emitter) {
@@ -89,61 +112,32 @@ public class ChatServiceImpl implements ChatService {
                 log.debug("使用现有会话: conversationId={}, userId={}", conversationId, userId);
             }
 
-            // 2. 获取 ChatModel
-            ChatModel chatModel = dynamicModelService.getChatModelWithConfigId(request.getModelConfigId());
+            // 2. 获取 Agent 模板（按模型配置、工具集版本、用户工作目录复用已构建的 ReactAgent）
+            String workspace = resolveUserWorkspace();
+            ToolCallbackSnapshot toolSnapshot = toolCallbackSnapshotManager.current();
+            long acquireStart = System.nanoTime();
+            AtomicBoolean built = new AtomicBoolean();
+            AgentTemplateCache.AgentTemplate template = agentTemplateCache.getOrCreate(
+                    request.getModelConfigId(), toolSnapshot.version(), workspace,
+                    () -> {
+                        built.set(true);
+                        return buildAgentTemplate(request.getModelConfigId(), workspace, toolSnapshot.callbacks());
+                    });
+            meterRegistry.timer("copilot.chat.agent.acquire", "result", built.get() ? "build" : "hit")
+                    .record(System.nanoTime() - acquireStart, TimeUnit.NANOSECONDS);
+            ReactAgent agent = template.getAgent();
 
-            // 3. 获取用于摘要的模型
-            ChatModel summarizationModel = chatModel;
-
-            // 4. 构建 Hooks
-            List<Hook> hooks = new ArrayList<>();
-
-            // 4.1 会话历史加载 Hook（从数据库加载历史消息）
-            // 改进：只在首次请求时加载历史，后续让 ReactAgent 自己管理消息流
-            hooks.add(conversationHistoryHook);
-
-            // 4.2 消息压缩 Hook（当消息过多时自动压缩）
-            hooks.add(SummarizationHook.builder()
-                .model(summarizationModel)
-                .maxTokensBeforeSummary(appProperties.getConversation().getSummarization().getMaxTokensBeforeSummary())
-                .messagesToKeep(appProperties.getConversation().getSummarization().getMessagesToKeep())
-                .build());
-
-//            // 4.2.1 观测 Hook：用于确认 SummarizationHook 是否触发以及最终送入模型的 messages 长什么样
-//            hooks.add(messageTraceHook);
-
-            // 4.3 会话保存 Hook（保存 Assistant 响应到数据库）
-            // 改进：只保存工具调用完成后的最终文本响应
-            hooks.add(conversationSaveHook);
-
-            // 5. 构建 Interceptors
-            List<ModelInterceptor> interceptors = new ArrayList<>();
-
-            // 5.1 动态系统提示
-            interceptors.add(dynamicSystemPromptInterceptor);
-
-            // 6. 加载工具
-            List<ToolCallback> allTools = loadToolCallback();
-            log.info("共加载 {} 个工具", allTools.size());
-
-            // 6.3 构建 Agent
-            var agentBuilder = ReactAgent.builder()
-                    .name("copilot_agent")
-                    .model(chatModel)
-                    .systemPrompt(buildSystemPrompt())
-                    .hooks(hooks.toArray(new Hook[0]))
-                    .interceptors(interceptors.toArray(new ModelInterceptor[0]))
-                    .saver(new MemorySaver())
-                    .tools(allTools.toArray(new ToolCallback[0]));
-
-            ReactAgent agent = agentBuilder.build();
-
-            // 7. 设置会话ID到上下文（供 Hook 和 Interceptor 使用）
+            // 3. 设置会话ID到上下文（供 Hook 和 Interceptor 使用）
+            // 每次请求使用独立的 threadId，避免共享 Agent 时检查点互相干扰
+            String streamId = conversationId + ":" + UUID.randomUUID();
             RunnableConfig config = RunnableConfig.builder()
+                .threadId(streamId)
                 .addMetadata("conversationId", conversationId)
+                .addMetadata("streamId", streamId)
+                .addMetadata("modelConfigId", request.getModelConfigId())
                 .build();
 
-            // 8. 保存用户消息到数据库
+            // 4. 保存用户消息（异步批量写入，历史加载时会合并未落库的消息）
             final String finalConversationId = conversationId; // 保存为 final 变量供 lambda 使用
             final String userMessageContent = request.getMessage().getContent(); // 保存用户消息内容
 
@@ -154,25 +148,55 @@ public class ChatServiceImpl implements ChatService {
             userMessageEntity.setContent(userMessageContent);
             userMessageEntity.setCreatedTime(LocalDateTime.now());
             userMessageEntity.setUpdatedTime(LocalDateTime.now());
-            chatMessageMapper.insert(userMessageEntity);
+            chatMessageWriter.write(userMessageEntity);
+            conversationHistoryCache.append(finalConversationId, List.of(userMessageEntity));
 
-            // 9. 增加消息计数
+            // 5. 增加消息计数
             conversationService.incrementMessageCount(finalConversationId);
 
-            // 10. 发送会话ID到前端（供前端保存并复用）
+            // 6. 打开会话流（帧带序号并进入重放缓冲区，支持断线重连）
+            // 客户端断开（完成、超时、出错）后等待重连，超时仍无客户端时取消上游流
+            ChatStreamHandle streamHandle = chatStreamRegistry.register(streamId, template.getModelTags());
+            chatStreamSessionManager.open(finalConversationId, emitter, streamHandle);
+            emitter.onCompletion(() -> chatStreamSessionManager.detach(emitter, "completion"));
+            emitter.onTimeout(() -> chatStreamSessionManager.detach(emitter, "timeout"));
+            emitter.onError(e -> chatStreamSessionManager.detach(emitter, "error"));
+
+            // 7. 发送会话ID到前端（供前端保存并复用）
             sseEventService.sendConversationId(emitter, finalConversationId);
 
-            // 11. 执行 Agent
+            // 8. 执行 Agent
             Flux<NodeOutput> stream = agent.stream(userMessageContent, config);
 
-            stream.subscribe(
+            // 执行结束（完成、出错或取消）后删除本次请求在共享 saver 中的检查点
+            Disposable subscription = stream.doFinally(signal -> {
+                template.release(config);
+                tokenCoalescer.discard(emitter);
+                fileContentStreamer.discard(emitter);
+                outputHandlerRegistry.release(emitter);
+            }).subscribe(
                 output -> {
                     if (output instanceof StreamingOutput streamingOutput) {
+                        if (streamingOutput.getOutputType() == OutputType.AGENT_MODEL_STREAMING) {
+                            streamHandle.recordToken();
+                        } else {
+                            // 其他事件发送前先刷新已合并的 token，保证输出顺序
+                            tokenCoalescer.flush(emitter);
+                        }
                         outputHandlerRegistry.handle(streamingOutput, emitter);
                     }
                 },
                 error -> {
-                    if (error instanceof WebClientResponseException wcre) {
+                    chatStreamRegistry.finish(streamHandle);
+                    tokenCoalescer.complete(emitter);
+                    fileContentStreamer.complete(emitter);
+                    ModelCallRejectedException rejected = ModelCallRejectedException.findIn(error);
+                    if (rejected != null) {
+                        // 模型端点熔断或并发已满：请求未发出，直接告知前端
+                        log.warn("模型调用被拒绝: provider={}, reason={}", rejected.getProvider(), rejected.getReason());
+                        sseEventService.sendError(emitter, rejected.getReason().getCode(), rejected.getMessage(),
+                            rejected.getRetryAfterMs());
+                    } else if (error instanceof WebClientResponseException wcre) {
                         // 关键：打印下游模型服务返回的错误响应体，便于定位 400 的具体原因
                         log.error("Agent execution error: status={}, body={}",
                             wcre.getStatusCode(),
@@ -184,11 +208,15 @@ public class ChatServiceImpl implements ChatService {
                     sseEventService.sendComplete(emitter);
                 },
                 () -> {
+                    chatStreamRegistry.finish(streamHandle);
+                    tokenCoalescer.complete(emitter);
+                    fileContentStreamer.complete(emitter);
                     // 流完成后，更新会话标题（基于首条用户消息）
                     updateConversationTitleIfNeeded(finalConversationId, userMessageContent);
                     sseEventService.sendComplete(emitter);
                 }
             );
+            streamHandle.bind(subscription);
 
         } catch (GraphRunnerException e) {
             log.error("Error in builder mode", e);
@@ -200,45 +228,100 @@ public class ChatServiceImpl implements ChatService {
     }
 
     /**
-     * 加载工具
+     * 构建 Agent 模板
+     * 模板只包含与请求无关的部分：模型、Hooks、Interceptors、工具和系统提示词
      *
-     * @return
+     * @param modelConfigId 模型配置ID
+     * @param workspace     用户工作目录
+     * @param allTools      工具快照中的 ToolCallback 列表
+     * @return Agent 模板
      */
-    private List<ToolCallback> loadToolCallback() {
-        LambdaQueryWrapper<McpToolInfo> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(McpToolInfo::getStatus, ToolStatus.ENABLED.getValue());
-        List<McpToolInfo> enabledTools = mcpToolInfoMapper.selectList(queryWrapper);
-        List<ToolCallback> allTools = new ArrayList<>();
-        for (McpToolInfo tool : enabledTools) {
-            try {
-                if (BuiltinToolRegistry.TYPE_BUILTIN.equals(tool.getType())) {
-                    // 内置工具 - 从注册表获取
-                    ToolCallback callback = builtinToolRegistry.createToolCallback(tool.getName());
-                    if (callback != null) {
-                        allTools.add(callback);
-                        log.debug("加载内置工具: {}", tool.getName());
-                    }
-                } else {
-                    // MCP 工具 (LOCAL/REMOTE) - 从 McpClientManager 获取
-                    List<ToolCallback> mcpCallbacks = mcpClientManager.getToolCallbacks(List.of(tool.getId()));
-                    allTools.addAll(mcpCallbacks);
-                    log.debug("加载 MCP 工具: {}", tool.getName());
-                }
-            } catch (Exception e) {
-                log.error("加载工具失败: {} - {}", tool.getName(), e.getMessage());
-                // 继续加载其他工具，不阻断
-            }
+    private AgentTemplateCache.AgentTemplate buildAgentTemplate(String modelConfigId, String workspace,
+                                                                List<ToolCallback> allTools) {
+        // 1. 获取 ChatModel
+        ChatModel chatModel = dynamicModelService.getChatModelWithConfigId(modelConfigId);
+
+        // 2. 获取用于摘要的模型
+        ChatModel summarizationModel = chatModel;
+
+        // 3. 构建 Hooks
+        List<Hook> hooks = new ArrayList<>();
+
+        // 3.1 会话历史加载 Hook（从数据库加载历史消息）
+        // 改进：只在首次请求时加载历史，后续让 ReactAgent 自己管理消息流
+        hooks.add(conversationHistoryHook);
+
+        // 3.2 消息压缩 Hook（单轮内工具调用导致消息过多时自动压缩）
+        // 跨轮次的历史压缩由 ConversationHistoryHook 生成摘要检查点并持久化，不再每轮重复摘要
+        hooks.add(SummarizationHook.builder()
+            .model(summarizationModel)
+            .maxTokensBeforeSummary(appProperties.getConversation().getSummarization().getMaxTokensBeforeSummary())
+            .messagesToKeep(appProperties.getConversation().getSummarization().getMessagesToKeep())
+            .build());
+
+//        // 3.2.1 观测 Hook：用于确认 SummarizationHook 是否触发以及最终送入模型的 messages 长什么样
+//        hooks.add(messageTraceHook);
+
+        // 3.3 会话保存 Hook（保存 Assistant 响应到数据库）
+        // 改进：只保存工具调用完成后的最终文本响应
+        hooks.add(conversationSaveHook);
+
+        // 4. 构建 Interceptors
+        List<ModelInterceptor> interceptors = new ArrayList<>();
+
+        // 4.1 流取消检查（客户端断开后不再发起模型调用）
+        interceptors.add(streamCancellationInterceptor);
+
+        // 4.2 动态系统提示
+        interceptors.add(dynamicSystemPromptInterceptor);
+
+        // 5. 工具来自快照，不再逐次查询数据库和 MCP Server
+        log.info("共加载 {} 个工具", allTools.size());
+
+        // 6. 构建 Agent（saver 在模板内共享，检查点按 threadId 隔离）
+        BaseCheckpointSaver saver = chatProperties.getCheckpoint().isEnabled()
+                ? boundedCheckpointSaver
+                : new MemorySaver();
+        ReactAgent agent = ReactAgent.builder()
+                .name("copilot_agent")
+                .model(chatModel)
+                .systemPrompt(buildSystemPrompt(workspace))
+                .hooks(hooks.toArray(new Hook[0]))
+                .interceptors(interceptors.toArray(new ModelInterceptor[0]))
+                .saver(saver)
+                .tools(allTools.toArray(new ToolCallback[0]))
+                .build();
+
+        return new AgentTemplateCache.AgentTemplate(agent, saver, modelTags(modelConfigId));
+    }
+
+    /**
+     * 模型指标标签：provider 和模型名称来自管理员维护的模型配置，取值有限
+     */
+    private Tags modelTags(String modelConfigId) {
+        ModelConfigEntity modelConfig = modelConfigMapper.selectById(modelConfigId);
+        if (modelConfig == null) {
+            return Tags.of("provider", "unknown", "model", "unknown");
         }
-        return allTools;
+        return Tags.of(
+                "provider", modelConfig.getProvider() != null ? modelConfig.getProvider() : "unknown",
+                "model", modelConfig.getModelName() != null ? modelConfig.getModelName() : "unknown");
     }
 
     /**
-     * 构建系统提示词
+     * 解析当前用户的工作目录
      */
-    private String buildSystemPrompt() {
-        return "工作目录在:" + appProperties.getWorkspace().getRootDirectory() +
+    private String resolveUserWorkspace() {
+        return appProperties.getWorkspace().getRootDirectory() +
                 java.io.File.separator + LoginHelper.getLoginUser().getUserType() + "_" +
-                LoginHelper.getLoginUser().getUserId() +
+                LoginHelper.getLoginUser().getUserId();
+    }
+
+    /**
+     * 构建系统提示词
+     */
+    private String buildSystemPrompt(String workspace) {
+        return "工作目录在:" + workspace +
                 "\n所有的文件操作请在这个目录下进行";
     }
 
@@ -1,36 +1,70 @@
 package com.alibaba.cloud.ai.copilot.service.impl;
 
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
 import com.alibaba.cloud.ai.copilot.domain.dto.ConversationDTO;
 import com.alibaba.cloud.ai.copilot.domain.dto.CreateConversationRequest;
 import com.alibaba.cloud.ai.copilot.domain.dto.PageResult;
 import com.alibaba.cloud.ai.copilot.domain.entity.ConversationEntity;
 import com.alibaba.cloud.ai.copilot.mapper.ConversationMapper;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
 import com.alibaba.cloud.ai.copilot.service.ConversationService;
+import com.alibaba.cloud.ai.copilot.service.cache.BoundedAsyncCache;
+import com.alibaba.cloud.ai.copilot.service.conversation.MessageCountAggregator;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
  * 会话服务实现
+ * <p>
+ * getConversation 带进程内近端缓存：ReAct 循环中每次模型调用都会读取会话信息，
+ * 稳态下不再查询数据库。本节点的修改在事务提交后直接更新缓存，并通过 Redis 发布订阅通知其他节点失效。
+ * 失效按会话生效：加载期间该会话发生变更时，加载结果不写入缓存，其他会话的变更不影响缓存。
+ * </p>
  *
  * @author better
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, ConversationEntity> 
         implements ConversationService {
 
+    private final ChatProperties chatProperties;
+    private final MessageCountAggregator messageCountAggregator;
+
+    /**
+     * 当前节点ID（用于忽略自己发出的失效通知）
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 会话近端缓存（key: conversationId），按访问顺序淘汰
+     */
+    private final BoundedAsyncCache<String, ConversationDTO> nearCache;
+
+    public ConversationServiceImpl(ChatProperties chatProperties, MessageCountAggregator messageCountAggregator) {
+        this.chatProperties = chatProperties;
+        this.messageCountAggregator = messageCountAggregator;
+        this.nearCache = new BoundedAsyncCache<>(
+                () -> chatProperties.getConversationCache().getMaxSize(),
+                () -> chatProperties.getConversationCache().getTtlSeconds() * 1000);
+    }
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public String createConversation(Long userId, CreateConversationRequest request) {
@@ -58,6 +92,15 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
 
     @Override
     public ConversationDTO getConversation(String conversationId) {
+        if (!chatProperties.getConversationCache().isEnabled()) {
+            return loadConversation(conversationId);
+        }
+        // 缓存内部的对象共享，对外返回拷贝
+        ConversationDTO cached = nearCache.get(conversationId, () -> loadConversation(conversationId));
+        return cached != null ? cached.toBuilder().build() : null;
+    }
+
+    private ConversationDTO loadConversation(String conversationId) {
         ConversationEntity entity = getOne(new LambdaQueryWrapper<ConversationEntity>()
             .eq(ConversationEntity::getConversationId, conversationId)
             .eq(ConversationEntity::getDelFlag, 0));
@@ -66,7 +109,9 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             return null;
         }
 
-        return convertToDTO(entity);
+        ConversationDTO conversation = convertToDTO(entity);
+        messageCountAggregator.merge(conversation);
+        return conversation;
     }
 
     @Override
@@ -78,10 +123,12 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             .eq(ConversationEntity::getDelFlag, 0)
             .orderByDesc(ConversationEntity::getUpdatedTime));
 
-        // 转换为DTO列表
+        // 转换为DTO列表（合并尚未刷新到数据库的消息计数）
+        // 保持数据库的分页顺序：只在页内按合并后的时间重排会与相邻页的边界不一致，导致重复或遗漏
         return PageResult.<ConversationDTO>builder()
             .records(pageResult.getRecords().stream()
                 .map(this::convertToDTO)
+                .peek(messageCountAggregator::merge)
                 .collect(Collectors.toList()))
             .total(pageResult.getTotal())
             .current(pageResult.getCurrent())
@@ -96,6 +143,10 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             .eq(ConversationEntity::getConversationId, conversationId)
             .set(ConversationEntity::getTitle, title)
             .set(ConversationEntity::getUpdatedTime, LocalDateTime.now()));
+        afterCommit(conversationId, conversation -> conversation.toBuilder()
+            .title(title)
+            .updatedTime(LocalDateTime.now())
+            .build());
     }
 
     @Override
@@ -106,17 +157,81 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             .eq(ConversationEntity::getConversationId, conversationId)
             .set(ConversationEntity::getDelFlag, 1)
             .set(ConversationEntity::getUpdatedTime, LocalDateTime.now()));
+        afterCommit(conversationId, conversation -> null);
     }
 
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void incrementMessageCount(String conversationId) {
-        // 使用数据库原子操作，避免并发问题
-        update(new LambdaUpdateWrapper<ConversationEntity>()
-            .eq(ConversationEntity::getConversationId, conversationId)
-            .setSql("message_count = IFNULL(message_count, 0) + 1")
-            .set(ConversationEntity::getLastMessageTime, LocalDateTime.now())
-            .set(ConversationEntity::getUpdatedTime, LocalDateTime.now()));
+        if (messageCountAggregator.isEnabled()) {
+            // 内存聚合，定时批量刷新到数据库
+            messageCountAggregator.increment(conversationId);
+        } else {
+            // 使用数据库原子操作，避免并发问题
+            update(new LambdaUpdateWrapper<ConversationEntity>()
+                .eq(ConversationEntity::getConversationId, conversationId)
+                .setSql("message_count = IFNULL(message_count, 0) + 1")
+                .set(ConversationEntity::getLastMessageTime, LocalDateTime.now())
+                .set(ConversationEntity::getUpdatedTime, LocalDateTime.now()));
+        }
+        afterCommit(conversationId, conversation -> {
+            LocalDateTime now = LocalDateTime.now();
+            return conversation.toBuilder()
+                .messageCount((conversation.getMessageCount() != null ? conversation.getMessageCount() : 0) + 1)
+                .lastMessageTime(now)
+                .updatedTime(now)
+                .build();
+        });
+    }
+
+    /**
+     * 订阅其他节点的会话变更通知
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeInvalidation() {
+        try {
+            RedisUtils.subscribe(CacheConstants.CONVERSATION_INVALIDATE_TOPIC, String.class, message -> {
+                int index = message.indexOf(':');
+                if (index < 0 || nodeId.equals(message.substring(0, index))) {
+                    return;
+                }
+                invalidateLocal(message.substring(index + 1));
+            });
+        } catch (Exception e) {
+            log.warn("订阅会话变更通知失败，仅本节点失效会话缓存: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 事务提交后写入本地缓存并通知其他节点失效
+     *
+     * @param conversationId 会话ID
+     * @param updater        基于缓存中的旧值计算新值，返回 null 表示移除
+     */
+    private void afterCommit(String conversationId, UnaryOperator<ConversationDTO> updater) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyAndPublish(conversationId, updater);
+                }
+            });
+        } else {
+            applyAndPublish(conversationId, updater);
+        }
+    }
+
+    private void applyAndPublish(String conversationId, UnaryOperator<ConversationDTO> updater) {
+        nearCache.update(conversationId, updater);
+        try {
+            RedisUtils.publish(CacheConstants.CONVERSATION_INVALIDATE_TOPIC, nodeId + ":" + conversationId);
+        } catch (Exception e) {
+            log.warn("发布会话变更通知失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    private void invalidateLocal(String conversationId) {
+        nearCache.invalidate(conversationId);
     }
 
     /**
@@ -135,4 +250,3 @@ public class ConversationServiceImpl extends ServiceImpl<ConversationMapper, Con
             .build();
     }
 }
-
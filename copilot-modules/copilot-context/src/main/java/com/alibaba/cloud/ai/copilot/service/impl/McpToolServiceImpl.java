@@ -7,6 +7,7 @@ import com.alibaba.cloud.ai.copilot.enums.ToolStatus;
 import com.alibaba.cloud.ai.copilot.mapper.McpToolInfoMapper;
 import com.alibaba.cloud.ai.copilot.service.mcp.BuiltinToolRegistry;
 import com.alibaba.cloud.ai.copilot.service.mcp.McpClientManager;
+import com.alibaba.cloud.ai.copilot.service.mcp.ToolCallbackSnapshotManager;
 import com.alibaba.cloud.ai.copilot.service.McpToolService;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -34,6 +35,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
 
     private final McpClientManager mcpClientManager;
     private final BuiltinToolRegistry builtinToolRegistry;
+    private final ToolCallbackSnapshotManager toolCallbackSnapshotManager;
 
     @Override
     public McpToolListResult listTools(String keyword, String type, String status) {
@@ -70,6 +72,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
             tool.setType("LOCAL");
         }
         save(tool);
+        toolCallbackSnapshotManager.onToolsChanged(List.of(tool.getId()));
         return tool;
     }
 
@@ -87,6 +90,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
 
         // 如果工具正在使用中，需要刷新连接
         mcpClientManager.refreshClient(tool.getId());
+        toolCallbackSnapshotManager.onToolsChanged(List.of(tool.getId()));
 
         return getById(tool.getId());
     }
@@ -103,6 +107,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
         // 关闭可能存在的连接
         mcpClientManager.closeClient(id);
         removeById(id);
+        toolCallbackSnapshotManager.onToolsChanged(List.of(id));
     }
 
     @Override
@@ -122,6 +127,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
 
         deletableIds.forEach(mcpClientManager::closeClient);
         removeByIds(deletableIds);
+        toolCallbackSnapshotManager.onToolsChanged(deletableIds);
     }
 
     @Override
@@ -137,6 +143,7 @@ public class McpToolServiceImpl extends ServiceImpl<McpToolInfoMapper, McpToolIn
         if (ToolStatus.DISABLED.getValue().equals(status)) {
             mcpClientManager.closeClient(id);
         }
+        toolCallbackSnapshotManager.onToolsChanged(List.of(id));
     }
 
     @Override
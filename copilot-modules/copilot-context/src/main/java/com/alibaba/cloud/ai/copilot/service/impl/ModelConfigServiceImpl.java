@@ -1,6 +1,7 @@
 package com.alibaba.cloud.ai.copilot.service.impl;
 
 import com.alibaba.cloud.ai.copilot.domain.dto.model.LlmServiceProvider;
+import com.alibaba.cloud.ai.copilot.domain.dto.model.ModelConfigChangedEvent;
 import com.alibaba.cloud.ai.copilot.domain.dto.model.ModelConfig;
 import com.alibaba.cloud.ai.copilot.domain.dto.model.ModelConfigResponse;
 import com.alibaba.cloud.ai.copilot.domain.entity.LlmFactoriesEntity;
@@ -13,6 +14,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -20,6 +22,7 @@ import java.util.stream.Collectors;
 
 /**
  * 模型配置服务实现类
+ * 配置写入成功后发布 {@link ModelConfigChangedEvent}，由动态模型服务失效本节点及其他节点缓存的模型实例
  */
 @Slf4j
 @Service
@@ -30,6 +33,8 @@ public class ModelConfigServiceImpl implements ModelConfigService {
 
     private final LlmFactoriesMapper llmFactoriesMapper;
 
+    private final ApplicationEventPublisher eventPublisher;
+
     @Override
     public List<ModelConfigResponse> getModelConfigResponses() {
         List<ModelConfigEntity> entities = modelConfigMapper.selectEnabledModels();
@@ -91,11 +96,13 @@ public class ModelConfigServiceImpl implements ModelConfigService {
     @Override
     public boolean saveOrUpdateModel(ModelConfigEntity modelEntity) {
         try {
-            if (modelEntity.getId() == null) {
-                return modelConfigMapper.insert(modelEntity) > 0;
-            } else {
-                return modelConfigMapper.updateById(modelEntity) > 0;
+            boolean saved = modelEntity.getId() == null
+                    ? modelConfigMapper.insert(modelEntity) > 0
+                    : modelConfigMapper.updateById(modelEntity) > 0;
+            if (saved) {
+                publishChanged(modelEntity.getId());
             }
+            return saved;
         } catch (Exception e) {
             log.error("保存或更新模型配置失败", e);
             return false;
@@ -105,7 +112,11 @@ public class ModelConfigServiceImpl implements ModelConfigService {
     @Override
     public boolean deleteModel(Long id) {
         try {
-            return modelConfigMapper.deleteById(id) > 0;
+            boolean deleted = modelConfigMapper.deleteById(id) > 0;
+            if (deleted) {
+                publishChanged(id);
+            }
+            return deleted;
         } catch (Exception e) {
             log.error("删除模型配置失败", e);
             return false;
@@ -118,7 +129,11 @@ public class ModelConfigServiceImpl implements ModelConfigService {
             LambdaUpdateWrapper<ModelConfigEntity> updateWrapper = new LambdaUpdateWrapper<>();
             updateWrapper.eq(ModelConfigEntity::getId, id)
                     .set(ModelConfigEntity::getEnabled, enabled);
-            return modelConfigMapper.update(null, updateWrapper) > 0;
+            boolean updated = modelConfigMapper.update(null, updateWrapper) > 0;
+            if (updated) {
+                publishChanged(id);
+            }
+            return updated;
         } catch (Exception e) {
             log.error("切换模型状态失败", e);
             return false;
@@ -191,6 +206,9 @@ public class ModelConfigServiceImpl implements ModelConfigService {
                     .eq(ModelConfigEntity::getProvider, providerCode);
             int deletedCount = modelConfigMapper.delete(queryWrapper);
             log.info("删除用户 {} 在供应商 {} 下的模型配置，共删除 {} 条", userId, providerCode, deletedCount);
+            if (deletedCount > 0) {
+                eventPublisher.publishEvent(ModelConfigChangedEvent.all());
+            }
             return deletedCount;
         } catch (Exception e) {
             log.error("删除供应商模型配置失败, userId={}, providerCode={}", userId, providerCode, e);
@@ -238,6 +256,7 @@ public class ModelConfigServiceImpl implements ModelConfigService {
 
         if (updated > 0) {
             log.info("更新用户模型配置成功, userId={}, modelId={}", userId, modelId);
+            publishChanged(modelId);
             return true;
         }
         return false;
@@ -262,6 +281,13 @@ public class ModelConfigServiceImpl implements ModelConfigService {
         return config;
     }
 
+    /**
+     * 发布模型配置变更事件
+     */
+    private void publishChanged(Long configId) {
+        eventPublisher.publishEvent(new ModelConfigChangedEvent(configId));
+    }
+
     /**
      * 将实体转换为响应DTO
      */
@@ -1,5 +1,6 @@
 package com.alibaba.cloud.ai.copilot.service.impl;
 
+import com.alibaba.cloud.ai.copilot.config.ModelHttpClients;
 import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
 import com.alibaba.cloud.ai.copilot.service.ModelConfigService;
 import com.alibaba.cloud.ai.copilot.service.OpenAiModelFactory;
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Service;
 public class OpenAiModelFactoryImpl implements OpenAiModelFactory {
 
     private final ModelConfigService modelConfigService;
+    private final ModelHttpClients modelHttpClients;
 
     // 默认配置常量 - 根据不同模型设置合理的token限制
     private static final int DEFAULT_MAX_TOKENS = 64000;  // 通用默认值，适用于大多数模型
@@ -49,7 +51,9 @@ public class OpenAiModelFactoryImpl implements OpenAiModelFactory {
 
             // 构建OpenAI API
             OpenAiApi.Builder apiBuilder = OpenAiApi.builder()
-                    .apiKey(apiKey);
+                    .apiKey(apiKey)
+                    .restClientBuilder(modelHttpClients.restClientBuilder(modelEntity.getProvider(), baseUrl))
+                    .webClientBuilder(modelHttpClients.webClientBuilder(modelEntity.getProvider(), baseUrl));
 
             if (baseUrl != null && !baseUrl.trim().isEmpty()) {
                 apiBuilder.baseUrl(baseUrl);
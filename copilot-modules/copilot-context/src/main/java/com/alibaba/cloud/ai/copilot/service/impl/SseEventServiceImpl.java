@@ -1,14 +1,20 @@
 package com.alibaba.cloud.ai.copilot.service.impl;
 
 import com.alibaba.cloud.ai.copilot.service.SseEventService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamSessionManager;
+import com.alibaba.cloud.ai.copilot.service.stream.SseFrameEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SSE事件服务实现类
@@ -18,13 +24,32 @@ import java.util.UUID;
  * event: xxx
  * data: {...}
  * <p>
- *
+ * 帧由 {@link SseFrameEncoder} 预先编码为字节，直接写入响应，不再逐个事件构建 Map 并序列化。
+ * 已打开会话流的发射器经由 {@link ChatStreamSessionManager} 发送，帧会带上序号以支持断线重放。
+ * 每帧的写出耗时记录到 copilot.chat.sse.write（path 区分会话流和直接写出）。
  */
 @Slf4j
 @Service
 public class SseEventServiceImpl implements SseEventService {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SseFrameEncoder sseFrameEncoder;
+    private final ChatStreamSessionManager chatStreamSessionManager;
+    private final Timer sessionWriteTimer;
+    private final Timer directWriteTimer;
+
+    public SseEventServiceImpl(SseFrameEncoder sseFrameEncoder, ChatStreamSessionManager chatStreamSessionManager,
+                               MeterRegistry meterRegistry) {
+        this.sseFrameEncoder = sseFrameEncoder;
+        this.chatStreamSessionManager = chatStreamSessionManager;
+        this.sessionWriteTimer = Timer.builder("copilot.chat.sse.write")
+                .description("SSE 帧写出耗时")
+                .tag("path", "session")
+                .register(meterRegistry);
+        this.directWriteTimer = Timer.builder("copilot.chat.sse.write")
+                .description("SSE 帧写出耗时")
+                .tag("path", "direct")
+                .register(meterRegistry);
+    }
 
     /**
      * 发送SSE事件的通用方法
@@ -32,102 +57,111 @@ public class SseEventServiceImpl implements SseEventService {
     @Override
     public void sendSseEvent(SseEmitter emitter, String eventType, Map<String, Object> data) {
         try {
-            String dataJson = objectMapper.writeValueAsString(data);
-            SseEmitter.SseEventBuilder event = SseEmitter.event()
-                .name(eventType)
-                .data(dataJson);
-            emitter.send(event);
-            log.debug("Sent SSE event: {} with data: {}", eventType, dataJson);
+            sendFrame(emitter, sseFrameEncoder.encodeEvent(eventType, data));
+            log.debug("Sent SSE event: {}", eventType);
         } catch (Exception e) {
             log.error("Error sending SSE event: {}", eventType, e);
-            try {
-                emitter.completeWithError(e);
-            } catch (Exception ex) {
-                log.error("Error completing emitter with error", ex);
-            }
+            completeWithError(emitter, e);
         }
     }
 
     @Override
     public void sendFileEditProgress(SseEmitter emitter, String filePath, String content) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("event", "edit-progress");
-        // messageId - 当前对话id
-        data.put("messageId", UUID.randomUUID().toString());
-        // 每个工具都有不同的操作id
-        data.put("operationId", UUID.randomUUID().toString());
-        data.put("data", Map.of(
-            "type", "edit-progress",
-            "filePath", filePath,
-            "content", content
-        ));
-        sendSseEvent(emitter, "edit-progress", data);
+        try {
+            sendFrame(emitter, sseFrameEncoder.encodeFileEditProgress(filePath, content));
+            log.debug("Sent file edit progress: {}", filePath);
+        } catch (Exception e) {
+            log.error("Error sending SSE event: edit-progress", e);
+            completeWithError(emitter, e);
+        }
+    }
+
+    @Override
+    public void sendFileEditProgress(SseEmitter emitter, String filePath, String content, int offset) {
+        try {
+            sendFrame(emitter, sseFrameEncoder.encodeFileEditProgress(filePath, content, offset));
+            log.debug("Sent file edit progress: {}, offset={}", filePath, offset);
+        } catch (Exception e) {
+            log.error("Error sending SSE event: edit-progress", e);
+            completeWithError(emitter, e);
+        }
     }
 
     @Override
     public void sendThinkingContent(SseEmitter emitter, String thinkingContent) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("event", "thinking");
-        // messageId - 当前对话id
-        data.put("messageId", UUID.randomUUID().toString());
-        // 每个工具都有不同的操作id
-        data.put("operationId", UUID.randomUUID().toString());
-        data.put("data", Map.of(
-            "type", "thinking",
-            "content", thinkingContent
-        ));
-        sendSseEvent(emitter, "thinking", data);
+        try {
+            sendFrame(emitter, sseFrameEncoder.encodeThinking(thinkingContent));
+            log.debug("Sent thinking content: {}", thinkingContent);
+        } catch (Exception e) {
+            log.error("Error sending SSE event: thinking", e);
+            completeWithError(emitter, e);
+        }
     }
 
     @Override
     public void sendChatContent(SseEmitter emitter,String content) {
         try {
             // 生成 OpenAI 兼容格式的消息
-            Map<String, Object> delta = new HashMap<>();
-            delta.put("content", content);
-
-            Map<String, Object> choice = new HashMap<>();
-            choice.put("delta", delta);
-            choice.put("finish_reason", null);
-
-            Map<String, Object> data = new HashMap<>();
-            data.put("choices", java.util.Arrays.asList(choice));
-
-            String dataJson = objectMapper.writeValueAsString(data);
-            SseEmitter.SseEventBuilder event = SseEmitter.event()
-                    .data(dataJson);
-            emitter.send(event);
+            sendFrame(emitter, sseFrameEncoder.encodeChatContent(content));
             log.debug("Sent OpenAI compatible content: {}", content);
         } catch (Exception e) {
             log.error("Error sending OpenAI compatible content", e);
-            try {
-                emitter.completeWithError(e);
-            } catch (Exception ex) {
-                log.error("Error completing emitter with error", ex);
-            }
+            completeWithError(emitter, e);
         }
     }
 
     @Override
     public void sendConversationId(SseEmitter emitter, String conversationId) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("conversationId", conversationId);
-        sendSseEvent(emitter, "conversation-id", data);
-        log.debug("Sent conversation ID: {}", conversationId);
+        try {
+            sendFrame(emitter, sseFrameEncoder.encodeConversationId(conversationId));
+            log.debug("Sent conversation ID: {}", conversationId);
+        } catch (Exception e) {
+            log.error("Error sending SSE event: conversation-id", e);
+            completeWithError(emitter, e);
+        }
+    }
+
+    @Override
+    public void sendError(SseEmitter emitter, String code, String message, long retryAfterMs) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("code", code);
+        data.put("message", message);
+        data.put("retryAfterMs", retryAfterMs);
+        sendSseEvent(emitter, "error", data);
     }
 
     @Override
     public void sendComplete(SseEmitter emitter) {
         try {
-            SseEmitter.SseEventBuilder event = SseEmitter.event()
-                .name("complete")
-                .data("[DONE]");
-            emitter.send(event);
-            emitter.complete();
+            if (!chatStreamSessionManager.complete(emitter, sseFrameEncoder.encodeComplete())) {
+                sendFrame(emitter, sseFrameEncoder.encodeComplete());
+                emitter.complete();
+            }
             log.debug("SSE connection completed");
         } catch (Exception e) {
             log.error("Error completing SSE connection", e);
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 直接写入已编码的完整 SSE 帧
+     */
+    private void sendFrame(SseEmitter emitter, byte[] frame) throws Exception {
+        long start = System.nanoTime();
+        if (chatStreamSessionManager.publish(emitter, frame)) {
+            sessionWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(frame, MediaType.APPLICATION_OCTET_STREAM)));
+        directWriteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void completeWithError(SseEmitter emitter, Exception e) {
+        try {
+            emitter.completeWithError(e);
+        } catch (Exception ex) {
+            log.error("Error completing emitter with error", ex);
+        }
+    }
+
+}
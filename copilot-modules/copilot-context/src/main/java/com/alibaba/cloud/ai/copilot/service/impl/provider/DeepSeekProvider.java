@@ -1,5 +1,6 @@
 package com.alibaba.cloud.ai.copilot.service.impl.provider;
 
+import com.alibaba.cloud.ai.copilot.config.ModelHttpClients;
 import com.alibaba.cloud.ai.copilot.service.AbstractOpenAiCompatibleProvider;
 import com.alibaba.cloud.ai.copilot.service.LlmService;
 import com.alibaba.cloud.ai.copilot.enums.ProviderEnum;
@@ -12,8 +13,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class DeepSeekProvider extends AbstractOpenAiCompatibleProvider {
 
-    public DeepSeekProvider(LlmService llmService) {
-        super(llmService);
+    public DeepSeekProvider(LlmService llmService, ModelHttpClients modelHttpClients) {
+        super(llmService, modelHttpClients);
     }
 
     @Override
@@ -1,33 +1,54 @@
 package com.alibaba.cloud.ai.copilot.service.impl.provider;
 
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
+import com.alibaba.cloud.ai.copilot.domain.dto.model.ModelConfigChangedEvent;
 import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
 import com.alibaba.cloud.ai.copilot.mapper.ModelConfigMapper;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
 import com.alibaba.cloud.ai.copilot.service.DynamicModelService;
 import com.alibaba.cloud.ai.copilot.service.ModelProvider;
 import com.alibaba.cloud.ai.copilot.service.OpenAiModelFactory;
+import com.alibaba.cloud.ai.copilot.service.agent.AgentTemplateCache;
+import com.alibaba.cloud.ai.copilot.service.cache.BoundedAsyncCache;
 import com.alibaba.cloud.ai.copilot.service.impl.ProviderRegistry;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * 动态模型服务实现类
  * 支持从数据库动态获取 API 配置并创建对应的模型实例
+ * <p>
+ * 模型实例缓存按数量上限淘汰最久未使用的实例，创建后超过有效期重新读取配置创建；
+ * 同一个键并发未命中时只创建一次，其余请求等待同一个结果（见 {@link BoundedAsyncCache}）。
+ * 模型配置写入后（{@link ModelConfigChangedEvent}）失效本节点缓存，并通过 Redis 发布订阅通知其他节点失效。
+ * </p>
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class DynamicModelServiceImpl implements DynamicModelService {
 
+    private static final String CONFIG_KEY_PREFIX = "config:";
+
     /**
-     * 模型缓存，避免重复创建（key: configId 或 modelName:userId）
+     * 失效通知中表示全部配置的标记
      */
-    private final Map<String, ChatModel> modelCache = new ConcurrentHashMap<>();
+    private static final String ALL_CONFIGS = "*";
+
+    /**
+     * 模型缓存，避免重复创建（key: config:configId 或 modelName:userId）
+     */
+    private final BoundedAsyncCache<String, ChatModel> modelCache;
 
     /**
      * Provider 注册表
@@ -38,11 +59,71 @@ public class DynamicModelServiceImpl implements DynamicModelService {
 
     private final OpenAiModelFactory openAiModelFactory;
 
+    private final AgentTemplateCache agentTemplateCache;
+
+    private final ChatProperties chatProperties;
+
+    private final ModelRouter modelRouter;
+
+    /**
+     * 当前节点ID（用于忽略自己发出的失效通知）
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictionCounter;
+    private final Counter expiredEvictionCounter;
+    private final Counter invalidatedEvictionCounter;
+
+    public DynamicModelServiceImpl(ProviderRegistry providerRegistry, ModelConfigMapper modelConfigMapper,
+                                   OpenAiModelFactory openAiModelFactory, AgentTemplateCache agentTemplateCache,
+                                   ChatProperties chatProperties, ModelRouter modelRouter,
+                                   MeterRegistry meterRegistry) {
+        this.providerRegistry = providerRegistry;
+        this.modelConfigMapper = modelConfigMapper;
+        this.openAiModelFactory = openAiModelFactory;
+        this.agentTemplateCache = agentTemplateCache;
+        this.chatProperties = chatProperties;
+        this.modelRouter = modelRouter;
+        this.hitCounter = meterRegistry.counter("copilot.model.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("copilot.model.cache", "result", "miss");
+        this.sizeEvictionCounter = meterRegistry.counter("copilot.model.cache.evictions", "cause", "size");
+        this.expiredEvictionCounter = meterRegistry.counter("copilot.model.cache.evictions", "cause", "expired");
+        this.invalidatedEvictionCounter = meterRegistry.counter("copilot.model.cache.evictions", "cause", "invalidated");
+        this.modelCache = new BoundedAsyncCache<>(
+                () -> chatProperties.getModelCache().getMaxSize(),
+                () -> chatProperties.getModelCache().getTtlSeconds() * 1000,
+                new BoundedAsyncCache.Listener<>() {
+                    @Override
+                    public void onHit(String key) {
+                        hitCounter.increment();
+                    }
+
+                    @Override
+                    public void onMiss(String key) {
+                        missCounter.increment();
+                    }
+
+                    @Override
+                    public void onRemoval(String key, BoundedAsyncCache.RemovalCause cause) {
+                        switch (cause) {
+                            case SIZE -> sizeEvictionCounter.increment();
+                            case EXPIRED -> expiredEvictionCounter.increment();
+                            case INVALIDATED -> invalidatedEvictionCounter.increment();
+                        }
+                        log.debug("移除模型实例: key={}, cause={}", key, cause);
+                    }
+                });
+        Gauge.builder("copilot.model.cache.size", modelCache, BoundedAsyncCache::size)
+                .register(meterRegistry);
+    }
+
     @Override
     public ChatModel getChatModel(String modelName, String userId) {
         String cacheKey = generateCacheKey(modelName, userId);
 
-        return modelCache.computeIfAbsent(cacheKey, key -> {
+        return modelCache.get(cacheKey, () -> {
             try {
                 return createChatModel(modelName, userId);
             } catch (Exception e) {
@@ -65,9 +146,9 @@ public class DynamicModelServiceImpl implements DynamicModelService {
      * @return ChatModel 实例
      */
     public ChatModel getChatModelWithConfigId(String id, ChatOptions options) {
-        String cacheKey = "config:" + id;
+        String cacheKey = CONFIG_KEY_PREFIX + id;
 
-        return modelCache.computeIfAbsent(cacheKey, key -> {
+        return modelCache.get(cacheKey, () -> {
             ModelConfigEntity config = modelConfigMapper.selectById(id);
             if (config == null) {
                 log.error("未找到对应的模型配置，id={}", id);
@@ -83,14 +164,16 @@ public class DynamicModelServiceImpl implements DynamicModelService {
             log.info("开始创建 ChatModel，configId={}, provider={}, model={}",
                     id, config.getProvider(), config.getModelName());
 
-            return provider.createChatModel(config, options);
+            // 同名模型在其他供应商下也有配置时，组合为路由模型
+            return modelRouter.route(config, provider.createChatModel(config, options), options);
         });
     }
 
     @Override
     public void refreshModelCache() {
         log.info("刷新全部模型缓存");
-        modelCache.clear();
+        invalidateAllLocal();
+        publishInvalidation(ALL_CONFIGS);
     }
 
     @Override
@@ -123,10 +206,42 @@ public class DynamicModelServiceImpl implements DynamicModelService {
      * @param configId 配置 ID
      */
     public void refreshModelCacheById(String configId) {
-        String cacheKey = "config:" + configId;
-        ChatModel removed = modelCache.remove(cacheKey);
-        if (removed != null) {
-            log.info("已从缓存中移除模型实例，configId={}", configId);
+        invalidateLocal(configId);
+        publishInvalidation(configId);
+    }
+
+    /**
+     * 模型配置写入后失效对应的模型实例
+     */
+    @EventListener
+    public void onModelConfigChanged(ModelConfigChangedEvent event) {
+        if (event.configId() == null) {
+            refreshModelCache();
+        } else {
+            refreshModelCacheById(String.valueOf(event.configId()));
+        }
+    }
+
+    /**
+     * 订阅其他节点的模型配置变更通知
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeInvalidation() {
+        try {
+            RedisUtils.subscribe(CacheConstants.MODEL_CONFIG_INVALIDATE_TOPIC, String.class, message -> {
+                int index = message.indexOf(':');
+                if (index < 0 || nodeId.equals(message.substring(0, index))) {
+                    return;
+                }
+                String configId = message.substring(index + 1);
+                if (ALL_CONFIGS.equals(configId)) {
+                    invalidateAllLocal();
+                } else {
+                    invalidateLocal(configId);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("订阅模型配置变更通知失败，仅本节点失效模型缓存: {}", e.getMessage());
         }
     }
 
@@ -137,6 +252,42 @@ public class DynamicModelServiceImpl implements DynamicModelService {
         return providerRegistry;
     }
 
+    /**
+     * 失效指定配置的模型实例
+     * 按名称缓存的实例无法直接对应到配置ID，一并失效；路由模型的端点组合可能随配置变化，也一并失效
+     */
+    private void invalidateLocal(String configId) {
+        String configKey = CONFIG_KEY_PREFIX + configId;
+        // 创建中的实例（model 为 null）可能是读取到旧配置的路由模型，一并失效
+        List<String> removedKeys = modelCache.removeIf((key, model) -> key.equals(configKey)
+                || !key.startsWith(CONFIG_KEY_PREFIX) || model == null || model instanceof RoutingChatModel);
+        if (!removedKeys.isEmpty()) {
+            log.info("已从缓存中移除模型实例，configId={}, removed={}", configId, removedKeys.size());
+        }
+        modelRouter.removeStats(configId);
+        // 基于这些模型构建的 Agent 模板同样需要失效
+        agentTemplateCache.invalidateModelConfig(configId);
+        for (String key : removedKeys) {
+            if (key.startsWith(CONFIG_KEY_PREFIX) && !key.equals(configKey)) {
+                agentTemplateCache.invalidateModelConfig(key.substring(CONFIG_KEY_PREFIX.length()));
+            }
+        }
+    }
+
+    private void invalidateAllLocal() {
+        modelCache.invalidateAll();
+        modelRouter.pruneStats();
+        agentTemplateCache.invalidateAll();
+    }
+
+    private void publishInvalidation(String configId) {
+        try {
+            RedisUtils.publish(CacheConstants.MODEL_CONFIG_INVALIDATE_TOPIC, nodeId + ":" + configId);
+        } catch (Exception e) {
+            log.warn("发布模型配置变更通知失败: configId={}, error={}", configId, e.getMessage());
+        }
+    }
+
     /**
      * 生成缓存键
      */
@@ -0,0 +1,210 @@
+package com.alibaba.cloud.ai.copilot.service.impl.provider;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
+import com.alibaba.cloud.ai.copilot.mapper.ModelConfigMapper;
+import com.alibaba.cloud.ai.copilot.service.ModelProvider;
+import com.alibaba.cloud.ai.copilot.service.impl.ProviderRegistry;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 模型路由器
+ * <p>
+ * 同一个逻辑模型（模型名称相同）可以在多个供应商或网关下注册为多条模型配置，
+ * 路由器把这些配置组合为一个 {@link RoutingChatModel}：按各端点的延迟 EWMA、错误率和剩余配额选择端点，
+ * 遇到可重试的错误时在同一次请求内切换到其他端点。
+ * </p>
+ * <p>
+ * 端点统计按配置ID保存在路由器中，模型实例因缓存过期重建后统计不会丢失；
+ * 配置被修改或删除时移除对应的统计（端点地址、密钥或模型名称可能已经变化），批量变更时只保留仍然启用的配置。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelRouter {
+
+    private final ChatProperties chatProperties;
+    private final ModelConfigMapper modelConfigMapper;
+    private final ProviderRegistry providerRegistry;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 端点统计（key: 模型配置ID）
+     */
+    private final Map<Long, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 为模型配置创建 ChatModel：存在同名的其他可用配置时返回路由模型，否则直接返回该配置的模型
+     *
+     * @param config  请求指定的模型配置（路由的首选端点）
+     * @param model   该配置创建的 ChatModel
+     * @param options 自定义 ChatOptions，为 null 则使用默认选项
+     * @return ChatModel 实例
+     */
+    public ChatModel route(ModelConfigEntity config, ChatModel model, ChatOptions options) {
+        ChatProperties.Routing routing = chatProperties.getRouting();
+        if (!routing.isEnabled() || !StringUtils.hasText(config.getModelName())) {
+            return model;
+        }
+
+        List<RoutingChatModel.Endpoint> endpoints = new ArrayList<>();
+        endpoints.add(endpoint(config, model));
+        for (ModelConfigEntity peer : findPeers(config)) {
+            try {
+                ModelProvider provider = providerRegistry.getProviderOrThrow(peer.getProvider());
+                endpoints.add(endpoint(peer, provider.createChatModel(peer, options)));
+            } catch (Exception e) {
+                log.warn("创建路由端点失败，跳过: configId={}, provider={}, error={}",
+                        peer.getId(), peer.getProvider(), e.getMessage());
+            }
+        }
+        if (endpoints.size() == 1) {
+            return model;
+        }
+
+        log.info("创建路由模型: model={}, endpoints={}", config.getModelName(),
+                endpoints.stream().map(e -> e.config().getProvider() + "#" + e.config().getId()).toList());
+        return new RoutingChatModel(config.getModelName(), endpoints, routing, meterRegistry);
+    }
+
+    /**
+     * 模型配置修改或删除后移除该配置的端点统计
+     *
+     * @param configId 配置ID
+     */
+    public void removeStats(String configId) {
+        try {
+            stats.remove(Long.valueOf(configId));
+        } catch (NumberFormatException e) {
+            log.debug("忽略非数字的模型配置ID: {}", configId);
+        }
+    }
+
+    /**
+     * 模型配置批量变更后只保留仍然启用的配置的端点统计
+     */
+    public void pruneStats() {
+        if (stats.isEmpty()) {
+            return;
+        }
+        try {
+            Set<Long> enabledIds = modelConfigMapper.selectList(new LambdaQueryWrapper<ModelConfigEntity>()
+                            .select(ModelConfigEntity::getId)
+                            .eq(ModelConfigEntity::getEnabled, true))
+                    .stream()
+                    .map(ModelConfigEntity::getId)
+                    .collect(Collectors.toSet());
+            stats.keySet().retainAll(enabledIds);
+        } catch (Exception e) {
+            log.warn("清理端点统计失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 同名、已启用且对首选配置的所有者可见的其他模型配置
+     */
+    private List<ModelConfigEntity> findPeers(ModelConfigEntity config) {
+        return modelConfigMapper.selectList(new LambdaQueryWrapper<ModelConfigEntity>()
+                        .eq(ModelConfigEntity::getModelName, config.getModelName())
+                        .eq(ModelConfigEntity::getEnabled, true)
+                        .ne(ModelConfigEntity::getId, config.getId())
+                        .orderByAsc(ModelConfigEntity::getSortOrder)
+                        .orderByAsc(ModelConfigEntity::getId))
+                .stream()
+                .filter(peer -> "PUBLIC".equals(peer.getVisibility())
+                        || Objects.equals(peer.getUserId(), config.getUserId()))
+                .filter(peer -> providerRegistry.getProvider(peer.getProvider()).isPresent())
+                .toList();
+    }
+
+    private RoutingChatModel.Endpoint endpoint(ModelConfigEntity config, ChatModel model) {
+        ModelProvider provider = providerRegistry.getProviderOrThrow(config.getProvider());
+        return new RoutingChatModel.Endpoint(config, model, provider,
+                stats.computeIfAbsent(config.getId(), id -> new EndpointStats()));
+    }
+
+    /**
+     * 单个端点的运行统计
+     * <p>
+     * 延迟为首个响应的耗时（流式为首帧，同步调用为完整响应），错误率为失败次数的 EWMA；
+     * 配额来自响应头中的限流信息，收到 429 或剩余请求数为 0 时在冷却期内不再选择该端点。
+     * </p>
+     */
+    static class EndpointStats {
+
+        private double latencyEwmaMs;
+        private double errorRate;
+        private boolean sampled;
+        private double quotaRatio = 1.0;
+        private long cooldownUntil;
+
+        synchronized void recordSuccess(long latencyNanos, double alpha) {
+            double latencyMs = latencyNanos / 1_000_000.0;
+            latencyEwmaMs = sampled ? latencyEwmaMs + alpha * (latencyMs - latencyEwmaMs) : latencyMs;
+            sampled = true;
+            errorRate -= alpha * errorRate;
+        }
+
+        synchronized void recordFailure(Integer statusCode, double alpha, long quotaCooldownMs) {
+            errorRate += alpha * (1 - errorRate);
+            if (statusCode != null && statusCode == 429) {
+                quotaRatio = 0;
+                cooldownUntil = System.currentTimeMillis() + quotaCooldownMs;
+            }
+        }
+
+        /**
+         * 根据响应中的限流信息更新剩余配额（响应未携带限流信息时上限为 0，忽略）
+         */
+        synchronized void recordRateLimit(RateLimit rateLimit) {
+            if (rateLimit == null || rateLimit.getRequestsLimit() == null || rateLimit.getRequestsLimit() <= 0) {
+                return;
+            }
+            long remaining = rateLimit.getRequestsRemaining() != null ? rateLimit.getRequestsRemaining() : 0;
+            quotaRatio = (double) remaining / rateLimit.getRequestsLimit();
+            if (remaining <= 0) {
+                Duration reset = rateLimit.getRequestsReset();
+                cooldownUntil = System.currentTimeMillis() + (reset != null ? reset.toMillis() : 0);
+            }
+        }
+
+        synchronized boolean isCoolingDown() {
+            if (cooldownUntil == 0) {
+                return false;
+            }
+            if (System.currentTimeMillis() < cooldownUntil) {
+                return true;
+            }
+            // 冷却结束，配额按未知处理，等待下一次响应更新
+            cooldownUntil = 0;
+            quotaRatio = 1.0;
+            return false;
+        }
+
+        /**
+         * 端点得分，越小越好；未采样过的端点得分为 0，会被优先尝试
+         */
+        synchronized double score(double errorPenalty) {
+            double quota = Math.max(0.05, Math.min(1.0, quotaRatio));
+            return latencyEwmaMs * (1 + errorPenalty * errorRate) / quota;
+        }
+    }
+}
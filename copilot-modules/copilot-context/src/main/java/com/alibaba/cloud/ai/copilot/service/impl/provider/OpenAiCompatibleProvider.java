@@ -1,5 +1,6 @@
 package com.alibaba.cloud.ai.copilot.service.impl.provider;
 
+import com.alibaba.cloud.ai.copilot.config.ModelHttpClients;
 import com.alibaba.cloud.ai.copilot.service.AbstractOpenAiCompatibleProvider;
 import com.alibaba.cloud.ai.copilot.service.LlmService;
 import com.alibaba.cloud.ai.copilot.enums.ProviderEnum;
@@ -13,8 +14,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class OpenAiCompatibleProvider extends AbstractOpenAiCompatibleProvider {
 
-    public OpenAiCompatibleProvider(LlmService llmService) {
-        super(llmService);
+    public OpenAiCompatibleProvider(LlmService llmService, ModelHttpClients modelHttpClients) {
+        super(llmService, modelHttpClients);
     }
 
     @Override
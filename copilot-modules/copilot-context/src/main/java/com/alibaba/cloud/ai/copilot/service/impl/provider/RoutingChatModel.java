@@ -0,0 +1,239 @@
+package com.alibaba.cloud.ai.copilot.service.impl.provider;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.domain.entity.ModelConfigEntity;
+import com.alibaba.cloud.ai.copilot.service.AbstractOpenAiCompatibleProvider;
+import com.alibaba.cloud.ai.copilot.service.ModelProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingChatOptions;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 路由 ChatModel
+ * <p>
+ * 把同一个逻辑模型的多个端点组合为一个 ChatModel。每次请求按 power-of-two-choices 选择首个端点
+ * （随机取两个可用端点，得分低的优先），其余端点按得分排序作为故障切换的候选。
+ * </p>
+ * <p>
+ * 故障切换：端点返回可重试的错误（按供应商的 isRetryableException 判断，如 429、5xx、网络错误）时，
+ * 同一次请求内切换到下一个端点，用户无需重新发送；端点被熔断或并发已满时请求不会发出，同样立即切换。流式请求只在尚未输出任何内容时切换，
+ * 已经输出部分内容后出错直接返回错误，避免重复输出。
+ * </p>
+ * <p>
+ * 剩余配额按响应元数据中的限流信息更新：同步请求读取完整响应，流式请求读取首个分片；
+ * 供应商未在流式响应中返回限流信息时，配额保持不变，只依赖 429 触发冷却。
+ * </p>
+ */
+@Slf4j
+class RoutingChatModel implements ChatModel {
+
+    private final String modelName;
+    private final List<Endpoint> endpoints;
+    private final ChatProperties.Routing config;
+    private final MeterRegistry meterRegistry;
+
+    RoutingChatModel(String modelName, List<Endpoint> endpoints, ChatProperties.Routing config,
+                     MeterRegistry meterRegistry) {
+        this.modelName = modelName;
+        this.endpoints = List.copyOf(endpoints);
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        List<Endpoint> order = routingOrder();
+        RuntimeException lastError = null;
+        for (int i = 0; i < order.size(); i++) {
+            Endpoint endpoint = order.get(i);
+            recordSelection(endpoint, i);
+            long start = System.nanoTime();
+            try {
+                ChatResponse response = endpoint.model().call(forEndpoint(prompt, endpoint));
+                endpoint.stats().recordSuccess(System.nanoTime() - start, config.getEwmaAlpha());
+                if (response != null && response.getMetadata() != null) {
+                    endpoint.stats().recordRateLimit(response.getMetadata().getRateLimit());
+                }
+                return response;
+            } catch (RuntimeException e) {
+                lastError = e;
+                if (!failover(endpoint, e, i + 1 < order.size())) {
+                    throw e;
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> streamFrom(prompt, routingOrder(), 0));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return endpoints.get(0).model().getDefaultOptions();
+    }
+
+    /**
+     * 从第 index 个端点开始流式调用，尚未输出内容时出错则切换到下一个端点
+     */
+    private Flux<ChatResponse> streamFrom(Prompt prompt, List<Endpoint> order, int index) {
+        Endpoint endpoint = order.get(index);
+        recordSelection(endpoint, index);
+        long start = System.nanoTime();
+        AtomicBoolean emitted = new AtomicBoolean();
+        return endpoint.model().stream(forEndpoint(prompt, endpoint))
+                .doOnNext(response -> {
+                    if (emitted.compareAndSet(false, true)) {
+                        endpoint.stats().recordSuccess(System.nanoTime() - start, config.getEwmaAlpha());
+                        // 限流信息来自响应头，流式响应只在首个分片中读取
+                        if (response.getMetadata() != null) {
+                            endpoint.stats().recordRateLimit(response.getMetadata().getRateLimit());
+                        }
+                    }
+                })
+                .onErrorResume(e -> {
+                    boolean hasNext = index + 1 < order.size();
+                    if (!emitted.get() && e instanceof Exception exception && failover(endpoint, exception, hasNext)) {
+                        return streamFrom(prompt, order, index + 1);
+                    }
+                    if (emitted.get()) {
+                        // 已经输出部分内容，只记录端点失败
+                        endpoint.stats().recordFailure(statusCode(endpoint, e), config.getEwmaAlpha(),
+                                config.getQuotaCooldownMs());
+                    }
+                    return Flux.error(e);
+                });
+    }
+
+    /**
+     * 记录端点失败，并判断是否切换到下一个端点
+     *
+     * @return true 表示切换到下一个端点
+     */
+    private boolean failover(Endpoint endpoint, Exception e, boolean hasNext) {
+        Integer statusCode = statusCode(endpoint, e);
+        endpoint.stats().recordFailure(statusCode, config.getEwmaAlpha(), config.getQuotaCooldownMs());
+        if (!hasNext || !isRetryable(endpoint, e)) {
+            return false;
+        }
+        log.warn("模型端点调用失败，切换到下一个端点: model={}, provider={}, configId={}, status={}, error={}",
+                modelName, endpoint.config().getProvider(), endpoint.config().getId(), statusCode, e.getMessage());
+        meterRegistry.counter("copilot.model.routing.failovers",
+                "model", modelName, "provider", providerTag(endpoint)).increment();
+        return true;
+    }
+
+    /**
+     * 计算本次请求的端点顺序：可用端点中按 power-of-two-choices 选出首个，其余按得分排序；
+     * 全部端点都在冷却期时按得分尝试全部端点
+     */
+    private List<Endpoint> routingOrder() {
+        List<Endpoint> available = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.stats().isCoolingDown()) {
+                available.add(endpoint);
+            }
+        }
+        if (available.isEmpty()) {
+            available.addAll(endpoints);
+        }
+        double penalty = config.getErrorPenalty();
+        available.sort(Comparator.comparingDouble(endpoint -> endpoint.stats().score(penalty)));
+        if (available.size() > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(available.size());
+            int b = random.nextInt(available.size() - 1);
+            if (b >= a) {
+                b++;
+            }
+            // 列表已按得分排序，下标小的得分更低
+            available.add(0, available.remove(Math.min(a, b)));
+        }
+        int maxAttempts = Math.max(1, config.getMaxAttempts());
+        return available.size() > maxAttempts ? available.subList(0, maxAttempts) : available;
+    }
+
+    private void recordSelection(Endpoint endpoint, int attempt) {
+        if (attempt == 0) {
+            meterRegistry.counter("copilot.model.routing.selections",
+                    "model", modelName, "provider", providerTag(endpoint)).increment();
+        }
+    }
+
+    /**
+     * 端点的模型标识可能与首选配置不同，请求始终使用该端点的 modelKey
+     * <p>
+     * 请求选项中没有指定模型时也要写入：ChatModel 会把请求选项合并到自身的默认选项上，
+     * 其他端点的默认选项不一定带有正确的模型标识（例如按名称创建的实例），不能依赖合并结果。
+     * </p>
+     */
+    private static Prompt forEndpoint(Prompt prompt, Endpoint endpoint) {
+        String modelKey = endpoint.config().getModelKey();
+        if (!StringUtils.hasText(modelKey)) {
+            return prompt;
+        }
+        ChatOptions options = prompt.getOptions();
+        if (options == null) {
+            return new Prompt(prompt.getInstructions(), ChatOptions.builder().model(modelKey).build());
+        }
+        if (modelKey.equals(options.getModel())) {
+            return prompt;
+        }
+        ChatOptions copy = options.copy();
+        if (copy instanceof OpenAiChatOptions openAiOptions) {
+            openAiOptions.setModel(modelKey);
+        } else if (copy instanceof DefaultToolCallingChatOptions toolCallingOptions) {
+            toolCallingOptions.setModel(modelKey);
+        } else {
+            log.warn("无法为端点设置模型标识，使用原请求选项: optionsType={}, configId={}",
+                    copy.getClass().getSimpleName(), endpoint.config().getId());
+            return prompt;
+        }
+        return new Prompt(prompt.getInstructions(), copy);
+    }
+
+    private static boolean isRetryable(Endpoint endpoint, Exception e) {
+        if (endpoint.provider() instanceof AbstractOpenAiCompatibleProvider provider) {
+            return provider.isRetryableException(e);
+        }
+        return true;
+    }
+
+    private static Integer statusCode(Endpoint endpoint, Throwable e) {
+        if (e instanceof Exception exception && endpoint.provider() instanceof AbstractOpenAiCompatibleProvider provider) {
+            return provider.extractHttpStatusCode(exception);
+        }
+        return null;
+    }
+
+    private static String providerTag(Endpoint endpoint) {
+        return endpoint.config().getProvider() != null ? endpoint.config().getProvider() : "unknown";
+    }
+
+    /**
+     * 路由端点
+     *
+     * @param config   模型配置
+     * @param model    该配置创建的 ChatModel
+     * @param provider 供应商（用于错误分类）
+     * @param stats    端点统计
+     */
+    record Endpoint(ModelConfigEntity config, ChatModel model, ModelProvider provider,
+                    ModelRouter.EndpointStats stats) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.alibaba.cloud.ai.copilot.service.impl.provider;
 
+import com.alibaba.cloud.ai.copilot.config.ModelHttpClients;
 import com.alibaba.cloud.ai.copilot.service.AbstractOpenAiCompatibleProvider;
 import com.alibaba.cloud.ai.copilot.service.LlmService;
 import com.alibaba.cloud.ai.copilot.enums.ProviderEnum;
@@ -14,8 +15,8 @@ import org.springframework.stereotype.Component;
 @Component
 public class SiliconflowProvider extends AbstractOpenAiCompatibleProvider {
 
-    public SiliconflowProvider(LlmService llmService) {
-        super(llmService);
+    public SiliconflowProvider(LlmService llmService, ModelHttpClients modelHttpClients) {
+        super(llmService, modelHttpClients);
     }
 
     @Override
@@ -0,0 +1,293 @@
+package com.alibaba.cloud.ai.copilot.service.mcp;
+
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
+import com.alibaba.cloud.ai.copilot.domain.entity.McpToolInfo;
+import com.alibaba.cloud.ai.copilot.enums.ToolStatus;
+import com.alibaba.cloud.ai.copilot.mapper.McpToolInfoMapper;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
+import com.alibaba.cloud.ai.copilot.service.agent.AgentTemplateCache;
+import com.alibaba.cloud.ai.copilot.service.stream.CancellableToolCallback;
+import com.alibaba.cloud.ai.copilot.service.stream.ChatStreamRegistry;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 已启用工具的 ToolCallback 快照管理器
+ * <p>
+ * 维护一份不可变、带版本号的 ToolCallback 快照，聊天请求直接读取快照，
+ * 不再在每轮对话中查询 mcp_tool_info 或向 MCP Server 发起 listTools。
+ * </p>
+ * <p>
+ * 快照只在工具发生变更时重建（保存、更新、启停、删除），
+ * 并通过 Redis 发布订阅通知其他节点同步重建。通知中带有变更的工具ID，
+ * 其他节点先关闭这些工具的 MCP 客户端，再按新配置重建快照。
+ * </p>
+ * <p>
+ * 部分 MCP 工具加载失败（服务未启动、网络错误）时快照仍然生效，
+ * 同时按指数退避安排重试，重试前关闭失败工具的客户端，直到全部加载成功。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ToolCallbackSnapshotManager {
+
+    /**
+     * 加载失败后首次重试的等待时间
+     */
+    private static final Duration RETRY_INITIAL_DELAY = Duration.ofSeconds(5);
+
+    /**
+     * 重试等待时间上限
+     */
+    private static final Duration RETRY_MAX_DELAY = Duration.ofMinutes(5);
+
+    /**
+     * 通知中表示全部工具的标记
+     */
+    private static final String ALL_TOOLS = "*";
+
+    private final McpToolInfoMapper mcpToolInfoMapper;
+    private final McpClientManager mcpClientManager;
+    private final BuiltinToolRegistry builtinToolRegistry;
+    private final AgentTemplateCache agentTemplateCache;
+    private final ChatStreamRegistry chatStreamRegistry;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 当前节点标识，用于忽略自己发布的变更通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 快照版本号生成器
+     */
+    private final AtomicLong versionGenerator = new AtomicLong();
+
+    /**
+     * 当前快照，首次访问时构建
+     */
+    private volatile ToolCallbackSnapshot snapshot;
+
+    /**
+     * 连续加载不完整的次数（决定退避时间）和下次重试的时间，由对象锁保护
+     */
+    private int retryAttempts;
+    private long nextRetryAt;
+
+    /**
+     * 获取当前快照（O(1)，不访问数据库和 MCP Server）
+     *
+     * @return 当前工具快照
+     */
+    public ToolCallbackSnapshot current() {
+        ToolCallbackSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = rebuild();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 工具发生变更后调用：在事务提交后重建本地快照并通知其他节点
+     *
+     * @param toolIds 发生变更的工具ID，其他节点会先关闭这些工具的 MCP 客户端
+     */
+    public void onToolsChanged(Collection<Long> toolIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuildAndPublish(toolIds);
+                }
+            });
+        } else {
+            rebuildAndPublish(toolIds);
+        }
+    }
+
+    /**
+     * 订阅其他节点的工具变更通知
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        try {
+            RedisUtils.subscribe(CacheConstants.TOOL_SNAPSHOT_TOPIC, String.class, message -> {
+                int index = message.indexOf(':');
+                String sourceNodeId = index < 0 ? message : message.substring(0, index);
+                if (nodeId.equals(sourceNodeId)) {
+                    return;
+                }
+                String toolIds = index < 0 ? ALL_TOOLS : message.substring(index + 1);
+                log.info("收到工具变更通知，重建工具快照: sourceNode={}, toolIds={}", sourceNodeId, toolIds);
+                refreshClients(toolIds);
+                synchronized (this) {
+                    rebuild();
+                }
+            });
+        } catch (Exception e) {
+            log.warn("订阅工具变更通知失败，跨节点快照同步不可用: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildAndPublish(Collection<Long> toolIds) {
+        synchronized (this) {
+            rebuild();
+        }
+        String payload = toolIds == null || toolIds.isEmpty()
+                ? ALL_TOOLS
+                : toolIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        try {
+            RedisUtils.publish(CacheConstants.TOOL_SNAPSHOT_TOPIC, nodeId + ":" + payload);
+        } catch (Exception e) {
+            log.warn("发布工具变更通知失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭变更工具的 MCP 客户端，下次加载时按最新配置重新连接
+     */
+    private void refreshClients(String toolIds) {
+        if (ALL_TOOLS.equals(toolIds)) {
+            mcpClientManager.cleanup();
+            return;
+        }
+        for (String toolId : toolIds.split(",")) {
+            try {
+                mcpClientManager.refreshClient(Long.valueOf(toolId.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("忽略无效的工具ID: {}", toolId);
+            }
+        }
+    }
+
+    /**
+     * 重建快照（调用方需持有锁）
+     */
+    private ToolCallbackSnapshot rebuild() {
+        List<Long> failedToolIds = new ArrayList<>();
+        ToolCallbackSnapshot rebuilt = new ToolCallbackSnapshot(versionGenerator.incrementAndGet(),
+                loadToolCallbacks(failedToolIds), List.copyOf(failedToolIds));
+        snapshot = rebuilt;
+        agentTemplateCache.onToolSetChanged(rebuilt.version());
+        if (rebuilt.isComplete()) {
+            retryAttempts = 0;
+            log.info("工具快照已重建: version={}, toolCount={}", rebuilt.version(), rebuilt.callbacks().size());
+        } else {
+            log.warn("工具快照已重建但部分工具加载失败: version={}, toolCount={}, failedToolIds={}",
+                    rebuilt.version(), rebuilt.callbacks().size(), rebuilt.failedToolIds());
+            scheduleRetry();
+        }
+        return rebuilt;
+    }
+
+    /**
+     * 快照不完整时按指数退避计算下次重试时间（调用方需持有锁）
+     */
+    private void scheduleRetry() {
+        long delayMs = Math.min(RETRY_MAX_DELAY.toMillis(),
+                RETRY_INITIAL_DELAY.toMillis() << Math.min(retryAttempts, 16));
+        retryAttempts++;
+        nextRetryAt = System.currentTimeMillis() + delayMs;
+        log.info("将在 {}ms 后重试加载工具快照（第{}次）", delayMs, retryAttempts);
+    }
+
+    /**
+     * 定时检查：快照不完整且已到重试时间时重建
+     */
+    @Scheduled(fixedDelay = 5000, initialDelay = 5000)
+    public void retryIncompleteSnapshot() {
+        ToolCallbackSnapshot current = snapshot;
+        if (current == null || current.isComplete()) {
+            return;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current.isComplete() || System.currentTimeMillis() < nextRetryAt) {
+                return;
+            }
+            // 失败工具的客户端可能处于半初始化状态，关闭后重新连接
+            current.failedToolIds().forEach(mcpClientManager::refreshClient);
+            rebuild();
+        }
+    }
+
+    /**
+     * 加载所有已启用工具的 ToolCallback
+     *
+     * @param failedToolIds 收集加载失败的工具ID
+     */
+    private List<ToolCallback> loadToolCallbacks(List<Long> failedToolIds) {
+        LambdaQueryWrapper<McpToolInfo> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(McpToolInfo::getStatus, ToolStatus.ENABLED.getValue());
+        List<McpToolInfo> enabledTools = mcpToolInfoMapper.selectList(queryWrapper);
+        List<ToolCallback> allTools = new ArrayList<>();
+        for (McpToolInfo tool : enabledTools) {
+            try {
+                if (BuiltinToolRegistry.TYPE_BUILTIN.equals(tool.getType())) {
+                    // 内置工具 - 从注册表获取
+                    ToolCallback callback = builtinToolRegistry.createToolCallback(tool.getName());
+                    if (callback != null) {
+                        allTools.add(callback);
+                        log.debug("加载内置工具: {}", tool.getName());
+                    }
+                } else {
+                    // MCP 工具 (LOCAL/REMOTE) - 从 McpClientManager 获取，连接失败时返回空列表
+                    List<ToolCallback> mcpCallbacks = mcpClientManager.getToolCallbacks(List.of(tool.getId()));
+                    if (mcpCallbacks.isEmpty()) {
+                        failedToolIds.add(tool.getId());
+                    }
+                    allTools.addAll(mcpCallbacks);
+                    log.debug("加载 MCP 工具: {}", tool.getName());
+                }
+            } catch (Exception e) {
+                log.error("加载工具失败: {} - {}", tool.getName(), e.getMessage());
+                failedToolIds.add(tool.getId());
+                // 继续加载其他工具，不阻断
+            }
+        }
+        // 包装为可取消的工具，客户端断开时中断正在执行的工具调用
+        return allTools.stream()
+                .<ToolCallback>map(callback -> new CancellableToolCallback(callback, chatStreamRegistry, meterRegistry))
+                .toList();
+    }
+
+    /**
+     * 工具快照
+     *
+     * @param version       快照版本号（本节点内单调递增）
+     * @param callbacks     不可变的 ToolCallback 列表
+     * @param failedToolIds 加载失败、等待重试的工具ID
+     */
+    public record ToolCallbackSnapshot(long version, List<ToolCallback> callbacks, List<Long> failedToolIds) {
+
+        /**
+         * 是否全部工具都加载成功
+         */
+        public boolean isComplete() {
+            return failedToolIds.isEmpty();
+        }
+    }
+}
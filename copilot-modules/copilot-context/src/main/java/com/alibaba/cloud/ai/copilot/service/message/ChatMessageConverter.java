@@ -0,0 +1,290 @@
+package com.alibaba.cloud.ai.copilot.service.message;
+
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天消息转换器
+ * 将 chat_message 表中的实体还原为 Spring AI Message 对象（包括 tool_calls 和 tool 响应），
+ * 并修复历史中不完整的工具调用链
+ * <p>
+ * AssistantMessage / ToolResponseMessage 带 tool_calls 的构造函数不是 public，
+ * 启动时解析一次为 MethodHandle 复用；metadata 使用共享的 ObjectReader 直接解析为类型化对象。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ChatMessageConverter {
+
+    private static final ObjectReader METADATA_READER = new ObjectMapper().readerFor(MessageMetadata.class);
+
+    /**
+     * AssistantMessage(String content, Map<String, Object> properties, List<ToolCall> toolCalls, List<Media> media)
+     */
+    private static final MethodHandle ASSISTANT_CONSTRUCTOR =
+        constructorHandle(AssistantMessage.class, String.class, Map.class, List.class, List.class);
+
+    /**
+     * ToolResponseMessage(List<ToolResponse> responses, Map<String, Object> properties)
+     */
+    private static final MethodHandle TOOL_RESPONSE_CONSTRUCTOR =
+        constructorHandle(ToolResponseMessage.class, List.class, Map.class);
+
+    /**
+     * 转换单条消息
+     *
+     * @param entity 消息实体
+     * @return Message 对象，无法还原时返回 null
+     */
+    public Message convert(ChatMessageEntity entity) {
+        try {
+            return switch (entity.getRole().toLowerCase()) {
+                case "user" -> new UserMessage(entity.getContent());
+                case "assistant" -> convertAssistantMessage(entity);
+                case "system" -> new SystemMessage(entity.getContent());
+                case "tool" -> convertToolMessage(entity);
+                default -> {
+                    log.warn("未知的消息角色: {}, 默认作为用户消息处理", entity.getRole());
+                    yield new UserMessage(entity.getContent());
+                }
+            };
+        } catch (Exception e) {
+            log.error("转换消息失败: messageId={}, role={}",
+                entity.getMessageId(), entity.getRole(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 验证并修复工具调用链的完整性
+     * DeepSeek API 要求：如果助手消息包含 tool_calls，后面必须有对应的 tool 响应消息
+     * <p>
+     * 先从后向前扫描一遍，用“工具调用ID → 之后最近一条响应的位置”索引算出每条助手消息的调用链终点，
+     * 再从前向后扫描一遍输出结果，整体为线性复杂度：
+     * <ul>
+     *     <li>所有 tool_calls 都有响应：保留助手消息到最后一条响应之间的全部消息</li>
+     *     <li>存在缺失的响应：移除该助手消息的 tool_calls，只保留内容</li>
+     *     <li>不属于任何完整调用链的 tool 响应（例如被移除 tool_calls 的助手消息的部分响应）直接丢弃</li>
+     * </ul>
+     * </p>
+     *
+     * @param messages 消息列表
+     * @return 修复后的消息列表
+     */
+    public List<Message> validateAndFixToolCallChain(List<Message> messages) {
+        int size = messages.size();
+        // chainEnd[i]：第 i 条助手消息的调用链终点，-1 表示不完整（只对带 tool_calls 的助手消息有意义）
+        int[] chainEnd = new int[size];
+        Map<String, Integer> nextResponse = new HashMap<>();
+        for (int i = size - 1; i >= 0; i--) {
+            Message message = messages.get(i);
+            if (message instanceof ToolResponseMessage toolResponse) {
+                for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                    nextResponse.put(response.id(), i);
+                }
+            } else if (hasToolCalls(message)) {
+                int end = i;
+                for (AssistantMessage.ToolCall toolCall : ((AssistantMessage) message).getToolCalls()) {
+                    Integer responseIndex = nextResponse.get(toolCall.id());
+                    if (responseIndex == null) {
+                        end = -1;
+                        break;
+                    }
+                    end = Math.max(end, responseIndex);
+                }
+                chainEnd[i] = end;
+            }
+        }
+
+        List<Message> fixedMessages = new ArrayList<>(size);
+        int i = 0;
+        while (i < size) {
+            Message message = messages.get(i);
+            if (hasToolCalls(message)) {
+                int end = chainEnd[i];
+                if (end > i) {
+                    // 工具调用链完整，保留助手消息和后续的 tool 消息
+                    fixedMessages.addAll(messages.subList(i, end + 1));
+                    i = end + 1;
+                    continue;
+                }
+                log.warn("检测到不完整的工具调用链，移除 tool_calls");
+                fixedMessages.add(withoutToolCalls((AssistantMessage) message));
+            } else if (message instanceof ToolResponseMessage) {
+                log.debug("丢弃不属于完整工具调用链的 tool 响应");
+            } else {
+                fixedMessages.add(message);
+            }
+            i++;
+        }
+        return fixedMessages;
+    }
+
+    /**
+     * 转换 Assistant 消息，包括恢复 tool_calls
+     */
+    private AssistantMessage convertAssistantMessage(ChatMessageEntity entity) {
+        String content = entity.getContent() != null ? entity.getContent() : "";
+
+        // 检查 metadata 中是否包含 tool_calls
+        MessageMetadata metadata = readMetadata(entity);
+        if (metadata != null && Boolean.TRUE.equals(metadata.hasToolCalls())
+            && metadata.toolCalls() != null && !metadata.toolCalls().isEmpty()) {
+            // 恢复 tool_calls
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(metadata.toolCalls().size());
+            for (ToolCallData callData : metadata.toolCalls()) {
+                toolCalls.add(new AssistantMessage.ToolCall(
+                    callData.id() != null ? callData.id() : "",
+                    callData.type() != null ? callData.type() : "function",
+                    callData.name() != null ? callData.name() : "",
+                    argumentsOf(callData.arguments())
+                ));
+            }
+            log.debug("恢复 Assistant 消息，包含 {} 个 tool_calls", toolCalls.size());
+            // 注意：tool_calls 通过构造函数参数传递，不要放入 properties，避免序列化到 MetadataDTO 时出错
+            AssistantMessage message = newAssistantMessage(content, toolCalls);
+            if (message != null) {
+                return message;
+            }
+        }
+
+        // 普通 Assistant 消息（无 tool_calls）
+        return new AssistantMessage(content);
+    }
+
+    /**
+     * 转换 Tool 消息为 ToolResponseMessage
+     */
+    private ToolResponseMessage convertToolMessage(ChatMessageEntity entity) {
+        MessageMetadata metadata = readMetadata(entity);
+        if (metadata == null) {
+            log.warn("tool 消息缺少 metadata，无法恢复 ToolResponseMessage: messageId={}", entity.getMessageId());
+            return null;
+        }
+        String toolCallId = metadata.toolCallId();
+        String toolName = metadata.toolName();
+        if (toolCallId == null || toolName == null) {
+            log.warn("tool 消息 metadata 缺少必要字段: messageId={}, metadata={}",
+                entity.getMessageId(), entity.getMetadata());
+            return null;
+        }
+        String content = entity.getContent() != null ? entity.getContent() : "";
+        if (TOOL_RESPONSE_CONSTRUCTOR == null) {
+            log.error("ToolResponseMessage 构造函数不可用，无法恢复: messageId={}", entity.getMessageId());
+            return null;
+        }
+        try {
+            // properties 不要塞入自定义字段（如 toolCallId/toolName），避免在 state().data() 序列化/反序列化链路中污染 metadata
+            List<ToolResponseMessage.ToolResponse> responses =
+                List.of(new ToolResponseMessage.ToolResponse(toolCallId, toolName, content));
+            Map<String, Object> properties = new HashMap<>();
+            log.debug("恢复 ToolResponseMessage: toolCallId={}, toolName={}", toolCallId, toolName);
+            return (ToolResponseMessage) TOOL_RESPONSE_CONSTRUCTOR.invokeExact(responses, properties);
+        } catch (Throwable e) {
+            log.error("创建 ToolResponseMessage 失败: messageId={}", entity.getMessageId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 创建不带 tool_calls 的 AssistantMessage（保留内容）
+     */
+    private static AssistantMessage withoutToolCalls(AssistantMessage message) {
+        String content = message.getText() != null ? message.getText() : "";
+        AssistantMessage fixed = newAssistantMessage(content, new ArrayList<>());
+        return fixed != null ? fixed : new AssistantMessage(content);
+    }
+
+    /**
+     * 通过缓存的构造函数句柄创建 AssistantMessage，失败时返回 null
+     */
+    private static AssistantMessage newAssistantMessage(String content, List<AssistantMessage.ToolCall> toolCalls) {
+        if (ASSISTANT_CONSTRUCTOR == null) {
+            return null;
+        }
+        try {
+            // properties 应该为空或只包含其他元数据，不要包含 tool_calls
+            Map<String, Object> properties = new HashMap<>();
+            List<Object> media = new ArrayList<>();
+            return (AssistantMessage) ASSISTANT_CONSTRUCTOR.invokeExact(content, properties, toolCalls, media);
+        } catch (Throwable e) {
+            log.error("创建带 tool_calls 的 AssistantMessage 失败，使用普通消息", e);
+            return null;
+        }
+    }
+
+    private static boolean hasToolCalls(Message message) {
+        return message instanceof AssistantMessage assistant
+            && assistant.getToolCalls() != null
+            && !assistant.getToolCalls().isEmpty();
+    }
+
+    private static MessageMetadata readMetadata(ChatMessageEntity entity) {
+        String metadata = entity.getMetadata();
+        if (metadata == null || metadata.isBlank()) {
+            return null;
+        }
+        try {
+            return METADATA_READER.readValue(metadata);
+        } catch (Exception e) {
+            log.warn("解析消息 metadata 失败: messageId={}", entity.getMessageId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 工具参数通常保存为 JSON 字符串；若保存的是对象则重新序列化为 JSON
+     */
+    private static String argumentsOf(JsonNode arguments) {
+        if (arguments == null || arguments.isNull() || arguments.isMissingNode()) {
+            return "{}";
+        }
+        return arguments.isTextual() ? arguments.asText() : arguments.toString();
+    }
+
+    /**
+     * 解析非 public 构造函数并转换为 MethodHandle，调用方按声明的参数类型使用 invokeExact
+     * （invokeExact 按擦除后的静态类型匹配，实参用带泛型的局部变量即可，不需要强转为原始类型）
+     */
+    private static MethodHandle constructorHandle(Class<?> type, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.error("无法解析 {} 的构造函数，相关消息将按普通消息还原", type.getSimpleName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * chat_message.metadata 中与还原相关的字段
+     * assistant 消息：hasToolCalls、toolCalls；tool 消息：toolCallId、toolName
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record MessageMetadata(Boolean hasToolCalls, List<ToolCallData> toolCalls,
+                                   String toolCallId, String toolName) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record ToolCallData(String id, String type, String name, JsonNode arguments) {
+    }
+}
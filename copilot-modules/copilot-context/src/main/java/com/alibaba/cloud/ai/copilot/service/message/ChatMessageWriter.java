@@ -0,0 +1,373 @@
+package com.alibaba.cloud.ai.copilot.service.message;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.alibaba.cloud.ai.copilot.mapper.ChatMessageMapper;
+import com.baomidou.mybatisplus.core.incrementer.IdentifierGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息写入器（write-behind）
+ * <p>
+ * 消息先进入有界队列，由后台刷新线程攒批后通过 JDBC 批量插入，
+ * Agent 执行线程不再为每条消息等待一次数据库往返。
+ * </p>
+ * <p>
+ * 尚未落库的消息按会话保存在内存中，供历史加载时合并，保证读到自己刚写入的消息。
+ * 队列满时短暂等待，仍然满则先把同一会话已排队的消息和本条一起同步写入（与刷新线程互斥），
+ * 保证同一会话的消息按写入顺序落库；关闭时会刷完队列，写库失败的消息落盘到本地文件，启动后及之后定期重放。
+ * 主键在入队时生成，重放时主键冲突说明该消息已经落库（例如批量写入已提交但返回超时），按成功处理。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatMessageWriter {
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final ChatProperties chatProperties;
+    private final ObjectMapper objectMapper;
+    private final IdentifierGenerator identifierGenerator;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 尚未落库的消息（key: conversationId）
+     */
+    private final Map<String, ConcurrentLinkedQueue<ChatMessageEntity>> pendingMessages = new ConcurrentHashMap<>();
+
+    /**
+     * 刷新线程写入一批消息与队列满时的同步写入互斥，避免同一会话的消息乱序提交
+     */
+    private final Object flushLock = new Object();
+
+    private BlockingQueue<ChatMessageEntity> queue;
+    private Thread flushThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        ChatProperties.Persistence persistence = chatProperties.getPersistence();
+        if (!persistence.isAsync()) {
+            log.info("聊天消息持久化使用同步模式");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(persistence.getQueueCapacity());
+        running = true;
+        flushThread = new Thread(this::flushLoop, "chat-message-writer");
+        flushThread.setDaemon(true);
+        flushThread.start();
+        log.info("聊天消息 write-behind 已启动: queueCapacity={}, batchSize={}, flushIntervalMs={}",
+                persistence.getQueueCapacity(), persistence.getBatchSize(), persistence.getFlushIntervalMs());
+    }
+
+    /**
+     * 写入单条消息
+     *
+     * @param entity 消息实体
+     */
+    public void write(ChatMessageEntity entity) {
+        writeAll(List.of(entity));
+    }
+
+    /**
+     * 按顺序写入多条消息
+     *
+     * @param entities 消息实体列表
+     */
+    public void writeAll(List<ChatMessageEntity> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        // 入队时即生成主键，未落库的消息也能按 (created_time, id) 排序和定位
+        for (ChatMessageEntity entity : entities) {
+            if (entity.getId() == null) {
+                entity.setId(identifierGenerator.nextId(entity).longValue());
+            }
+        }
+        if (!running) {
+            insertNow(entities);
+            return;
+        }
+        long offerTimeoutMs = chatProperties.getPersistence().getOfferTimeoutMs();
+        for (ChatMessageEntity entity : entities) {
+            // 在 Map 的锁内加入，避免与 removePending 移除空队列交错导致消息丢失
+            pendingMessages.compute(entity.getConversationId(), (id, pending) -> {
+                ConcurrentLinkedQueue<ChatMessageEntity> target = pending != null ? pending : new ConcurrentLinkedQueue<>();
+                target.add(entity);
+                return target;
+            });
+            if (!offer(entity, offerTimeoutMs)) {
+                // 队列已满：先写入同一会话已排队的消息再写本条，对上游形成背压
+                log.warn("聊天消息写入队列已满，退化为同步写入: conversationId={}", entity.getConversationId());
+                insertConversationNow(entity);
+            }
+        }
+    }
+
+    private boolean offer(ChatMessageEntity entity, long timeoutMs) {
+        try {
+            return queue.offer(entity, timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 同步写入：取出队列中同一会话的消息，与本条按顺序一起写入
+     */
+    private void insertConversationNow(ChatMessageEntity entity) {
+        synchronized (flushLock) {
+            List<ChatMessageEntity> ordered = new ArrayList<>();
+            queue.removeIf(queued -> {
+                if (queued.getConversationId().equals(entity.getConversationId())) {
+                    ordered.add(queued);
+                    return true;
+                }
+                return false;
+            });
+            ordered.add(entity);
+            insertNow(ordered);
+            removePending(ordered);
+        }
+    }
+
+    /**
+     * 获取会话中尚未落库的消息（按写入顺序）
+     *
+     * @param conversationId 会话ID
+     * @return 未落库消息列表
+     */
+    public List<ChatMessageEntity> getPendingMessages(String conversationId) {
+        ConcurrentLinkedQueue<ChatMessageEntity> pending = pendingMessages.get(conversationId);
+        return pending == null ? List.of() : new ArrayList<>(pending);
+    }
+
+    /**
+     * 启动后重放上次运行时写库失败而落盘的消息
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOnStartup() {
+        replaySpillFile();
+    }
+
+    /**
+     * 定期重放落盘的消息（数据库恢复后不必等到重启）
+     */
+    @Scheduled(fixedDelayString = "${app.chat.persistence.spill-replay-interval-ms:60000}",
+            initialDelayString = "${app.chat.persistence.spill-replay-interval-ms:60000}")
+    public void replaySpillFileScheduled() {
+        replaySpillFile();
+    }
+
+    /**
+     * 重放落盘的消息，文件只保留仍然写入失败的消息（与落盘互斥，避免重写时丢失新追加的内容）
+     */
+    synchronized void replaySpillFile() {
+        Path spillFile = Paths.get(chatProperties.getPersistence().getSpillFile());
+        if (!Files.exists(spillFile)) {
+            return;
+        }
+        try {
+            List<ChatMessageEntity> entities = new ArrayList<>();
+            for (String line : Files.readAllLines(spillFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    entities.add(objectMapper.readValue(line, ChatMessageEntity.class));
+                }
+            }
+            List<ChatMessageEntity> failed = insertWithFallback(entities);
+            if (failed.isEmpty()) {
+                Files.delete(spillFile);
+                log.info("已重放落盘的聊天消息: count={}", entities.size());
+                return;
+            }
+            Path rewritten = spillFile.resolveSibling(spillFile.getFileName() + ".tmp");
+            writeLines(rewritten, failed, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            Files.move(rewritten, spillFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.error("重放落盘消息仍有失败，文件只保留失败的消息待下次重放: replayed={}, failed={}, file={}",
+                    entities.size() - failed.size(), failed.size(), spillFile);
+        } catch (Exception e) {
+            log.error("重放落盘聊天消息失败: file={}", spillFile, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            flushThread.join(chatProperties.getPersistence().getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 刷新线程未能及时退出时，由关闭线程接管剩余消息
+        List<ChatMessageEntity> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("关闭时刷新剩余聊天消息: count={}", remaining.size());
+            spill(insertWithFallback(remaining));
+            removePending(remaining);
+        }
+        log.info("聊天消息 write-behind 已关闭");
+    }
+
+    private void flushLoop() {
+        ChatProperties.Persistence persistence = chatProperties.getPersistence();
+        int batchSize = persistence.getBatchSize();
+        long flushIntervalMs = persistence.getFlushIntervalMs();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessageEntity first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                // 从取出消息到写入完成持有 flushLock，同步写入不会插到已取出但未提交的批次之前
+                synchronized (flushLock) {
+                    // 攒批：直到达到批量大小或超过最大刷新延迟
+                    List<ChatMessageEntity> batch = new ArrayList<>(batchSize);
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + flushIntervalMs;
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remainingMs = deadline - System.currentTimeMillis();
+                        if (batch.size() >= batchSize || remainingMs <= 0 || !running) {
+                            break;
+                        }
+                        ChatMessageEntity next = queue.poll(remainingMs, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+
+                    spill(insertWithFallback(batch));
+                    removePending(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("聊天消息刷新线程异常", e);
+            }
+        }
+    }
+
+    /**
+     * 同步写入（同步模式、队列已满或关闭后使用）
+     */
+    private void insertNow(List<ChatMessageEntity> entities) {
+        List<ChatMessageEntity> failed = insertWithFallback(entities);
+        if (!failed.isEmpty()) {
+            spill(failed);
+        }
+    }
+
+    /**
+     * 批量写入，失败时逐条重试
+     *
+     * @return 最终仍写入失败的消息
+     */
+    private List<ChatMessageEntity> insertWithFallback(List<ChatMessageEntity> entities) {
+        if (entities.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        try {
+            chatMessageMapper.insertBatch(entities, chatProperties.getPersistence().getBatchSize());
+            meterRegistry.timer("copilot.chat.persistence.write", "mode", "batch")
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.debug("批量保存聊天消息: count={}", entities.size());
+            return List.of();
+        } catch (Exception e) {
+            log.warn("批量保存聊天消息失败，改为逐条写入: count={}, error={}", entities.size(), e.getMessage());
+        }
+
+        List<ChatMessageEntity> failed = new ArrayList<>();
+        for (ChatMessageEntity entity : entities) {
+            try {
+                chatMessageMapper.insert(entity);
+            } catch (DuplicateKeyException e) {
+                // 主键在入队时生成，冲突说明已经落库（之前的批量写入已提交）
+                log.debug("聊天消息已存在，跳过: conversationId={}, id={}", entity.getConversationId(), entity.getId());
+            } catch (Exception e) {
+                log.error("保存聊天消息失败: conversationId={}, messageId={}",
+                        entity.getConversationId(), entity.getMessageId(), e);
+                failed.add(entity);
+            }
+        }
+        meterRegistry.timer("copilot.chat.persistence.write", "mode", "fallback")
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return failed;
+    }
+
+    /**
+     * 将写库失败的消息追加到落盘文件
+     */
+    private synchronized void spill(List<ChatMessageEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        Path spillFile = Paths.get(chatProperties.getPersistence().getSpillFile());
+        try {
+            if (spillFile.getParent() != null) {
+                Files.createDirectories(spillFile.getParent());
+            }
+            writeLines(spillFile, entities, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.warn("聊天消息写库失败，已落盘待重放: count={}, file={}", entities.size(), spillFile);
+        } catch (IOException e) {
+            log.error("聊天消息落盘失败，消息丢失: count={}", entities.size(), e);
+        }
+    }
+
+    private void writeLines(Path file, List<ChatMessageEntity> entities, StandardOpenOption... options)
+            throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, options)) {
+            for (ChatMessageEntity entity : entities) {
+                writer.write(objectMapper.writeValueAsString(entity));
+                writer.newLine();
+            }
+        }
+    }
+
+    private void removePending(Collection<ChatMessageEntity> entities) {
+        for (ChatMessageEntity entity : entities) {
+            pendingMessages.computeIfPresent(entity.getConversationId(), (id, pending) -> {
+                pending.remove(entity);
+                return pending.isEmpty() ? null : pending;
+            });
+        }
+    }
+}
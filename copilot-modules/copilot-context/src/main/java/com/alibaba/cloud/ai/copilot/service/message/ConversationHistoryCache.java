@@ -0,0 +1,514 @@
+package com.alibaba.cloud.ai.copilot.service.message;
+
+import com.alibaba.cloud.ai.copilot.config.AppProperties;
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RList;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * 会话历史尾部缓存
+ * <p>
+ * 按会话缓存最近 N 条已转换好的 Spring AI Message，写入消息时直接追加，
+ * 每轮对话的首次模型调用不再查询数据库并重新解析 metadata。
+ * 尾部以最近一次的摘要（压缩消息）开头时，淘汰旧消息不会移除该摘要。
+ * </p>
+ * <p>
+ * 一级缓存为进程内 LRU，按会话ID分段加锁，每段独立按会话数量和消息估算大小淘汰；
+ * 可选的 Redis 二级缓存保存消息实体，并通过会话版本号识别其他节点的追加。
+ * 未启用二级缓存时，追加和失效通过 Redis 发布订阅通知其他节点移除本地尾部，
+ * 保证多节点部署时不会读到过期的尾部。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ConversationHistoryCache {
+
+    /**
+     * 单条消息的固定开销估算（对象头、引用等）
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 256;
+
+    /**
+     * 分段数量（2 的幂）
+     */
+    private static final int SEGMENTS = 16;
+
+    private final ChatProperties chatProperties;
+    private final AppProperties appProperties;
+    private final ChatMessageConverter chatMessageConverter;
+
+    private final Counter l1HitCounter;
+    private final Counter l2HitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    /**
+     * 当前节点ID（用于忽略自己发布的失效通知）
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 按会话ID分段的尾部缓存
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public ConversationHistoryCache(ChatProperties chatProperties, AppProperties appProperties,
+                                    ChatMessageConverter chatMessageConverter, MeterRegistry meterRegistry) {
+        this.chatProperties = chatProperties;
+        this.appProperties = appProperties;
+        this.chatMessageConverter = chatMessageConverter;
+        this.l1HitCounter = meterRegistry.counter("copilot.chat.history.cache", "result", "hit");
+        this.l2HitCounter = meterRegistry.counter("copilot.chat.history.cache", "result", "redis_hit");
+        this.missCounter = meterRegistry.counter("copilot.chat.history.cache", "result", "miss");
+        this.evictionCounter = meterRegistry.counter("copilot.chat.history.cache.evictions");
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        Gauge.builder("copilot.chat.history.cache.conversations", this, ConversationHistoryCache::size)
+                .register(meterRegistry);
+        Gauge.builder("copilot.chat.history.cache.weight", this, ConversationHistoryCache::weight)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 每个会话保留的尾部消息数
+     * 至少保留 messagesToKeep 的若干倍，避免截断工具调用链路；同时避免全量拉取
+     */
+    public int tailSize() {
+        int keep = appProperties.getConversation().getSummarization().getMessagesToKeep();
+        return Math.max(100, keep * 5);
+    }
+
+    /**
+     * 获取会话最近的历史消息，未命中时通过 loader 加载并写入缓存
+     *
+     * @param conversationId 会话ID
+     * @param loader         从数据库加载最近 {@link #tailSize()} 条消息实体（按时间正序）
+     * @return 按时间正序的历史消息（新列表，可修改）
+     */
+    public List<CachedMessage> getOrLoad(String conversationId, Supplier<List<ChatMessageEntity>> loader) {
+        ChatProperties.HistoryCache config = chatProperties.getHistoryCache();
+        if (!config.isEnabled()) {
+            missCounter.increment();
+            return convert(loader.get());
+        }
+
+        long version = config.isRedisEnabled() ? readVersion(conversationId) : 0;
+        Segment segment = segmentFor(conversationId);
+        Tail tail;
+        synchronized (segment) {
+            tail = segment.tails.get(conversationId);
+            if (tail != null && tail.loaded && tail.version == version) {
+                l1HitCounter.increment();
+                return tail.messages();
+            }
+            if (tail == null || tail.loaded) {
+                // 新建加载中的尾部：加载期间的追加先缓存在其中，加载完成后合并
+                segment.remove(conversationId);
+                tail = new Tail(tailSize());
+                segment.tails.put(conversationId, tail);
+            }
+        }
+
+        List<CachedMessage> loaded = null;
+        if (config.isRedisEnabled()) {
+            List<ChatMessageEntity> entities = readRedis(conversationId);
+            if (!entities.isEmpty()) {
+                l2HitCounter.increment();
+                loaded = convert(entities);
+            }
+        }
+        if (loaded == null) {
+            missCounter.increment();
+            List<ChatMessageEntity> entities = loader.get();
+            loaded = convert(entities);
+            if (config.isRedisEnabled()) {
+                writeRedis(conversationId, entities);
+            }
+        }
+
+        synchronized (segment) {
+            if (segment.tails.get(conversationId) != tail) {
+                // 加载期间被淘汰或失效，本次结果不再缓存
+                return loaded;
+            }
+            long before = tail.weight;
+            tail.fill(loaded, version);
+            segment.weight += tail.weight - before;
+            segment.evictIfNecessary(config);
+            return tail.messages();
+        }
+    }
+
+    /**
+     * 追加新写入的消息
+     * 只更新已缓存的会话，未缓存的会话在下次读取时从数据库加载
+     *
+     * @param conversationId 会话ID
+     * @param entities       新消息实体（按时间正序）
+     */
+    public void append(String conversationId, List<ChatMessageEntity> entities) {
+        ChatProperties.HistoryCache config = chatProperties.getHistoryCache();
+        if (!config.isEnabled() || entities.isEmpty()) {
+            return;
+        }
+        long version;
+        if (config.isRedisEnabled()) {
+            version = appendRedis(conversationId, entities);
+        } else {
+            version = 0;
+            publishInvalidation(conversationId);
+        }
+        Segment segment = segmentFor(conversationId);
+        synchronized (segment) {
+            if (!segment.tails.containsKey(conversationId)) {
+                return;
+            }
+        }
+        List<CachedMessage> messages = convert(entities);
+        synchronized (segment) {
+            Tail tail = segment.tails.get(conversationId);
+            if (tail == null) {
+                return;
+            }
+            long before = tail.weight;
+            tail.append(messages, version);
+            segment.weight += tail.weight - before;
+            segment.evictIfNecessary(config);
+        }
+    }
+
+    /**
+     * 失效会话缓存（历史被改写时调用，例如写入新的摘要）
+     *
+     * @param conversationId 会话ID
+     */
+    public void invalidate(String conversationId) {
+        invalidateLocal(conversationId);
+        if (!chatProperties.getHistoryCache().isRedisEnabled()) {
+            publishInvalidation(conversationId);
+            return;
+        }
+        try {
+            RedisUtils.deleteObject(tailKey(conversationId));
+            RedisUtils.deleteObject(summaryKey(conversationId));
+            RedisUtils.getClient().getAtomicLong(versionKey(conversationId)).incrementAndGet();
+        } catch (Exception e) {
+            log.warn("失效 Redis 会话历史缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 订阅其他节点的会话历史变更通知（未启用 Redis 二级缓存时用于失效本地尾部）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeInvalidation() {
+        try {
+            RedisUtils.subscribe(CacheConstants.CHAT_HISTORY_INVALIDATE_TOPIC, String.class, message -> {
+                int index = message.indexOf(':');
+                if (index < 0 || nodeId.equals(message.substring(0, index))) {
+                    return;
+                }
+                invalidateLocal(message.substring(index + 1));
+            });
+        } catch (Exception e) {
+            log.warn("订阅会话历史变更通知失败，仅本节点失效会话历史缓存: {}", e.getMessage());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.tails.size();
+            }
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    private Segment segmentFor(String conversationId) {
+        int hash = conversationId.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private void invalidateLocal(String conversationId) {
+        Segment segment = segmentFor(conversationId);
+        synchronized (segment) {
+            segment.remove(conversationId);
+        }
+    }
+
+    private void publishInvalidation(String conversationId) {
+        try {
+            RedisUtils.publish(CacheConstants.CHAT_HISTORY_INVALIDATE_TOPIC, nodeId + ":" + conversationId);
+        } catch (Exception e) {
+            log.warn("发布会话历史变更通知失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    private List<CachedMessage> convert(List<ChatMessageEntity> entities) {
+        List<CachedMessage> messages = new ArrayList<>(entities.size());
+        for (ChatMessageEntity entity : entities) {
+            Message message = chatMessageConverter.convert(entity);
+            if (message != null) {
+                messages.add(new CachedMessage(entity, message, estimateWeight(entity)));
+            }
+        }
+        return messages;
+    }
+
+    private static long estimateWeight(ChatMessageEntity entity) {
+        long chars = (entity.getContent() != null ? entity.getContent().length() : 0)
+                + (entity.getMetadata() != null ? entity.getMetadata().length() : 0);
+        return MESSAGE_OVERHEAD_BYTES + chars * 2;
+    }
+
+    // ==================== Redis 二级缓存 ====================
+
+    private long readVersion(String conversationId) {
+        try {
+            return RedisUtils.getClient().getAtomicLong(versionKey(conversationId)).get();
+        } catch (Exception e) {
+            log.warn("读取会话历史版本失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 读取 Redis 尾部：摘要单独保存，避免裁剪列表时被移除
+     */
+    private List<ChatMessageEntity> readRedis(String conversationId) {
+        try {
+            List<ChatMessageEntity> entities = RedisUtils.getClient()
+                    .<ChatMessageEntity>getList(tailKey(conversationId)).readAll();
+            if (entities.isEmpty()) {
+                return entities;
+            }
+            ChatMessageEntity summary = RedisUtils.getCacheObject(summaryKey(conversationId));
+            if (summary == null) {
+                return entities;
+            }
+            List<ChatMessageEntity> result = new ArrayList<>(entities.size() + 1);
+            result.add(summary);
+            result.addAll(entities);
+            return result;
+        } catch (Exception e) {
+            log.warn("读取 Redis 会话历史缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void writeRedis(String conversationId, List<ChatMessageEntity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        try {
+            int limit = tailSize();
+            Duration ttl = Duration.ofSeconds(chatProperties.getHistoryCache().getRedisTtlSeconds());
+            List<ChatMessageEntity> messages = entities;
+            if (Boolean.TRUE.equals(entities.get(0).getIsCompressed())) {
+                RedisUtils.setCacheObject(summaryKey(conversationId), entities.get(0), ttl);
+                messages = entities.subList(1, entities.size());
+            } else {
+                RedisUtils.deleteObject(summaryKey(conversationId));
+            }
+            RList<ChatMessageEntity> list = RedisUtils.getClient().getList(tailKey(conversationId));
+            list.delete();
+            list.addAll(messages.size() > limit ? messages.subList(messages.size() - limit, messages.size()) : messages);
+            list.expire(ttl);
+        } catch (Exception e) {
+            log.warn("写入 Redis 会话历史缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 追加到 Redis 尾部（仅当尾部已存在）并递增版本号
+     *
+     * @return 追加后的版本号，失败时返回 -1（本地尾部将在下次读取时重新加载）
+     */
+    private long appendRedis(String conversationId, List<ChatMessageEntity> entities) {
+        try {
+            ChatProperties.HistoryCache config = chatProperties.getHistoryCache();
+            RList<ChatMessageEntity> list = RedisUtils.getClient().getList(tailKey(conversationId));
+            if (list.isExists()) {
+                list.addAll(entities);
+                list.trim(-tailSize(), -1);
+                list.expire(Duration.ofSeconds(config.getRedisTtlSeconds()));
+            }
+            RAtomicLong version = RedisUtils.getClient().getAtomicLong(versionKey(conversationId));
+            long current = version.incrementAndGet();
+            version.expire(Duration.ofSeconds(config.getRedisTtlSeconds()));
+            return current;
+        } catch (Exception e) {
+            log.warn("追加 Redis 会话历史缓存失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return -1;
+        }
+    }
+
+    private static String tailKey(String conversationId) {
+        return CacheConstants.CHAT_HISTORY_TAIL_KEY + conversationId;
+    }
+
+    private static String summaryKey(String conversationId) {
+        return CacheConstants.CHAT_HISTORY_TAIL_KEY + "summary:" + conversationId;
+    }
+
+    private static String versionKey(String conversationId) {
+        return CacheConstants.CHAT_HISTORY_VERSION_KEY + conversationId;
+    }
+
+    /**
+     * 已转换的缓存消息
+     *
+     * @param entity  消息实体
+     * @param message 转换后的 Spring AI Message
+     * @param weight  估算占用的字节数
+     */
+    public record CachedMessage(ChatMessageEntity entity, Message message, long weight) {
+
+        public String messageId() {
+            return entity.getMessageId();
+        }
+
+        public boolean isSummary() {
+            return Boolean.TRUE.equals(entity.getIsCompressed());
+        }
+    }
+
+    /**
+     * 缓存分段：会话尾部按访问顺序排列（最久未使用的在前），仅在该分段的锁内访问
+     */
+    private class Segment {
+
+        private final LinkedHashMap<String, Tail> tails = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        void remove(String conversationId) {
+            Tail removed = tails.remove(conversationId);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+
+        /**
+         * 超出本分段的会话数量或估算大小上限（总上限按分段均分）时淘汰最久未使用的会话
+         */
+        void evictIfNecessary(ChatProperties.HistoryCache config) {
+            int maxConversations = Math.max(1, (config.getMaxConversations() + SEGMENTS - 1) / SEGMENTS);
+            long maxWeight = Math.max(1, config.getMaxWeightBytes() / SEGMENTS);
+            Iterator<Map.Entry<String, Tail>> iterator = tails.entrySet().iterator();
+            while (iterator.hasNext() && (tails.size() > maxConversations || weight > maxWeight)) {
+                Map.Entry<String, Tail> eldest = iterator.next();
+                iterator.remove();
+                weight -= eldest.getValue().weight;
+                evictionCounter.increment();
+                log.debug("淘汰会话历史缓存: conversationId={}", eldest.getKey());
+            }
+        }
+    }
+
+    /**
+     * 单个会话的尾部消息（仅在所属分段的锁内访问）
+     */
+    private static class Tail {
+
+        private final int limit;
+        private final ArrayDeque<CachedMessage> messages = new ArrayDeque<>();
+        private boolean loaded;
+        private long version;
+        private long weight;
+
+        Tail(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * 加载完成：以加载结果为基础，合并加载期间追加的消息
+         */
+        void fill(List<CachedMessage> loadedMessages, long loadedVersion) {
+            List<CachedMessage> appended = new ArrayList<>(messages);
+            messages.clear();
+            weight = 0;
+            Set<String> ids = new HashSet<>();
+            for (CachedMessage message : loadedMessages) {
+                ids.add(message.messageId());
+                add(message);
+            }
+            for (CachedMessage message : appended) {
+                if (!ids.contains(message.messageId())) {
+                    add(message);
+                }
+            }
+            // 加载期间有追加时保留追加后的版本号
+            version = appended.isEmpty() ? loadedVersion : Math.max(version, loadedVersion);
+            loaded = true;
+        }
+
+        void append(List<CachedMessage> appended, long appendedVersion) {
+            for (CachedMessage message : appended) {
+                add(message);
+            }
+            if (!loaded) {
+                version = appendedVersion;
+            } else if (appendedVersion == version + 1 || appendedVersion == 0) {
+                version = appendedVersion;
+            } else {
+                // 版本号不连续：其他节点也追加过消息，下次读取时重新加载
+                version = -1;
+            }
+        }
+
+        private void add(CachedMessage message) {
+            messages.addLast(message);
+            weight += message.weight();
+            while (messages.size() > limit) {
+                CachedMessage first = messages.removeFirst();
+                if (first.isSummary()) {
+                    // 保留开头的摘要，淘汰其后最旧的消息
+                    weight -= messages.removeFirst().weight();
+                    messages.addFirst(first);
+                } else {
+                    weight -= first.weight();
+                }
+            }
+        }
+
+        List<CachedMessage> messages() {
+            return new ArrayList<>(messages);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.alibaba.cloud.ai.copilot.service.message;
+
+import com.alibaba.cloud.ai.copilot.config.AppProperties;
+import com.alibaba.cloud.ai.copilot.core.utils.Threads;
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import com.alibaba.cloud.ai.copilot.mapper.ChatMessageMapper;
+import com.alibaba.cloud.ai.copilot.service.DynamicModelService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话摘要检查点
+ * <p>
+ * 会话历史超过 maxTokensBeforeSummary 时，把最近 messagesToKeep 条之前的消息压缩为一条摘要，
+ * 以 is_compressed = 1 的 system 消息保存到 chat_message 表，metadata 中记录摘要覆盖的最后一条消息的主键。
+ * 之后加载历史时只需读取“最近的摘要 + 摘要之后的消息”，不再每轮重复调用模型生成摘要。
+ * </p>
+ * <p>
+ * 摘要在后台线程生成，不阻塞当前轮次的首个 token：本轮仍使用完整历史，摘要落库后失效尾部缓存，
+ * 下一轮加载时生效。同一会话同时只有一个摘要任务，生成或保存失败后按指数退避，避免每轮重复调用模型。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConversationSummarizer {
+
+    /**
+     * metadata 中摘要覆盖的最后一条消息的主键
+     * 主键为雪花 ID，同一会话的消息按写入顺序递增；不使用 created_time，避免数据库秒级精度截断导致边界错位
+     */
+    public static final String META_SUMMARY_UNTIL_ID = "summaryUntilId";
+
+    private static final String SUMMARY_PREFIX = "以下是此前对话的摘要：\n";
+
+    private static final String SUMMARY_PROMPT = """
+            请将以下对话历史压缩为一段简洁的摘要，供后续对话继续使用。
+            需要保留：用户的目标和约束、已经做出的决定、已完成的操作（包括创建或修改过的文件）、尚未完成的任务。
+            不要编造对话中没有的信息，直接输出摘要内容。
+
+            """;
+
+    /**
+     * 失败后首次重试间隔
+     */
+    private static final long RETRY_INITIAL_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * 失败后最大重试间隔
+     */
+    private static final long RETRY_MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 摘要线程数和等待队列容量（队列满时丢弃，下一轮重新提交）
+     */
+    private static final int SUMMARY_THREADS = 2;
+    private static final int SUMMARY_QUEUE_SIZE = 64;
+
+    private final AppProperties appProperties;
+    private final DynamicModelService dynamicModelService;
+    private final ChatMessageMapper chatMessageMapper;
+    private final ConversationHistoryCache conversationHistoryCache;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 正在生成摘要的会话
+     */
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 失败退避状态（key: conversationId）
+     */
+    private final Map<String, Backoff> backoffs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(SUMMARY_THREADS, SUMMARY_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(SUMMARY_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "conversation-summarizer-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(executor);
+    }
+
+    /**
+     * 历史消息是否超过摘要阈值
+     */
+    public boolean shouldSummarize(List<ConversationHistoryCache.CachedMessage> history) {
+        AppProperties.Conversation.Summarization summarization = appProperties.getConversation().getSummarization();
+        if (history.size() <= summarization.getMessagesToKeep()) {
+            return false;
+        }
+        long chars = 0;
+        for (ConversationHistoryCache.CachedMessage cached : history) {
+            chars += textOf(cached.message()).length();
+        }
+        // 与 SummarizationHook 一致，按约 4 个字符 1 个 token 估算
+        return chars / 4 > summarization.getMaxTokensBeforeSummary();
+    }
+
+    /**
+     * 在后台压缩历史消息并保存摘要检查点
+     * 会话已有摘要任务在执行、处于失败退避期或线程池已满时直接忽略
+     *
+     * @param conversationId 会话ID
+     * @param modelConfigId  生成摘要使用的模型配置ID
+     * @param history        按时间正序的历史消息（可能以上一次的摘要开头）
+     */
+    public void summarizeAsync(String conversationId, String modelConfigId,
+                               List<ConversationHistoryCache.CachedMessage> history) {
+        Backoff backoff = backoffs.get(conversationId);
+        if (backoff != null && System.currentTimeMillis() < backoff.nextAttemptAt()) {
+            return;
+        }
+        if (!running.add(conversationId)) {
+            return;
+        }
+        List<ConversationHistoryCache.CachedMessage> snapshot = List.copyOf(history);
+        try {
+            executor.execute(() -> {
+                try {
+                    if (summarize(conversationId, modelConfigId, snapshot)) {
+                        backoffs.remove(conversationId);
+                    } else {
+                        backoffs.merge(conversationId, Backoff.first(), (previous, first) -> previous.next());
+                    }
+                } finally {
+                    running.remove(conversationId);
+                }
+            });
+        } catch (RuntimeException e) {
+            running.remove(conversationId);
+            log.warn("提交会话摘要任务失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    /**
+     * 压缩历史消息并保存摘要检查点
+     *
+     * @return true 表示摘要已保存或无需压缩，false 表示生成或保存失败（进入退避）
+     */
+    private boolean summarize(String conversationId, String modelConfigId,
+                              List<ConversationHistoryCache.CachedMessage> history) {
+        int split = splitIndex(history);
+        ChatMessageEntity boundary = null;
+        int originalCount = 0;
+        for (int i = 0; i < split; i++) {
+            ChatMessageEntity entity = history.get(i).entity();
+            if (history.get(i).isSummary()) {
+                originalCount += entity.getOriginalCount() != null ? entity.getOriginalCount() : 0;
+            } else {
+                boundary = entity;
+                originalCount++;
+            }
+        }
+        if (boundary == null || boundary.getId() == null) {
+            // 边界消息尚未落库（没有主键），等待下一轮
+            return true;
+        }
+
+        String summary;
+        try {
+            long start = System.currentTimeMillis();
+            ChatModel chatModel = dynamicModelService.getChatModelWithConfigId(modelConfigId);
+            summary = chatModel.call(new Prompt(new UserMessage(SUMMARY_PROMPT + transcript(history.subList(0, split)))))
+                    .getResult().getOutput().getText();
+            log.info("生成会话摘要: conversationId={}, originalCount={}, costMs={}",
+                    conversationId, originalCount, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("生成会话摘要失败: conversationId={}", conversationId, e);
+            return false;
+        }
+        if (summary == null || summary.isBlank()) {
+            return false;
+        }
+
+        ChatMessageEntity entity = new ChatMessageEntity();
+        LocalDateTime now = LocalDateTime.now();
+        entity.setConversationId(conversationId);
+        entity.setMessageId(UUID.randomUUID().toString());
+        entity.setRole("system");
+        entity.setContent(SUMMARY_PREFIX + summary.trim());
+        entity.setIsCompressed(true);
+        entity.setOriginalCount(originalCount);
+        entity.setCompressionTimestamp(now);
+        entity.setCreatedTime(now);
+        entity.setUpdatedTime(now);
+        try {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put(META_SUMMARY_UNTIL_ID, boundary.getId());
+            entity.setMetadata(objectMapper.writeValueAsString(metadata));
+            // 摘要直接同步写入：下一轮加载历史时必须能读到
+            chatMessageMapper.insert(entity);
+        } catch (Exception e) {
+            log.warn("保存会话摘要失败: conversationId={}", conversationId, e);
+            return false;
+        }
+        conversationHistoryCache.invalidate(conversationId);
+        return true;
+    }
+
+    /**
+     * 解析摘要覆盖的最后一条消息
+     *
+     * @return 解析失败时返回 null
+     */
+    public SummaryBoundary boundaryOf(ChatMessageEntity summary) {
+        if (summary == null || summary.getMetadata() == null) {
+            return null;
+        }
+        try {
+            Map<String, Object> metadata = objectMapper.readValue(summary.getMetadata(),
+                    new TypeReference<Map<String, Object>>() {});
+            Object id = metadata.get(META_SUMMARY_UNTIL_ID);
+            if (id == null) {
+                return null;
+            }
+            return new SummaryBoundary(Long.parseLong(id.toString()));
+        } catch (Exception e) {
+            log.warn("解析会话摘要边界失败: messageId={}", summary.getMessageId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 在工具调用链的边界上拆分：保留部分从一条用户消息开始（保留至少 messagesToKeep 条），
+     * assistant 的 tool_calls 与对应的 tool 消息总是落在同一侧
+     *
+     * @return 压缩部分的长度，没有合适的边界时返回 0
+     */
+    private int splitIndex(List<ConversationHistoryCache.CachedMessage> history) {
+        int split = Math.max(0, history.size() - appProperties.getConversation().getSummarization().getMessagesToKeep());
+        while (split > 0 && !isTurnStart(history.get(split))) {
+            split--;
+        }
+        return split;
+    }
+
+    private static boolean isTurnStart(ConversationHistoryCache.CachedMessage cached) {
+        return !cached.isSummary() && cached.message() instanceof UserMessage;
+    }
+
+    private String transcript(List<ConversationHistoryCache.CachedMessage> messages) {
+        StringBuilder builder = new StringBuilder();
+        for (ConversationHistoryCache.CachedMessage cached : messages) {
+            Message message = cached.message();
+            String role = cached.isSummary() ? "summary" : message.getMessageType().getValue();
+            builder.append(role).append(": ").append(textOf(message));
+            if (message instanceof AssistantMessage assistant && assistant.hasToolCalls()) {
+                for (AssistantMessage.ToolCall toolCall : assistant.getToolCalls()) {
+                    builder.append("\n[tool_call] ").append(toolCall.name()).append(' ').append(toolCall.arguments());
+                }
+            }
+            builder.append("\n\n");
+        }
+        return builder.toString();
+    }
+
+    private static String textOf(Message message) {
+        if (message instanceof ToolResponseMessage toolResponse) {
+            StringBuilder builder = new StringBuilder();
+            for (ToolResponseMessage.ToolResponse response : toolResponse.getResponses()) {
+                if (response.responseData() != null) {
+                    builder.append(response.responseData());
+                }
+            }
+            return builder.toString();
+        }
+        return message.getText() != null ? message.getText() : "";
+    }
+
+    /**
+     * 摘要覆盖的最后一条消息
+     *
+     * @param id 消息主键
+     */
+    public record SummaryBoundary(long id) {
+    }
+
+    /**
+     * 失败退避状态
+     *
+     * @param delayMs       当前退避间隔
+     * @param nextAttemptAt 下次允许尝试的时间
+     */
+    private record Backoff(long delayMs, long nextAttemptAt) {
+
+        static Backoff first() {
+            return new Backoff(RETRY_INITIAL_DELAY_MS, System.currentTimeMillis() + RETRY_INITIAL_DELAY_MS);
+        }
+
+        Backoff next() {
+            long delay = Math.min(delayMs * 2, RETRY_MAX_DELAY_MS);
+            return new Backoff(delay, System.currentTimeMillis() + delay);
+        }
+    }
+}
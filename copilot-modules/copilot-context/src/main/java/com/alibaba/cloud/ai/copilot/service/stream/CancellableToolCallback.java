@@ -0,0 +1,111 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 可取消的 ToolCallback 包装
+ * <p>
+ * 从 ToolContext 中找到本次执行的 RunnableConfig，关联到对应的聊天流：
+ * 流已取消时直接拒绝执行；执行期间登记当前线程，流被取消时中断该线程。
+ * </p>
+ * <p>
+ * 同时按工具名记录调用耗时（copilot.chat.tool，outcome 区分成功、失败和取消）。
+ * </p>
+ */
+public class CancellableToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final ChatStreamRegistry chatStreamRegistry;
+    private final Timer successTimer;
+    private final Timer errorTimer;
+    private final Timer cancelledTimer;
+
+    public CancellableToolCallback(ToolCallback delegate, ChatStreamRegistry chatStreamRegistry,
+                                   MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.chatStreamRegistry = chatStreamRegistry;
+        String toolName = delegate.getToolDefinition().name();
+        this.successTimer = toolTimer(meterRegistry, toolName, "success");
+        this.errorTimer = toolTimer(meterRegistry, toolName, "error");
+        this.cancelledTimer = toolTimer(meterRegistry, toolName, "cancelled");
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return timed(() -> delegate.call(toolInput), null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        ChatStreamHandle handle = findHandle(toolContext);
+        if (handle == null) {
+            return timed(() -> delegate.call(toolInput, toolContext), null);
+        }
+        if (!handle.enterTool()) {
+            throw new CancellationException("聊天流已取消，跳过工具调用: " + getToolDefinition().name());
+        }
+        try {
+            return timed(() -> delegate.call(toolInput, toolContext), handle);
+        } finally {
+            handle.exitTool();
+        }
+    }
+
+    /**
+     * 执行工具调用并记录耗时
+     */
+    private String timed(Supplier<String> call, ChatStreamHandle handle) {
+        long start = System.nanoTime();
+        Timer timer = errorTimer;
+        try {
+            String result = call.get();
+            timer = successTimer;
+            return result;
+        } finally {
+            if (timer != successTimer && handle != null && handle.isCancelled()) {
+                timer = cancelledTimer;
+            }
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Timer toolTimer(MeterRegistry meterRegistry, String toolName, String outcome) {
+        return Timer.builder("copilot.chat.tool")
+                .description("工具调用耗时")
+                .tag("tool", toolName)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private ChatStreamHandle findHandle(ToolContext toolContext) {
+        if (toolContext == null || toolContext.getContext() == null) {
+            return null;
+        }
+        for (Object value : toolContext.getContext().values()) {
+            if (value instanceof RunnableConfig config) {
+                return chatStreamRegistry.get(config.threadId().orElse(null));
+            }
+        }
+        return null;
+    }
+}
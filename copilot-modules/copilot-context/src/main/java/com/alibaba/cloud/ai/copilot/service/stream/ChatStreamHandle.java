@@ -0,0 +1,168 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import io.micrometer.core.instrument.Tags;
+import reactor.core.Disposable;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次聊天流的运行句柄
+ * <p>
+ * 持有 Agent 流的订阅和正在执行工具调用的线程，客户端断开时用于取消上游。
+ * </p>
+ * <p>
+ * 状态只会从 RUNNING 切换到 FINISHED 或 CANCELLED 之一，且只切换一次，
+ * 结束和取消并发发生时只有一方成功，计数和指标只记录一次。
+ * </p>
+ * <p>
+ * 工具线程的登记、移除和取消时的中断都在 toolLock 内执行：只有仍在执行工具的线程会被中断，
+ * 工具结束后在锁内清除中断标记，之后不会再有迟到的中断落到线程池的后续任务上。
+ * </p>
+ */
+public class ChatStreamHandle {
+
+    static final int RUNNING = 0;
+    static final int FINISHED = 1;
+    static final int CANCELLED = 2;
+
+    private final String streamId;
+    private final Tags modelTags;
+    private final long startNanos = System.nanoTime();
+    private volatile long firstTokenNanos;
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+    private final AtomicLong streamedTokens = new AtomicLong();
+    private final Object toolLock = new Object();
+    private final Set<Thread> toolThreads = new HashSet<>();
+    private volatile Disposable subscription;
+    private volatile long cancelledAt;
+
+    ChatStreamHandle(String streamId, Tags modelTags) {
+        this.streamId = streamId;
+        this.modelTags = modelTags;
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * 绑定 Agent 流的订阅；如果在绑定前已被取消，则立即释放
+     *
+     * @param subscription Agent 流的订阅
+     */
+    public void bind(Disposable subscription) {
+        this.subscription = subscription;
+        if (isCancelled()) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * 记录一次模型流式输出（近似为一个 token）
+     */
+    public void recordToken() {
+        if (streamedTokens.incrementAndGet() == 1) {
+            firstTokenNanos = System.nanoTime();
+        }
+    }
+
+    public long getStreamedTokens() {
+        return streamedTokens.get();
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    /**
+     * 模型标签（provider、model），用于 TTFT 和吞吐指标
+     */
+    Tags getModelTags() {
+        return modelTags;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * 首个 token 的时间，尚未输出时为 0
+     */
+    long getFirstTokenNanos() {
+        return firstTokenNanos;
+    }
+
+    long getCancelledAt() {
+        return cancelledAt;
+    }
+
+    /**
+     * 工具开始执行时登记当前线程
+     *
+     * @return 流已取消时返回 false，不登记
+     */
+    boolean enterTool() {
+        synchronized (toolLock) {
+            if (isCancelled()) {
+                return false;
+            }
+            toolThreads.add(Thread.currentThread());
+            return true;
+        }
+    }
+
+    /**
+     * 工具执行结束后移除当前线程，并清除取消时设置的中断标记，避免影响线程池中的后续任务
+     */
+    void exitTool() {
+        synchronized (toolLock) {
+            toolThreads.remove(Thread.currentThread());
+            if (isCancelled()) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * 标记为正常结束
+     *
+     * @return 是否由本次调用完成状态切换
+     */
+    boolean markFinished() {
+        return state.compareAndSet(RUNNING, FINISHED);
+    }
+
+    /**
+     * 取消：释放订阅并中断正在执行的工具调用
+     *
+     * @return 是否由本次调用完成取消（已结束或已取消时返回 false）
+     */
+    boolean cancel() {
+        // 先记录时间：状态切换后注册表即可能按取消时间清理句柄
+        long now = System.currentTimeMillis();
+        if (state.get() != RUNNING) {
+            return false;
+        }
+        cancelledAt = now;
+        if (!state.compareAndSet(RUNNING, CANCELLED)) {
+            return false;
+        }
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        synchronized (toolLock) {
+            for (Thread thread : toolThreads) {
+                thread.interrupt();
+            }
+        }
+        return true;
+    }
+}
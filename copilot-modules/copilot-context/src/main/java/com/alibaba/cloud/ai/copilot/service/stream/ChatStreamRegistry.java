@@ -0,0 +1,179 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天流注册表
+ * <p>
+ * 记录正在运行的 Agent 流。SSE 客户端断开（完成、超时、出错）时取消对应的上游流，
+ * 避免 Agent 继续执行工具循环并向模型拉取 token。
+ * </p>
+ * <p>
+ * 节省的 token 数按已正常完成的流的平均输出量估算：平均输出 - 取消时已输出，最小为 0。
+ * </p>
+ * <p>
+ * 流结束（完成或取消）时按模型记录首 token 延迟（TTFT）和输出速率，逐 token 路径上不做指标操作。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ChatStreamRegistry {
+
+    /**
+     * 已取消的流保留时间：Agent 线程可能仍在收尾，保留句柄使后续工具/模型调用能感知取消
+     */
+    private static final long CANCELLED_RETENTION_MS = 5 * 60 * 1000L;
+
+    private final Map<String, ChatStreamHandle> streams = new ConcurrentHashMap<>();
+    private final LongAdder completedStreams = new LongAdder();
+    private final LongAdder completedTokens = new LongAdder();
+    private final MeterRegistry meterRegistry;
+    private final Counter tokensSavedCounter;
+    private final AtomicInteger inflightStreams = new AtomicInteger();
+
+    public ChatStreamRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.tokensSavedCounter = Counter.builder("copilot.chat.stream.tokens.saved")
+                .description("客户端断开后取消上游流所节省的 token（估算）")
+                .register(meterRegistry);
+        Gauge.builder("copilot.chat.streams.inflight", inflightStreams, AtomicInteger::get)
+                .description("正在运行的聊天流数量")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 登记一个新的聊天流
+     *
+     * @param streamId  流ID（使用 RunnableConfig 的 threadId）
+     * @param modelTags 模型标签（provider、model）
+     * @return 流句柄
+     */
+    public ChatStreamHandle register(String streamId, Tags modelTags) {
+        ChatStreamHandle handle = new ChatStreamHandle(streamId, modelTags);
+        streams.put(streamId, handle);
+        inflightStreams.incrementAndGet();
+        return handle;
+    }
+
+    /**
+     * 定时清理超过保留时间的已取消句柄
+     */
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void purgeCancelled() {
+        long expireBefore = System.currentTimeMillis() - CANCELLED_RETENTION_MS;
+        streams.values().removeIf(h -> h.isCancelled() && h.getCancelledAt() < expireBefore);
+    }
+
+    /**
+     * 根据流ID获取句柄
+     *
+     * @param streamId 流ID
+     * @return 流句柄，不存在时返回 null
+     */
+    public ChatStreamHandle get(String streamId) {
+        return streamId == null ? null : streams.get(streamId);
+    }
+
+    /**
+     * 流正常结束（完成或出错）
+     *
+     * @param handle 流句柄
+     */
+    public void finish(ChatStreamHandle handle) {
+        if (handle.markFinished()) {
+            completedStreams.increment();
+            completedTokens.add(handle.getStreamedTokens());
+            inflightStreams.decrementAndGet();
+            recordStreamMetrics(handle, "finished");
+        }
+        streams.remove(handle.getStreamId(), handle);
+    }
+
+    /**
+     * 判断指定流是否已被取消
+     *
+     * @param streamId 流ID
+     * @return 是否已取消
+     */
+    public boolean isCancelled(String streamId) {
+        ChatStreamHandle handle = get(streamId);
+        return handle != null && handle.isCancelled();
+    }
+
+    /**
+     * 客户端已断开，取消上游流
+     *
+     * @param handle 流句柄
+     * @param reason 取消原因（completion / timeout / error）
+     */
+    public void cancel(ChatStreamHandle handle, String reason) {
+        if (!handle.cancel()) {
+            return;
+        }
+        inflightStreams.decrementAndGet();
+        recordStreamMetrics(handle, "cancelled");
+        long savedTokens = estimateSavedTokens(handle.getStreamedTokens());
+        Counter.builder("copilot.chat.stream.cancelled")
+                .description("客户端断开后被取消的聊天流数量")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        tokensSavedCounter.increment(savedTokens);
+        log.info("客户端已断开，取消 Agent 流: streamId={}, reason={}, streamedTokens={}, estimatedSavedTokens={}",
+                handle.getStreamId(), reason, handle.getStreamedTokens(), savedTokens);
+    }
+
+    /**
+     * 记录首 token 延迟、输出 token 数和输出速率（首 token 之后的 token/s）
+     */
+    private void recordStreamMetrics(ChatStreamHandle handle, String outcome) {
+        long firstTokenNanos = handle.getFirstTokenNanos();
+        if (firstTokenNanos == 0) {
+            return;
+        }
+        Tags tags = handle.getModelTags();
+        Timer.builder("copilot.chat.ttft")
+                .description("首 token 延迟")
+                .tags(tags)
+                .register(meterRegistry)
+                .record(firstTokenNanos - handle.getStartNanos(), TimeUnit.NANOSECONDS);
+        long tokens = handle.getStreamedTokens();
+        Counter.builder("copilot.chat.tokens")
+                .description("模型流式输出的 token 数（按输出片段近似）")
+                .tags(tags)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment(tokens);
+        long elapsedNanos = System.nanoTime() - firstTokenNanos;
+        if (tokens > 1 && elapsedNanos > 0) {
+            DistributionSummary.builder("copilot.chat.tokens.per.second")
+                    .description("单次聊天流的输出速率")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record((tokens - 1) * 1_000_000_000.0 / elapsedNanos);
+        }
+    }
+
+    private long estimateSavedTokens(long streamedTokens) {
+        long count = completedStreams.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long average = completedTokens.sum() / count;
+        return Math.max(0, average - streamedTokens);
+    }
+}
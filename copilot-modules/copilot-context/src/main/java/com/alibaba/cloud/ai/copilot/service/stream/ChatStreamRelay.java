@@ -0,0 +1,429 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
+import com.alibaba.cloud.ai.copilot.core.utils.Threads;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScoredSortedSet;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跨节点聊天流转发
+ * <p>
+ * 执行 Agent 的节点把会话流的每一帧按会话发布到 Redis topic；
+ * 任意节点收到重连或旁观请求时，订阅该会话的 topic，先从 Redis 重放缓冲区补齐历史帧，再推送实时帧。
+ * </p>
+ * <p>
+ * 背压：发布端按会话分片到有界队列，队列满时丢帧；订阅端每个客户端有独立的有界积压队列，
+ * 超出后断开该客户端，由其携带 Last-Event-ID 重连。丢失的帧都通过序号检测并从 Redis 重放缓冲区补齐。
+ * 发布端在该帧及之前所有帧写入重放缓冲区得到确认后才发布，补齐时不会读到尚未落地的缺口。
+ * </p>
+ * <p>
+ * 订阅和取消订阅（Redisson 阻塞调用）不在 ConcurrentHashMap.compute 内执行，只在单个会话的订阅对象上加锁。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatStreamRelay {
+
+    /**
+     * 每发布多少帧刷新一次运行标记的过期时间
+     */
+    private static final int ACTIVE_REFRESH_INTERVAL = 64;
+
+    private final ChatProperties chatProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, RemoteStream> remoteStreams = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor[] publishers;
+    private ThreadPoolExecutor deliveryExecutor;
+
+    @PostConstruct
+    public void init() {
+        ChatProperties.Relay relay = chatProperties.getRelay();
+        if (!relay.isEnabled()) {
+            return;
+        }
+        publishers = new ThreadPoolExecutor[relay.getPublishThreads()];
+        for (int i = 0; i < publishers.length; i++) {
+            publishers[i] = newExecutor("chat-stream-relay-publish-" + i, 1,
+                    new ArrayBlockingQueue<>(relay.getPublishQueueSize()));
+        }
+        deliveryExecutor = newExecutor("chat-stream-relay-delivery-", relay.getDeliveryThreads(),
+                new LinkedBlockingQueue<>());
+        log.info("跨节点聊天流转发已启用: nodeId={}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (publishers != null) {
+            for (ThreadPoolExecutor publisher : publishers) {
+                Threads.shutdownAndAwaitTermination(publisher);
+            }
+        }
+        if (deliveryExecutor != null) {
+            Threads.shutdownAndAwaitTermination(deliveryExecutor);
+        }
+    }
+
+    public boolean isEnabled() {
+        return chatProperties.getRelay().isEnabled();
+    }
+
+    // ==================== 发布端 ====================
+
+    /**
+     * 标记会话流正在本节点运行
+     */
+    public void markActive(String conversationId) {
+        RedisUtils.setCacheObject(activeKey(conversationId), nodeId, activeTtl());
+    }
+
+    /**
+     * 发布一帧（异步，同一会话内有序）
+     *
+     * @param mirrored 截至该帧的重放缓冲区写入确认，为 null 表示未写入缓冲区
+     */
+    public void publish(String conversationId, ChatStreamSession.Frame frame, CompletableFuture<Void> mirrored) {
+        ChatStreamRelayMessage message = new ChatStreamRelayMessage(frame.sequence(),
+                new String(frame.bytes(), StandardCharsets.UTF_8), frame.last());
+        submit(conversationId, () -> {
+            awaitMirrored(conversationId, frame.sequence(), mirrored);
+            RedisUtils.publish(topic(conversationId), message);
+            if (frame.last()) {
+                RedisUtils.deleteObject(activeKey(conversationId));
+            } else if (frame.sequence() % ACTIVE_REFRESH_INTERVAL == 0) {
+                RedisUtils.expire(activeKey(conversationId), activeTtl());
+            }
+        });
+    }
+
+    /**
+     * 等待重放缓冲区写入确认（在发布线程上等待，不阻塞 Agent 执行线程）
+     */
+    private void awaitMirrored(String conversationId, long sequence, CompletableFuture<Void> mirrored) {
+        if (mirrored == null || mirrored.isDone()) {
+            return;
+        }
+        try {
+            mirrored.get(chatProperties.getRelay().getMirrorAckTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待重放缓冲区写入确认超时，直接发布: conversationId={}, sequence={}", conversationId, sequence);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("等待重放缓冲区写入确认失败: conversationId={}", conversationId, e);
+        }
+    }
+
+    /**
+     * 流被取消：通知订阅端结束
+     */
+    public void publishCancelled(String conversationId) {
+        submit(conversationId, () -> {
+            RedisUtils.publish(topic(conversationId), new ChatStreamRelayMessage(0, null, true));
+            RedisUtils.deleteObject(activeKey(conversationId));
+        });
+    }
+
+    /**
+     * 流被同一会话的新流替换：通知订阅端结束，运行标记已属于新流，不删除
+     */
+    public void publishReplaced(String conversationId) {
+        submit(conversationId, () ->
+                RedisUtils.publish(topic(conversationId), new ChatStreamRelayMessage(0, null, true)));
+    }
+
+    /**
+     * 是否有其他节点的客户端正在收看该会话流
+     */
+    public boolean hasRemoteViewers(String conversationId) {
+        try {
+            return RedisUtils.countSubscribers(topic(conversationId)) > 0;
+        } catch (Exception e) {
+            log.warn("查询聊天流订阅者失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void submit(String conversationId, Runnable task) {
+        ThreadPoolExecutor publisher = publishers[Math.floorMod(conversationId.hashCode(), publishers.length)];
+        try {
+            publisher.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("转发聊天流失败: conversationId={}, error={}", conversationId, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 发布队列已满：丢弃该帧，订阅端检测到序号缺口后从 Redis 重放缓冲区补齐
+            log.debug("聊天流转发队列已满，丢弃帧: conversationId={}", conversationId);
+        }
+    }
+
+    // ==================== 订阅端 ====================
+
+    /**
+     * 挂接到其他节点正在运行的会话流
+     *
+     * @param conversationId 会话ID
+     * @param lastEventId    客户端最后收到的帧序号
+     * @param emitter        SSE 发射器
+     * @return 会话流不在任何节点运行时返回 false
+     */
+    public boolean attach(String conversationId, long lastEventId, SseEmitter emitter) {
+        if (!Boolean.TRUE.equals(RedisUtils.hasKey(activeKey(conversationId)))) {
+            return false;
+        }
+        Viewer viewer = new Viewer(conversationId, emitter, lastEventId);
+        // 先订阅再重放，重放期间到达的实时帧进入积压队列，按序号去重
+        join(conversationId, viewer);
+        emitter.onCompletion(() -> remove(viewer));
+        emitter.onTimeout(() -> remove(viewer));
+        emitter.onError(e -> remove(viewer));
+        viewer.schedule();
+        log.info("跨节点挂接聊天流: conversationId={}, lastEventId={}", conversationId, lastEventId);
+        return true;
+    }
+
+    /**
+     * 加入会话的订阅，第一个客户端负责订阅 topic（只锁该会话的订阅对象，不占用 Map 的锁）
+     */
+    private void join(String conversationId, Viewer viewer) {
+        while (true) {
+            RemoteStream stream = remoteStreams.computeIfAbsent(conversationId, id -> new RemoteStream());
+            synchronized (stream) {
+                if (stream.removed) {
+                    // 最后一个客户端刚刚离开，订阅对象已失效，重新创建
+                    continue;
+                }
+                stream.viewers.add(viewer);
+                if (!stream.subscribed) {
+                    stream.listenerId = RedisUtils.subscribe(topic(conversationId), ChatStreamRelayMessage.class,
+                            message -> {
+                                for (Viewer current : stream.viewers) {
+                                    current.offer(message);
+                                }
+                            });
+                    stream.subscribed = true;
+                }
+                return;
+            }
+        }
+    }
+
+    private void remove(Viewer viewer) {
+        viewer.closed = true;
+        RemoteStream stream = remoteStreams.get(viewer.conversationId);
+        if (stream == null) {
+            return;
+        }
+        synchronized (stream) {
+            if (!stream.viewers.remove(viewer) || !stream.viewers.isEmpty()) {
+                return;
+            }
+            stream.removed = true;
+            remoteStreams.remove(viewer.conversationId, stream);
+        }
+        if (stream.subscribed) {
+            RedisUtils.unsubscribe(topic(viewer.conversationId), stream.listenerId);
+        }
+    }
+
+    private static Collection<String> readReplay(String conversationId, long afterSequence, long beforeSequence) {
+        RScoredSortedSet<String> replay = RedisUtils.getClient()
+                .getScoredSortedSet(ChatStreamSessionManager.replayKey(conversationId));
+        return replay.valueRange(afterSequence, false, beforeSequence, false);
+    }
+
+    private ThreadPoolExecutor newExecutor(String namePrefix, int threads, BlockingQueue<Runnable> queue) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + (threads > 1 ? index.incrementAndGet() : ""));
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private Duration activeTtl() {
+        return Duration.ofSeconds(chatProperties.getResume().getRedisTtlSeconds());
+    }
+
+    private static String topic(String conversationId) {
+        return CacheConstants.CHAT_STREAM_TOPIC + conversationId;
+    }
+
+    private static String activeKey(String conversationId) {
+        return CacheConstants.CHAT_STREAM_ACTIVE_KEY + conversationId;
+    }
+
+    /**
+     * 本节点对某个会话 topic 的订阅
+     */
+    private static class RemoteStream {
+        private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+        private volatile int listenerId;
+        private volatile boolean subscribed;
+        private boolean removed;
+    }
+
+    /**
+     * 本节点上收看远端会话流的客户端
+     */
+    private class Viewer {
+
+        private final String conversationId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<ChatStreamRelayMessage> lag;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile boolean closed;
+        private boolean replayed;
+        private long lastSent;
+
+        Viewer(String conversationId, SseEmitter emitter, long lastEventId) {
+            this.conversationId = conversationId;
+            this.emitter = emitter;
+            this.lastSent = lastEventId;
+            this.lag = new ArrayBlockingQueue<>(chatProperties.getRelay().getLagBufferSize());
+        }
+
+        void offer(ChatStreamRelayMessage message) {
+            if (closed) {
+                return;
+            }
+            if (!lag.offer(message)) {
+                // 客户端积压过多：断开，由客户端携带 Last-Event-ID 重连
+                log.warn("聊天流客户端积压超限，断开连接: conversationId={}, lastSent={}", conversationId, lastSent);
+                close(new IOException("chat stream viewer lagging behind"));
+                return;
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                deliveryExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                if (!replayed) {
+                    replayed = true;
+                    if (sendReplay(Long.MAX_VALUE)) {
+                        return;
+                    }
+                    if (!Boolean.TRUE.equals(RedisUtils.hasKey(activeKey(conversationId)))) {
+                        // 重放期间流已被取消
+                        close(null);
+                        return;
+                    }
+                }
+                ChatStreamRelayMessage message;
+                while (!closed && (message = lag.poll()) != null) {
+                    if (message.getFrame() == null) {
+                        if (message.isLast()) {
+                            close(null);
+                        }
+                        continue;
+                    }
+                    if (message.getSequence() <= lastSent) {
+                        continue;
+                    }
+                    if (message.getSequence() > lastSent + 1 && sendReplay(message.getSequence())) {
+                        return;
+                    }
+                    send(message.getSequence(), message.getFrame());
+                    if (message.isLast()) {
+                        close(null);
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("推送聊天流失败: conversationId={}", conversationId, e);
+                close(e);
+            } finally {
+                scheduled.set(false);
+                if (!closed && !lag.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * 从 Redis 重放缓冲区补发 (lastSent, beforeSequence) 之间的帧
+         *
+         * @return 补发内容中包含完成帧时返回 true
+         */
+        private boolean sendReplay(long beforeSequence) throws IOException {
+            for (String frame : readReplay(conversationId, lastSent, beforeSequence)) {
+                long sequence = parseSequence(frame);
+                send(sequence, frame);
+                if (frame.contains("\nevent:complete\n")) {
+                    close(null);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void send(long sequence, String frame) throws IOException {
+            ChatStreamSession.send(emitter, frame.getBytes(StandardCharsets.UTF_8));
+            lastSent = Math.max(lastSent, sequence);
+        }
+
+        private void close(Exception error) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (error != null) {
+                    emitter.completeWithError(error);
+                } else {
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                log.debug("结束 SSE 连接失败: conversationId={}", conversationId, e);
+            }
+            remove(this);
+        }
+    }
+
+    /**
+     * 解析帧首行 "id:N" 中的序号
+     */
+    private static long parseSequence(String frame) {
+        int end = frame.indexOf('\n');
+        return Long.parseLong(frame.substring(3, end));
+    }
+}
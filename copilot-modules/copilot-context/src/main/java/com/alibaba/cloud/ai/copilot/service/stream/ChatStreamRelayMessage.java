@@ -0,0 +1,39 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 跨节点转发的聊天流帧
+ */
+@Data
+@NoArgsConstructor
+public class ChatStreamRelayMessage implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 帧序号（与 SSE id 一致）
+     */
+    private long sequence;
+
+    /**
+     * 含 id 行的完整 SSE 帧；流被取消时为空
+     */
+    private String frame;
+
+    /**
+     * 是否为最后一帧（完成或取消）
+     */
+    private boolean last;
+
+    public ChatStreamRelayMessage(long sequence, String frame, boolean last) {
+        this.sequence = sequence;
+        this.frame = frame;
+        this.last = last;
+    }
+}
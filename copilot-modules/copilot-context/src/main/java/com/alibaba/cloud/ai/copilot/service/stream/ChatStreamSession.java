@@ -0,0 +1,215 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+/**
+ * 会话级聊天流
+ * <p>
+ * 为经过 SseEventService 发送的每一帧分配递增的序号（SSE id 行），
+ * 并在有界环形缓冲区中保留最近的帧。客户端断线重连时按 Last-Event-ID 重放缺失的帧，
+ * 然后挂接到实时流上继续接收，无需重新调用模型。
+ * </p>
+ * <p>
+ * 所有方法都在会话锁内执行，保证重放与实时帧之间的顺序。
+ * </p>
+ */
+@Slf4j
+public class ChatStreamSession {
+
+    private final String conversationId;
+    private final ChatStreamHandle streamHandle;
+    private final int capacity;
+    private final Consumer<Frame> frameListener;
+
+    private final ArrayDeque<Frame> frames;
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private long sequence;
+    private boolean completed;
+    private long completedAt;
+    private ScheduledFuture<?> pendingCancel;
+
+    ChatStreamSession(String conversationId, ChatStreamHandle streamHandle, int capacity,
+                      Consumer<Frame> frameListener) {
+        this.conversationId = conversationId;
+        this.streamHandle = streamHandle;
+        this.capacity = capacity;
+        this.frameListener = frameListener;
+        this.frames = new ArrayDeque<>(Math.min(capacity, 256));
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    ChatStreamHandle getStreamHandle() {
+        return streamHandle;
+    }
+
+    Consumer<Frame> getFrameListener() {
+        return frameListener;
+    }
+
+    /**
+     * 发布一帧：分配序号、写入缓冲区并发送给所有已挂接的客户端
+     *
+     * @param body 不含 id 行的完整 SSE 帧
+     */
+    synchronized void publish(byte[] body) {
+        publish(body, false);
+    }
+
+    private void publish(byte[] body, boolean last) {
+        if (completed) {
+            return;
+        }
+        Frame frame = new Frame(++sequence, withId(sequence, body), last);
+        frames.addLast(frame);
+        while (frames.size() > capacity) {
+            frames.removeFirst();
+        }
+        if (frameListener != null) {
+            frameListener.accept(frame);
+        }
+        emitters.removeIf(emitter -> !trySend(emitter, frame.bytes()));
+    }
+
+    /**
+     * 发布完成帧并结束所有客户端连接
+     */
+    synchronized void complete(byte[] completeFrame) {
+        publish(completeFrame, true);
+        close();
+    }
+
+    /**
+     * 不发送完成帧直接结束会话流（被同一会话的新流替换），之后发布的帧都会被丢弃
+     *
+     * @return 结束前流是否仍在运行
+     */
+    synchronized boolean close() {
+        if (completed) {
+            return false;
+        }
+        completed = true;
+        completedAt = System.currentTimeMillis();
+        cancelPendingCancel();
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.complete();
+            } catch (Exception e) {
+                log.debug("结束 SSE 连接失败: conversationId={}", conversationId, e);
+            }
+        }
+        emitters.clear();
+        return true;
+    }
+
+    /**
+     * 挂接客户端：先重放 lastEventId 之后的帧，流已结束时直接关闭连接
+     *
+     * @param emitter     SSE 发射器
+     * @param lastEventId 客户端最后收到的帧序号
+     * @return 是否重放完整（缓冲区中仍保留 lastEventId 之后的所有帧）
+     */
+    synchronized boolean attach(SseEmitter emitter, long lastEventId) {
+        boolean complete = frames.isEmpty() || frames.peekFirst().sequence() <= lastEventId + 1;
+        for (Frame frame : frames) {
+            if (frame.sequence() > lastEventId && !trySend(emitter, frame.bytes())) {
+                return complete;
+            }
+        }
+        if (completed) {
+            emitter.complete();
+        } else {
+            emitters.add(emitter);
+            cancelPendingCancel();
+        }
+        return complete;
+    }
+
+    /**
+     * 移除客户端
+     *
+     * @return 移除后是否已没有客户端且流仍在运行
+     */
+    synchronized boolean detach(SseEmitter emitter) {
+        emitters.remove(emitter);
+        return emitters.isEmpty() && !completed;
+    }
+
+    synchronized boolean hasEmitters() {
+        return !emitters.isEmpty();
+    }
+
+    synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    synchronized long getCompletedAt() {
+        return completedAt;
+    }
+
+    synchronized void setPendingCancel(ScheduledFuture<?> pendingCancel) {
+        cancelPendingCancel();
+        this.pendingCancel = pendingCancel;
+    }
+
+    private void cancelPendingCancel() {
+        if (pendingCancel != null) {
+            pendingCancel.cancel(false);
+            pendingCancel = null;
+        }
+    }
+
+    private boolean trySend(SseEmitter emitter, byte[] bytes) {
+        try {
+            send(emitter, bytes);
+            return true;
+        } catch (Exception e) {
+            log.debug("发送 SSE 帧失败，移除客户端: conversationId={}", conversationId, e);
+            try {
+                emitter.completeWithError(e);
+            } catch (Exception ex) {
+                log.debug("Error completing emitter with error", ex);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 直接写入已编码的完整 SSE 帧
+     */
+    static void send(SseEmitter emitter, byte[] bytes) throws IOException {
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.APPLICATION_OCTET_STREAM)));
+    }
+
+    private static byte[] withId(long sequence, byte[] body) {
+        byte[] idLine = ("id:" + sequence + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[idLine.length + body.length];
+        System.arraycopy(idLine, 0, bytes, 0, idLine.length);
+        System.arraycopy(body, 0, bytes, idLine.length, body.length);
+        return bytes;
+    }
+
+    /**
+     * 带序号的 SSE 帧
+     *
+     * @param sequence 帧序号（即 SSE id）
+     * @param bytes    含 id 行的完整帧
+     * @param last     是否为完成帧
+     */
+    public record Frame(long sequence, byte[] bytes, boolean last) {
+    }
+}
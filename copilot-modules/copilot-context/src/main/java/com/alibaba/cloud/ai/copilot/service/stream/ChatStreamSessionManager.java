@@ -0,0 +1,344 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.core.constant.CacheConstants;
+import com.alibaba.cloud.ai.copilot.redis.utils.RedisUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScoredSortedSet;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 聊天流会话管理器
+ * <p>
+ * 维护 conversationId → {@link ChatStreamSession} 的映射。发起请求的 SseEmitter 同时是会话流的生产端句柄，
+ * Agent 始终通过它发布帧，该映射只在流结束或取消时移除；客户端断开只解除其收看身份，不影响生产端继续写入缓冲区。
+ * 所有客户端断开后不会立即取消上游流，而是等待一段时间供客户端重连；
+ * 流结束后重放缓冲区再保留一段时间，供晚到的重连读取结尾部分。
+ * </p>
+ * <p>
+ * 同一会话同时只保留一个运行中的流：新流打开时取消旧流并关闭其客户端，避免两个流的帧序号在重放缓冲区和转发 topic 中冲突。
+ * </p>
+ * <p>
+ * 启用跨节点转发后，会话流的每一帧同时发布到 Redis，重连请求落到其他节点时由 {@link ChatStreamRelay} 提供服务。
+ * 每一帧在写入 Redis 重放缓冲区得到确认之后才会发布，订阅端收到某一帧时，之前的帧一定已经可以从缓冲区补齐。
+ * </p>
+ */
+@Slf4j
+@Component
+public class ChatStreamSessionManager {
+
+    private final ChatProperties chatProperties;
+    private final ChatStreamRegistry chatStreamRegistry;
+    private final ChatStreamRelay chatStreamRelay;
+    private final ScheduledExecutorService streamingScheduler;
+
+    private final Map<String, ChatStreamSession> sessions = new ConcurrentHashMap<>();
+    /**
+     * 生产端：发起请求的发射器 → 会话（Agent 通过它发布帧）
+     */
+    private final Map<SseEmitter, ChatStreamSession> producers = new ConcurrentHashMap<>();
+    /**
+     * 重连的客户端发射器 → 会话
+     */
+    private final Map<SseEmitter, ChatStreamSession> viewers = new ConcurrentHashMap<>();
+
+    public ChatStreamSessionManager(ChatProperties chatProperties, ChatStreamRegistry chatStreamRegistry,
+                                    ChatStreamRelay chatStreamRelay,
+                                    @Qualifier("streamingScheduler") ScheduledExecutorService streamingScheduler) {
+        this.chatProperties = chatProperties;
+        this.chatStreamRegistry = chatStreamRegistry;
+        this.chatStreamRelay = chatStreamRelay;
+        this.streamingScheduler = streamingScheduler;
+    }
+
+    /**
+     * 为一次 Agent 执行打开会话流，并挂接发起请求的客户端
+     *
+     * @param conversationId 会话ID
+     * @param emitter        发起请求的 SSE 发射器
+     * @param streamHandle   Agent 流句柄（所有客户端断开且超过等待时间后取消）
+     * @return 会话流
+     */
+    public ChatStreamSession open(String conversationId, SseEmitter emitter, ChatStreamHandle streamHandle) {
+        ChatProperties.Resume resume = chatProperties.getResume();
+        ChatStreamSession session = new ChatStreamSession(conversationId, streamHandle,
+                resume.getReplayBufferSize(), frameListener(conversationId));
+        ChatStreamSession previous = sessions.put(conversationId, session);
+        if (previous != null) {
+            replace(previous);
+        }
+        if (redisReplayEnabled()) {
+            clearRedis(conversationId);
+        }
+        if (chatStreamRelay.isEnabled()) {
+            chatStreamRelay.markActive(conversationId);
+        }
+        session.attach(emitter, Long.MAX_VALUE);
+        producers.put(emitter, session);
+        return session;
+    }
+
+    /**
+     * 新流替换同一会话的旧流：取消仍在运行的旧流并关闭其客户端，等待旧流的缓冲区写入完成后再清理
+     */
+    private void replace(ChatStreamSession previous) {
+        if (previous.close()) {
+            log.warn("会话已有运行中的流，取消旧流: conversationId={}", previous.getConversationId());
+            chatStreamRegistry.cancel(previous.getStreamHandle(), "replaced");
+            if (chatStreamRelay.isEnabled()) {
+                chatStreamRelay.publishReplaced(previous.getConversationId());
+            }
+        }
+        unbind(previous);
+        if (previous.getFrameListener() instanceof FrameMirror mirror) {
+            mirror.awaitMirrored(chatProperties.getRelay().getMirrorAckTimeoutMs());
+        }
+    }
+
+    private void unbind(ChatStreamSession session) {
+        producers.values().removeIf(s -> s == session);
+        viewers.values().removeIf(s -> s == session);
+    }
+
+    /**
+     * 通过会话流发布一帧
+     *
+     * @return 发射器未关联会话流时返回 false，由调用方直接发送
+     */
+    public boolean publish(SseEmitter emitter, byte[] frame) {
+        ChatStreamSession session = producers.get(emitter);
+        if (session == null) {
+            return false;
+        }
+        session.publish(frame);
+        return true;
+    }
+
+    /**
+     * 结束会话流
+     *
+     * @return 发射器未关联会话流时返回 false，由调用方直接结束
+     */
+    public boolean complete(SseEmitter emitter, byte[] completeFrame) {
+        ChatStreamSession session = producers.get(emitter);
+        if (session == null) {
+            return false;
+        }
+        session.complete(completeFrame);
+        unbind(session);
+        streamingScheduler.schedule(() -> sessions.remove(session.getConversationId(), session),
+                chatProperties.getResume().getRetentionMs(), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 客户端断开（完成、超时、出错）
+     * 只解除客户端的收看身份，生产端映射保留到流结束或取消；没有客户端时等待重连，超时后取消上游流
+     *
+     * @param emitter SSE 发射器
+     * @param reason  断开原因
+     */
+    public void detach(SseEmitter emitter, String reason) {
+        ChatStreamSession session = viewers.remove(emitter);
+        if (session == null) {
+            session = producers.get(emitter);
+        }
+        if (session == null || !session.detach(emitter)) {
+            return;
+        }
+        long graceMs = chatProperties.getResume().getGraceMs();
+        if (graceMs <= 0 && !hasRemoteViewers(session)) {
+            cancel(session, reason);
+            return;
+        }
+        log.debug("客户端已全部断开，等待重连: conversationId={}, graceMs={}", session.getConversationId(), graceMs);
+        scheduleCancel(session, reason, Math.max(graceMs, 1000));
+    }
+
+    private void scheduleCancel(ChatStreamSession session, String reason, long delayMs) {
+        session.setPendingCancel(streamingScheduler.schedule(() -> {
+            if (session.hasEmitters() || session.isCompleted()) {
+                return;
+            }
+            if (hasRemoteViewers(session)) {
+                // 其他节点仍有客户端在收看，继续运行
+                scheduleCancel(session, reason, delayMs);
+                return;
+            }
+            cancel(session, reason);
+        }, delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    private void cancel(ChatStreamSession session, String reason) {
+        chatStreamRegistry.cancel(session.getStreamHandle(), reason);
+        sessions.remove(session.getConversationId(), session);
+        unbind(session);
+        if (chatStreamRelay.isEnabled()) {
+            chatStreamRelay.publishCancelled(session.getConversationId());
+        }
+    }
+
+    private boolean hasRemoteViewers(ChatStreamSession session) {
+        return chatStreamRelay.isEnabled() && chatStreamRelay.hasRemoteViewers(session.getConversationId());
+    }
+
+    /**
+     * 断线重连：重放 lastEventId 之后的帧并挂接到实时流
+     *
+     * @param conversationId 会话ID
+     * @param lastEventId    客户端最后收到的帧序号
+     * @param emitter        新的 SSE 发射器
+     */
+    public void resume(String conversationId, long lastEventId, SseEmitter emitter) {
+        ChatStreamSession session = sessions.get(conversationId);
+        if (session != null) {
+            viewers.put(emitter, session);
+            emitter.onCompletion(() -> detach(emitter, "completion"));
+            emitter.onTimeout(() -> detach(emitter, "timeout"));
+            emitter.onError(e -> detach(emitter, "error"));
+            if (!session.attach(emitter, lastEventId)) {
+                log.warn("重放缓冲区已覆盖部分帧: conversationId={}, lastEventId={}", conversationId, lastEventId);
+            }
+            log.info("客户端重连: conversationId={}, lastEventId={}", conversationId, lastEventId);
+            return;
+        }
+
+        // 本地没有会话流：流在其他节点运行时挂接远端流，否则从 Redis 重放
+        if (chatStreamRelay.isEnabled() && chatStreamRelay.attach(conversationId, lastEventId, emitter)) {
+            return;
+        }
+        if (redisReplayEnabled()) {
+            replayFromRedis(conversationId, lastEventId, emitter);
+        }
+        emitter.complete();
+    }
+
+    private Consumer<ChatStreamSession.Frame> frameListener(String conversationId) {
+        boolean mirror = redisReplayEnabled();
+        boolean relay = chatStreamRelay.isEnabled();
+        if (!mirror && !relay) {
+            return null;
+        }
+        return new FrameMirror(conversationId, mirror, relay);
+    }
+
+    /**
+     * 会话流的帧监听器：写入 Redis 重放缓冲区并转发到其他节点
+     */
+    private class FrameMirror implements Consumer<ChatStreamSession.Frame> {
+
+        private final String conversationId;
+        private final boolean mirror;
+        private final boolean relay;
+        /**
+         * 截至最新一帧的所有缓冲区写入都已确认（帧监听器在会话内按序调用）
+         */
+        private final AtomicReference<CompletableFuture<Void>> mirrored =
+                new AtomicReference<>(CompletableFuture.completedFuture(null));
+
+        FrameMirror(String conversationId, boolean mirror, boolean relay) {
+            this.conversationId = conversationId;
+            this.mirror = mirror;
+            this.relay = relay;
+        }
+
+        @Override
+        public void accept(ChatStreamSession.Frame frame) {
+            CompletableFuture<Void> barrier = null;
+            if (mirror) {
+                CompletableFuture<Void> written = mirrorToRedis(conversationId, frame);
+                barrier = mirrored.updateAndGet(previous -> CompletableFuture.allOf(previous, written));
+            }
+            if (relay) {
+                chatStreamRelay.publish(conversationId, frame, barrier);
+            }
+        }
+
+        /**
+         * 等待已发出的缓冲区写入完成，避免旧流的帧在清理之后才写入
+         */
+        void awaitMirrored(long timeoutMs) {
+            try {
+                mirrored.get().get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("等待旧流的重放缓冲区写入超时: conversationId={}", conversationId);
+            }
+        }
+    }
+
+    /**
+     * 跨节点转发依赖 Redis 重放缓冲区补齐缺失的帧，启用转发时总是写入
+     */
+    private boolean redisReplayEnabled() {
+        return chatProperties.getResume().isRedisEnabled() || chatStreamRelay.isEnabled();
+    }
+
+    /**
+     * 异步写入 Redis 重放缓冲区
+     *
+     * @return 写入确认（失败时也正常完成，只记录日志，不阻塞转发）
+     */
+    private CompletableFuture<Void> mirrorToRedis(String conversationId, ChatStreamSession.Frame frame) {
+        try {
+            ChatProperties.Resume resume = chatProperties.getResume();
+            RScoredSortedSet<String> replay = RedisUtils.getClient().getScoredSortedSet(replayKey(conversationId));
+            CompletableFuture<Void> written = replay
+                    .addAsync(frame.sequence(), new String(frame.bytes(), StandardCharsets.UTF_8))
+                    .toCompletableFuture()
+                    .handle((added, error) -> {
+                        if (error != null) {
+                            log.warn("写入 Redis 重放缓冲区失败: conversationId={}, sequence={}, error={}",
+                                    conversationId, frame.sequence(), error.getMessage());
+                        }
+                        return null;
+                    });
+            replay.removeRangeByRankAsync(0, -resume.getReplayBufferSize() - 1);
+            replay.expireAsync(Duration.ofSeconds(resume.getRedisTtlSeconds()));
+            return written;
+        } catch (Exception e) {
+            log.warn("写入 Redis 重放缓冲区失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void clearRedis(String conversationId) {
+        try {
+            RedisUtils.getClient().getScoredSortedSet(replayKey(conversationId)).delete();
+        } catch (Exception e) {
+            log.warn("清理 Redis 重放缓冲区失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    private void replayFromRedis(String conversationId, long lastEventId, SseEmitter emitter) {
+        try {
+            RScoredSortedSet<String> replay = RedisUtils.getClient().getScoredSortedSet(replayKey(conversationId));
+            Collection<String> frames = replay.valueRange(lastEventId, false, Double.POSITIVE_INFINITY, true);
+            for (String frame : frames) {
+                ChatStreamSession.send(emitter, frame.getBytes(StandardCharsets.UTF_8));
+            }
+            log.info("从 Redis 重放聊天流: conversationId={}, lastEventId={}, frames={}",
+                    conversationId, lastEventId, frames.size());
+        } catch (Exception e) {
+            log.warn("从 Redis 重放聊天流失败: conversationId={}", conversationId, e);
+        }
+    }
+
+    static String replayKey(String conversationId) {
+        return CacheConstants.CHAT_STREAM_REPLAY_KEY + conversationId;
+    }
+}
@@ -0,0 +1,176 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.service.SseEventService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文件内容伪流式输出
+ * <p>
+ * 把工具写入的文件内容按块发送 edit-progress 事件，每帧只包含新增的片段和它在文件中的偏移量，
+ * 前端按偏移量拼接。分块由共享的 streamingScheduler 定时驱动，不占用线程等待。
+ * </p>
+ * <p>
+ * 同时进行的伪流式输出数量有上限，超过后直接一次性发送完整内容。
+ * 聊天流结束前需调用 {@link #complete} 发送剩余内容，取消时调用 {@link #discard}。
+ * </p>
+ */
+@Slf4j
+@Component
+public class FileContentStreamer {
+
+    private final SseEventService sseEventService;
+    private final ChatProperties chatProperties;
+    private final ScheduledExecutorService streamingScheduler;
+
+    private final Map<SseEmitter, List<FileStream>> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    public FileContentStreamer(SseEventService sseEventService, ChatProperties chatProperties,
+                               @Qualifier("streamingScheduler") ScheduledExecutorService streamingScheduler) {
+        this.sseEventService = sseEventService;
+        this.chatProperties = chatProperties;
+        this.streamingScheduler = streamingScheduler;
+    }
+
+    /**
+     * 分块发送文件内容
+     *
+     * @param emitter  SSE 发射器
+     * @param filePath 规范化后的文件路径
+     * @param content  文件内容
+     */
+    public void stream(SseEmitter emitter, String filePath, String content) {
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        ChatProperties.Streaming config = chatProperties.getStreaming();
+        int chunkSize = Math.max(1, config.getFileChunkSize());
+        long intervalMs = config.getFileChunkIntervalMs();
+        if (content.length() <= chunkSize || intervalMs <= 0) {
+            sseEventService.sendFileEditProgress(emitter, filePath, content, 0);
+            return;
+        }
+        if (activeStreams.incrementAndGet() > config.getMaxConcurrentFileStreams()) {
+            activeStreams.decrementAndGet();
+            log.debug("伪流式输出数量已达上限，直接发送完整内容: filePath={}", filePath);
+            sseEventService.sendFileEditProgress(emitter, filePath, content, 0);
+            return;
+        }
+
+        FileStream stream = new FileStream(emitter, filePath, content, chunkSize);
+        streams.computeIfAbsent(emitter, key -> new CopyOnWriteArrayList<>()).add(stream);
+        log.debug("开始伪流式输出: filePath={}, length={}", filePath, content.length());
+        synchronized (stream) {
+            // 在锁内保存 future，首个分块执行完毕前不会读到空的 future
+            stream.future = streamingScheduler.scheduleWithFixedDelay(() -> sendNextChunk(stream),
+                    0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 聊天流结束：立即发送所有未发送完的内容
+     */
+    public void complete(SseEmitter emitter) {
+        List<FileStream> pending = streams.remove(emitter);
+        if (pending == null) {
+            return;
+        }
+        for (FileStream stream : pending) {
+            synchronized (stream) {
+                if (!stream.done && stream.offset < stream.content.length()) {
+                    sseEventService.sendFileEditProgress(emitter, stream.filePath,
+                            stream.content.substring(stream.offset), stream.offset);
+                    stream.offset = stream.content.length();
+                }
+                finish(stream);
+            }
+        }
+    }
+
+    /**
+     * 聊天流被取消：停止发送
+     */
+    public void discard(SseEmitter emitter) {
+        List<FileStream> pending = streams.remove(emitter);
+        if (pending == null) {
+            return;
+        }
+        for (FileStream stream : pending) {
+            synchronized (stream) {
+                finish(stream);
+            }
+        }
+    }
+
+    private void sendNextChunk(FileStream stream) {
+        synchronized (stream) {
+            if (stream.done) {
+                return;
+            }
+            int length = stream.content.length();
+            int end = Math.min(stream.offset + stream.chunkSize, length);
+            // 不拆开代理对，避免前端拼接出乱码
+            if (end < length && end - stream.offset > 1 && Character.isHighSurrogate(stream.content.charAt(end - 1))) {
+                end--;
+            }
+            sseEventService.sendFileEditProgress(stream.emitter, stream.filePath,
+                    stream.content.substring(stream.offset, end), stream.offset);
+            stream.offset = end;
+            if (end >= length) {
+                log.debug("完成伪流式输出: filePath={}", stream.filePath);
+                finish(stream);
+                List<FileStream> siblings = streams.get(stream.emitter);
+                if (siblings != null) {
+                    siblings.remove(stream);
+                }
+            }
+        }
+    }
+
+    /**
+     * 结束单个输出（调用方持有 stream 锁）
+     */
+    private void finish(FileStream stream) {
+        if (stream.done) {
+            return;
+        }
+        stream.done = true;
+        if (stream.future != null) {
+            stream.future.cancel(false);
+        }
+        activeStreams.decrementAndGet();
+    }
+
+    /**
+     * 单个文件的输出进度
+     */
+    private static class FileStream {
+        private final SseEmitter emitter;
+        private final String filePath;
+        private final String content;
+        private final int chunkSize;
+        private int offset;
+        private boolean done;
+        private ScheduledFuture<?> future;
+
+        FileStream(SseEmitter emitter, String filePath, String content, int chunkSize) {
+            this.emitter = emitter;
+            this.filePath = filePath;
+            this.content = content;
+            this.chunkSize = chunkSize;
+        }
+    }
+}
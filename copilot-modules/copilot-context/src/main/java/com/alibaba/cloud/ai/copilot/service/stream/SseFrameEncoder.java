@@ -0,0 +1,230 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSE 帧编码器
+ * <p>
+ * 直接把完整的 SSE 帧（event/data 行及结尾空行）编码为 UTF-8 字节，
+ * 使用流式 JsonGenerator 写入线程内复用的缓冲区，不再构建 Map 树再整体序列化。
+ * 字段名和固定前缀只编码一次；messageId / operationId 使用单调递增的短ID代替随机 UUID。
+ * </p>
+ * <p>
+ * 输出格式与 {@code SseEmitter.event().name(..).data(..)} 完全一致：
+ * <pre>
+ * event:thinking
+ * data:{...}
+ *
+ * </pre>
+ * </p>
+ */
+@Component
+public class SseFrameEncoder {
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FRAME_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COMPLETE_FRAME = "event:complete\ndata:[DONE]\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] THINKING_PREFIX = eventPrefix("thinking");
+    private static final byte[] EDIT_PROGRESS_PREFIX = eventPrefix("edit-progress");
+    private static final byte[] CONVERSATION_ID_PREFIX = eventPrefix("conversation-id");
+
+    private static final SerializedString FIELD_CHOICES = new SerializedString("choices");
+    private static final SerializedString FIELD_DELTA = new SerializedString("delta");
+    private static final SerializedString FIELD_CONTENT = new SerializedString("content");
+    private static final SerializedString FIELD_FINISH_REASON = new SerializedString("finish_reason");
+    private static final SerializedString FIELD_EVENT = new SerializedString("event");
+    private static final SerializedString FIELD_MESSAGE_ID = new SerializedString("messageId");
+    private static final SerializedString FIELD_OPERATION_ID = new SerializedString("operationId");
+    private static final SerializedString FIELD_DATA = new SerializedString("data");
+    private static final SerializedString FIELD_TYPE = new SerializedString("type");
+    private static final SerializedString FIELD_FILE_PATH = new SerializedString("filePath");
+    private static final SerializedString FIELD_OFFSET = new SerializedString("offset");
+    private static final SerializedString FIELD_CONVERSATION_ID = new SerializedString("conversationId");
+    private static final SerializedString VALUE_THINKING = new SerializedString("thinking");
+    private static final SerializedString VALUE_EDIT_PROGRESS = new SerializedString("edit-progress");
+
+    /**
+     * 线程内复用缓冲区超过该大小后不再保留，避免大文件内容长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
+    private final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(1024));
+
+    /**
+     * 操作ID前缀（每个实例随机生成一次）和递增序号
+     */
+    private final String idPrefix = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36) + "-";
+    private final AtomicLong idSequence = new AtomicLong();
+
+    /**
+     * OpenAI 兼容的内容帧：data:{"choices":[{"delta":{"content":"..."},"finish_reason":null}]}
+     */
+    public byte[] encodeChatContent(String content) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(DATA_PREFIX);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeFieldName(FIELD_CHOICES);
+            generator.writeStartArray();
+            generator.writeStartObject();
+            generator.writeFieldName(FIELD_DELTA);
+            generator.writeStartObject();
+            generator.writeFieldName(FIELD_CONTENT);
+            generator.writeString(content);
+            generator.writeEndObject();
+            generator.writeFieldName(FIELD_FINISH_REASON);
+            generator.writeNull();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 思考内容帧
+     */
+    public byte[] encodeThinking(String thinkingContent) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(THINKING_PREFIX);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            writeEnvelopeStart(generator, VALUE_THINKING);
+            generator.writeFieldName(FIELD_CONTENT);
+            generator.writeString(thinkingContent);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 文件编辑进度帧
+     */
+    public byte[] encodeFileEditProgress(String filePath, String content) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(EDIT_PROGRESS_PREFIX);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            writeEnvelopeStart(generator, VALUE_EDIT_PROGRESS);
+            generator.writeFieldName(FIELD_FILE_PATH);
+            generator.writeString(filePath);
+            generator.writeFieldName(FIELD_CONTENT);
+            generator.writeString(content);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 文件编辑增量帧：content 为从 offset（UTF-16 字符偏移）开始的片段
+     */
+    public byte[] encodeFileEditProgress(String filePath, String content, int offset) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(EDIT_PROGRESS_PREFIX);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            writeEnvelopeStart(generator, VALUE_EDIT_PROGRESS);
+            generator.writeFieldName(FIELD_FILE_PATH);
+            generator.writeString(filePath);
+            generator.writeFieldName(FIELD_CONTENT);
+            generator.writeString(content);
+            generator.writeFieldName(FIELD_OFFSET);
+            generator.writeNumber(offset);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 会话ID帧
+     */
+    public byte[] encodeConversationId(String conversationId) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(CONVERSATION_ID_PREFIX);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeFieldName(FIELD_CONVERSATION_ID);
+            generator.writeString(conversationId);
+            generator.writeEndObject();
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 通用命名事件帧
+     */
+    public byte[] encodeEvent(String eventName, Map<String, Object> data) throws IOException {
+        ByteArrayBuilder buffer = acquire();
+        buffer.write(eventPrefix(eventName));
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            objectMapper.writeValue(generator, data);
+        }
+        return finish(buffer);
+    }
+
+    /**
+     * 完成帧（常量）
+     */
+    public byte[] encodeComplete() {
+        return COMPLETE_FRAME;
+    }
+
+    /**
+     * 生成操作ID（单调递增，不保证全局唯一，仅用于区分同一节点内的事件）
+     */
+    public String nextOperationId() {
+        return idPrefix + Long.toString(idSequence.incrementAndGet(), 36);
+    }
+
+    /**
+     * 写入 {"event":..,"messageId":..,"operationId":..,"data":{"type":.., 并保持 data 对象未闭合
+     */
+    private void writeEnvelopeStart(JsonGenerator generator, SerializedString eventType) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(FIELD_EVENT);
+        generator.writeString(eventType);
+        generator.writeFieldName(FIELD_MESSAGE_ID);
+        generator.writeString(nextOperationId());
+        generator.writeFieldName(FIELD_OPERATION_ID);
+        generator.writeString(nextOperationId());
+        generator.writeFieldName(FIELD_DATA);
+        generator.writeStartObject();
+        generator.writeFieldName(FIELD_TYPE);
+        generator.writeString(eventType);
+    }
+
+    private ByteArrayBuilder acquire() {
+        ByteArrayBuilder buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    private byte[] finish(ByteArrayBuilder buffer) {
+        buffer.write(FRAME_END);
+        byte[] frame = buffer.toByteArray();
+        if (frame.length > MAX_RETAINED_BUFFER) {
+            buffers.remove();
+        } else {
+            buffer.reset();
+        }
+        return frame;
+    }
+
+    private static byte[] eventPrefix(String eventName) {
+        return ("event:" + eventName + "\ndata:").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,158 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import com.alibaba.cloud.ai.copilot.service.SseEventService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型输出 token 合并器
+ * <p>
+ * 每个 SseEmitter 维护一个缓冲区：首个 token 立即发送，之后的 token 先缓冲，
+ * 达到字符上限或合并窗口到期时一次性发送，减少 SSE 帧数和 flush 次数。
+ * </p>
+ * <p>
+ * 发送其他类型事件（工具事件、完成事件）前需先调用 {@link #flush}，保证输出顺序。
+ * </p>
+ */
+@Slf4j
+@Component
+public class TokenCoalescer {
+
+    private final SseEventService sseEventService;
+    private final ChatProperties chatProperties;
+    private final ScheduledExecutorService streamingScheduler;
+
+    private final Map<SseEmitter, Buffer> buffers = new ConcurrentHashMap<>();
+
+    public TokenCoalescer(SseEventService sseEventService, ChatProperties chatProperties,
+                          @Qualifier("streamingScheduler") ScheduledExecutorService streamingScheduler) {
+        this.sseEventService = sseEventService;
+        this.chatProperties = chatProperties;
+        this.streamingScheduler = streamingScheduler;
+    }
+
+    /**
+     * 追加正文内容
+     */
+    public void appendContent(SseEmitter emitter, String content) {
+        append(emitter, false, content);
+    }
+
+    /**
+     * 追加思考内容
+     */
+    public void appendThinking(SseEmitter emitter, String thinkingContent) {
+        append(emitter, true, thinkingContent);
+    }
+
+    /**
+     * 立即发送缓冲区中的内容
+     */
+    public void flush(SseEmitter emitter) {
+        Buffer buffer = buffers.get(emitter);
+        if (buffer == null) {
+            return;
+        }
+        synchronized (buffer) {
+            flushLocked(emitter, buffer);
+        }
+    }
+
+    /**
+     * 流结束：发送剩余内容并释放缓冲区
+     */
+    public void complete(SseEmitter emitter) {
+        flush(emitter);
+        discard(emitter);
+    }
+
+    /**
+     * 流被取消：丢弃缓冲区
+     */
+    public void discard(SseEmitter emitter) {
+        Buffer buffer = buffers.remove(emitter);
+        if (buffer == null) {
+            return;
+        }
+        synchronized (buffer) {
+            cancelScheduledFlush(buffer);
+            buffer.text.setLength(0);
+        }
+    }
+
+    private void append(SseEmitter emitter, boolean thinking, String text) {
+        ChatProperties.Streaming streaming = chatProperties.getStreaming();
+        if (!streaming.isCoalesceEnabled()) {
+            send(emitter, thinking, text);
+            return;
+        }
+
+        Buffer buffer = buffers.computeIfAbsent(emitter, e -> new Buffer());
+        synchronized (buffer) {
+            // 首个 token 立即发送，保证首字延迟不受合并窗口影响
+            if (!buffer.firstSent) {
+                buffer.firstSent = true;
+                send(emitter, thinking, text);
+                return;
+            }
+
+            // 内容类型切换时先发送已缓冲的另一种内容
+            if (buffer.text.length() > 0 && buffer.thinking != thinking) {
+                flushLocked(emitter, buffer);
+            }
+            buffer.thinking = thinking;
+            buffer.text.append(text);
+
+            if (buffer.text.length() >= streaming.getCoalesceMaxChars()) {
+                flushLocked(emitter, buffer);
+            } else if (buffer.scheduledFlush == null) {
+                buffer.scheduledFlush = streamingScheduler.schedule(
+                        () -> flush(emitter), streaming.getCoalesceWindowMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flushLocked(SseEmitter emitter, Buffer buffer) {
+        cancelScheduledFlush(buffer);
+        if (buffer.text.length() == 0) {
+            return;
+        }
+        String text = buffer.text.toString();
+        buffer.text.setLength(0);
+        send(emitter, buffer.thinking, text);
+    }
+
+    private void cancelScheduledFlush(Buffer buffer) {
+        if (buffer.scheduledFlush != null) {
+            buffer.scheduledFlush.cancel(false);
+            buffer.scheduledFlush = null;
+        }
+    }
+
+    private void send(SseEmitter emitter, boolean thinking, String text) {
+        if (thinking) {
+            sseEventService.sendThinkingContent(emitter, text);
+        } else {
+            sseEventService.sendChatContent(emitter, text);
+        }
+    }
+
+    /**
+     * 单个 SseEmitter 的合并缓冲区
+     */
+    private static class Buffer {
+        private final StringBuilder text = new StringBuilder();
+        private boolean thinking;
+        private boolean firstSent;
+        private ScheduledFuture<?> scheduledFlush;
+    }
+}
@@ -0,0 +1,50 @@
+package com.alibaba.cloud.ai.copilot.domain.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageCursorTest {
+
+    @Test
+    void encodeAndDecodeRoundTrip() {
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 5), 2010358791843348482L);
+
+        MessageCursor decoded = MessageCursor.decode(cursor.encode());
+
+        assertThat(decoded).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripKeepsFractionalSeconds() {
+        MessageCursor cursor = new MessageCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 5, 123_000_000), 7L);
+
+        assertThat(MessageCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new MessageCursor(LocalDateTime.of(2025, 12, 31, 23, 59, 59), Long.MAX_VALUE).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void blankCursorMeansFirstPage() {
+        assertThat(MessageCursor.decode(null)).isNull();
+        assertThat(MessageCursor.decode("")).isNull();
+        assertThat(MessageCursor.decode("  ")).isNull();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> MessageCursor.decode("not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("无效的游标");
+        assertThatThrownBy(() -> MessageCursor.decode("%%%"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,143 @@
+package com.alibaba.cloud.ai.copilot.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedAsyncCacheTest {
+
+    private final List<String> removals = new ArrayList<>();
+    private final BoundedAsyncCache.Listener<String> listener = new BoundedAsyncCache.Listener<>() {
+        @Override
+        public void onRemoval(String key, BoundedAsyncCache.RemovalCause cause) {
+            removals.add(key + ":" + cause);
+        }
+    };
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> 60_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("k", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "v";
+            }));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> second = executor.submit(() -> cache.get("k", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("v");
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotCached() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> 60_000);
+        cache.get("other", () -> "o");
+
+        String loaded = cache.get("k", () -> {
+            cache.invalidate("k");
+            return "stale";
+        });
+
+        assertThat(loaded).isEqualTo("stale");
+        assertThat(cache.get("k", () -> "fresh")).isEqualTo("fresh");
+        // 其他键的失效不影响加载结果
+        assertThat(cache.get("other", () -> "reloaded")).isEqualTo("o");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 2, () -> 60_000, listener);
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "a2");
+
+        cache.get("c", () -> "c");
+
+        assertThat(removals).containsExactly("b:SIZE");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("a", () -> "a3")).isEqualTo("a");
+    }
+
+    @Test
+    void expiredEntriesAreReloaded() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> -1, listener);
+        cache.get("k", () -> "v1");
+
+        assertThat(cache.get("k", () -> "v2")).isEqualTo("v2");
+        assertThat(removals).containsExactly("k:EXPIRED");
+    }
+
+    @Test
+    void updateReplacesTheValueAndNullRemovesIt() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> 60_000, listener);
+        cache.get("k", () -> "v");
+
+        cache.update("k", value -> value + "!");
+        assertThat(cache.get("k", () -> "reloaded")).isEqualTo("v!");
+
+        cache.update("k", value -> null);
+        assertThat(removals).containsExactly("k:INVALIDATED");
+        assertThat(cache.get("k", () -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    void removeIfSeesNullForEntriesStillLoading() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> 60_000);
+        cache.get("ready", () -> "r");
+        List<String> seen = new ArrayList<>();
+
+        cache.get("loading", () -> {
+            seen.addAll(cache.removeIf((key, value) -> value == null));
+            return "l";
+        });
+
+        assertThat(seen).containsExactly("loading");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void nullValuesAndFailuresAreNotCached() {
+        BoundedAsyncCache<String, String> cache = new BoundedAsyncCache<>(() -> 10, () -> 60_000);
+
+        assertThat(cache.get("k", () -> null)).isNull();
+        assertThatThrownBy(() -> cache.get("k", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("boom");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("k", () -> "v")).isEqualTo("v");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
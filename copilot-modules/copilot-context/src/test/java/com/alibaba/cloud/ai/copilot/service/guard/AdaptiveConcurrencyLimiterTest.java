@@ -0,0 +1,107 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void rejectsOnceTheLimitIsReached() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, 10);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+
+        limiter.release();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void droppedCallsShrinkTheLimitDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 20);
+
+        sample(limiter, 10, false, true);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        sample(limiter, 10, false, true);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        sample(limiter, 10, false, true);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void growsOnlyWhenConcurrencyIsNearTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 5);
+
+        // 并发 1，未达到上限的一半
+        sample(limiter, 10, false, false);
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        limiter.tryAcquire();
+        sample(limiter, 10, false, false);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+        sample(limiter, 10, false, false);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void latencySpikeAboveBaselineShrinksTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 20);
+
+        sample(limiter, 100, false, false);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        sample(limiter, 400, false, false);
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void streamingAndSyncBaselinesAreSeparate() {
+        AdaptiveConcurrencyLimiter limiter = limiter(10, 2, 20);
+        sample(limiter, 100, false, false);
+
+        // 首个流式样本只建立流式基线，不与同步基线比较
+        sample(limiter, 400, true, false);
+        assertThat(limiter.getLimit()).isEqualTo(10);
+
+        sample(limiter, 1000, false, false);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+    }
+
+    @Test
+    void releaseDoesNotAdjustTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 1, 10);
+        limiter.tryAcquire();
+
+        limiter.release();
+
+        assertThat(limiter.getLimit()).isEqualTo(4);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static void sample(AdaptiveConcurrencyLimiter limiter, long latencyMs, boolean streaming, boolean dropped) {
+        assertThat(limiter.tryAcquire()).isTrue();
+        limiter.onSample(TimeUnit.MILLISECONDS.toNanos(latencyMs), streaming, dropped);
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit) {
+        ChatProperties.ConcurrencyLimit config = new ChatProperties.ConcurrencyLimit();
+        config.setInitialLimit(initialLimit);
+        config.setMinLimit(minLimit);
+        config.setMaxLimit(maxLimit);
+        config.setBackoffRatio(0.5);
+        config.setLatencySpikeRatio(3.0);
+        config.setLatencyAlpha(0.1);
+        return new AdaptiveConcurrencyLimiter(config);
+    }
+}
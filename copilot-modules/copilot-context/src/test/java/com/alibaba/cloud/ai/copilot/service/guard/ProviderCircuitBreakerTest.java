@@ -0,0 +1,118 @@
+package com.alibaba.cloud.ai.copilot.service.guard;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProviderCircuitBreakerTest {
+
+    @Test
+    void opensWhenFailureRateReachesThresholdAfterMinimumCalls() {
+        ProviderCircuitBreaker breaker = breaker(10, 4, 60_000, 1);
+
+        call(breaker, false);
+        call(breaker, true);
+        call(breaker, true);
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+
+        call(breaker, false);
+
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(ProviderCircuitBreaker.REJECTED);
+        assertThat(breaker.remainingOpenMs()).isPositive();
+    }
+
+    @Test
+    void failureRateIsComputedOverTheSlidingWindow() {
+        ProviderCircuitBreaker breaker = breaker(4, 4, 60_000, 1);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false);
+        }
+
+        // 累计失败率为 2/6，但最近 4 次中有 2 次失败
+        call(breaker, true);
+        call(breaker, true);
+
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpenClosesAfterAllProbesSucceed() {
+        ProviderCircuitBreaker breaker = openBreaker(2);
+
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(ProviderCircuitBreaker.REJECTED);
+
+        breaker.onResult(first, false);
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.HALF_OPEN);
+        breaker.onResult(second, false);
+
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+        assertThat(breaker.remainingOpenMs()).isZero();
+    }
+
+    @Test
+    void halfOpenProbeFailureReopens() {
+        ProviderCircuitBreaker breaker = openBreaker(2);
+
+        breaker.onResult(breaker.tryAcquire(), true);
+
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void cancelledProbeReturnsItsPermit() {
+        ProviderCircuitBreaker breaker = openBreaker(1);
+
+        long probe = breaker.tryAcquire();
+        assertThat(breaker.tryAcquire()).isEqualTo(ProviderCircuitBreaker.REJECTED);
+        breaker.onCancel(probe);
+
+        assertThat(breaker.tryAcquire()).isEqualTo(probe);
+    }
+
+    @Test
+    void resultsFromAnEarlierStateAreIgnored() {
+        ProviderCircuitBreaker breaker = breaker(4, 2, 0, 1);
+        long stale = breaker.tryAcquire();
+        call(breaker, true);
+        call(breaker, true);
+        long probe = breaker.tryAcquire();
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.HALF_OPEN);
+
+        breaker.onResult(stale, true);
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.HALF_OPEN);
+
+        breaker.onResult(probe, false);
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * 打开后立即可以进入半开状态的熔断器
+     */
+    private static ProviderCircuitBreaker openBreaker(int halfOpenPermits) {
+        ProviderCircuitBreaker breaker = breaker(4, 2, 0, halfOpenPermits);
+        call(breaker, true);
+        call(breaker, true);
+        assertThat(breaker.getState()).isEqualTo(ProviderCircuitBreaker.State.OPEN);
+        return breaker;
+    }
+
+    private static void call(ProviderCircuitBreaker breaker, boolean failure) {
+        breaker.onResult(breaker.tryAcquire(), failure);
+    }
+
+    private static ProviderCircuitBreaker breaker(int windowSize, int minimumCalls, long openDurationMs,
+                                                  int halfOpenPermits) {
+        ChatProperties.CircuitBreaker config = new ChatProperties.CircuitBreaker();
+        config.setWindowSize(windowSize);
+        config.setMinimumCalls(minimumCalls);
+        config.setFailureRateThreshold(50);
+        config.setOpenDurationMs(openDurationMs);
+        config.setHalfOpenPermits(halfOpenPermits);
+        return new ProviderCircuitBreaker("test@default", config);
+    }
+}
@@ -0,0 +1,138 @@
+package com.alibaba.cloud.ai.copilot.service.message;
+
+import com.alibaba.cloud.ai.copilot.domain.entity.ChatMessageEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMessageConverterTest {
+
+    private final ChatMessageConverter converter = new ChatMessageConverter();
+
+    @Test
+    void completeChainIsKept() {
+        List<Message> messages = List.of(
+                new UserMessage("读取 App.vue"),
+                toolCalls("call_1", "call_2"),
+                toolResponse("call_1"),
+                toolResponse("call_2"),
+                new AssistantMessage("完成"));
+
+        assertThat(converter.validateAndFixToolCallChain(messages)).containsExactlyElementsOf(messages);
+    }
+
+    @Test
+    void chainWithMissingResponseLosesToolCallsAndItsPartialResponses() {
+        List<Message> messages = List.of(
+                new UserMessage("写入文件"),
+                toolCalls("call_1", "call_2"),
+                toolResponse("call_1"),
+                new UserMessage("继续"));
+
+        List<Message> fixed = converter.validateAndFixToolCallChain(messages);
+
+        assertThat(fixed).hasSize(3);
+        assertThat(fixed.get(1)).isInstanceOf(AssistantMessage.class);
+        AssistantMessage assistant = (AssistantMessage) fixed.get(1);
+        assertThat(assistant.getToolCalls()).isEmpty();
+        assertThat(assistant.getText()).isEqualTo("调用工具");
+        assertThat(fixed.get(2)).isSameAs(messages.get(3));
+    }
+
+    @Test
+    void orphanToolResponseIsDropped() {
+        List<Message> messages = List.of(
+                new UserMessage("你好"),
+                toolResponse("call_x"),
+                new AssistantMessage("你好"));
+
+        assertThat(converter.validateAndFixToolCallChain(messages))
+                .containsExactly(messages.get(0), messages.get(2));
+    }
+
+    @Test
+    void chainEndsAtTheLastMatchingResponse() {
+        Message interleaved = new AssistantMessage("处理中");
+        List<Message> messages = List.of(
+                toolCalls("call_1", "call_2"),
+                toolResponse("call_1"),
+                interleaved,
+                toolResponse("call_2"),
+                toolCalls("call_3"),
+                toolResponse("call_3"));
+
+        assertThat(converter.validateAndFixToolCallChain(messages)).containsExactlyElementsOf(messages);
+    }
+
+    @Test
+    void responseOnlyMatchesLaterToolCalls() {
+        // call_1 的响应出现在助手消息之前，不能算作这条助手消息的调用链
+        List<Message> messages = List.of(
+                toolResponse("call_1"),
+                toolCalls("call_1"));
+
+        List<Message> fixed = converter.validateAndFixToolCallChain(messages);
+
+        assertThat(fixed).hasSize(1);
+        assertThat(((AssistantMessage) fixed.get(0)).getToolCalls()).isEmpty();
+    }
+
+    @Test
+    void convertRestoresToolCallsAndResponses() {
+        ChatMessageEntity assistant = entity("assistant", "",
+                "{\"hasToolCalls\":true,\"toolCalls\":[{\"id\":\"call_1\",\"type\":\"function\","
+                        + "\"name\":\"read_file\",\"arguments\":\"{\\\"path\\\":\\\"src/App.vue\\\"}\"}]}");
+        ChatMessageEntity tool = entity("tool", "<template/>",
+                "{\"toolCallId\":\"call_1\",\"toolName\":\"read_file\",\"other\":1}");
+
+        AssistantMessage restored = (AssistantMessage) converter.convert(assistant);
+        ToolResponseMessage response = (ToolResponseMessage) converter.convert(tool);
+
+        assertThat(restored.getToolCalls()).singleElement().satisfies(toolCall -> {
+            assertThat(toolCall.id()).isEqualTo("call_1");
+            assertThat(toolCall.name()).isEqualTo("read_file");
+            assertThat(toolCall.arguments()).isEqualTo("{\"path\":\"src/App.vue\"}");
+        });
+        assertThat(response.getResponses()).singleElement().satisfies(toolResponse -> {
+            assertThat(toolResponse.id()).isEqualTo("call_1");
+            assertThat(toolResponse.responseData()).isEqualTo("<template/>");
+        });
+        assertThat(converter.validateAndFixToolCallChain(List.of(restored, response))).hasSize(2);
+    }
+
+    @Test
+    void toolMessageWithoutMetadataIsSkipped() {
+        assertThat(converter.convert(entity("tool", "ok", null))).isNull();
+    }
+
+    private static AssistantMessage toolCalls(String... ids) {
+        return AssistantMessage.builder()
+                .content("调用工具")
+                .toolCalls(Arrays.stream(ids)
+                        .map(id -> new AssistantMessage.ToolCall(id, "function", "read_file", "{}"))
+                        .toList())
+                .build();
+    }
+
+    private static ToolResponseMessage toolResponse(String id) {
+        return ToolResponseMessage.builder()
+                .responses(List.of(new ToolResponseMessage.ToolResponse(id, "read_file", "ok")))
+                .build();
+    }
+
+    private static ChatMessageEntity entity(String role, String content, String metadata) {
+        ChatMessageEntity entity = new ChatMessageEntity();
+        entity.setMessageId(role + "-1");
+        entity.setRole(role);
+        entity.setContent(content);
+        entity.setMetadata(metadata);
+        return entity;
+    }
+}
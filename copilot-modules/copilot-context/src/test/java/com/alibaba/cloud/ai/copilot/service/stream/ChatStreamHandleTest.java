@@ -0,0 +1,123 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatStreamHandleTest {
+
+    @Test
+    void finishWinsOverLaterCancel() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+
+        assertThat(handle.markFinished()).isTrue();
+        assertThat(handle.cancel()).isFalse();
+        assertThat(handle.getState()).isEqualTo(ChatStreamHandle.FINISHED);
+        assertThat(handle.isCancelled()).isFalse();
+    }
+
+    @Test
+    void cancelWinsOverLaterFinish() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+
+        assertThat(handle.cancel()).isTrue();
+        assertThat(handle.markFinished()).isFalse();
+        assertThat(handle.cancel()).isFalse();
+        assertThat(handle.getState()).isEqualTo(ChatStreamHandle.CANCELLED);
+        assertThat(handle.getCancelledAt()).isPositive();
+    }
+
+    @Test
+    void cancelDisposesBoundSubscription() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+        AtomicBoolean disposed = new AtomicBoolean();
+        handle.bind(() -> disposed.set(true));
+
+        handle.cancel();
+
+        assertThat(disposed).isTrue();
+    }
+
+    @Test
+    void bindAfterCancelDisposesImmediately() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+        handle.cancel();
+        AtomicBoolean disposed = new AtomicBoolean();
+
+        handle.bind(() -> disposed.set(true));
+
+        assertThat(disposed).isTrue();
+    }
+
+    @Test
+    void cancelInterruptsOnlyRegisteredToolThreads() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+        assertThat(handle.enterTool()).isTrue();
+
+        handle.cancel();
+        assertThat(Thread.currentThread().isInterrupted()).isTrue();
+
+        // 退出工具时清除中断标记，之后也不会再被中断
+        handle.exitTool();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        handle.cancel();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    void enterToolAfterCancelIsRejected() {
+        ChatStreamHandle handle = new ChatStreamHandle("s1", Tags.empty());
+        handle.cancel();
+
+        assertThat(handle.enterTool()).isFalse();
+        assertThat(Thread.currentThread().isInterrupted()).isFalse();
+    }
+
+    @Test
+    void concurrentFinishAndCancelTransitionExactlyOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2000; i++) {
+                ChatStreamHandle handle = new ChatStreamHandle("s" + i, Tags.empty());
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                Future<Boolean> finished = executor.submit(() -> {
+                    barrier.await();
+                    return handle.markFinished();
+                });
+                Future<Boolean> cancelled = executor.submit(() -> {
+                    barrier.await();
+                    return handle.cancel();
+                });
+
+                assertThat(finished.get() ^ cancelled.get()).isTrue();
+                assertThat(handle.getState())
+                        .isEqualTo(finished.get() ? ChatStreamHandle.FINISHED : ChatStreamHandle.CANCELLED);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void registryDecrementsInflightOnce() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ChatStreamRegistry registry = new ChatStreamRegistry(meterRegistry);
+        ChatStreamHandle handle = registry.register("s1", Tags.empty());
+
+        registry.cancel(handle, "completion");
+        registry.finish(handle);
+        registry.cancel(handle, "error");
+
+        assertThat(meterRegistry.get("copilot.chat.streams.inflight").gauge().value()).isZero();
+        assertThat(meterRegistry.get("copilot.chat.stream.cancelled").counter().count()).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,105 @@
+package com.alibaba.cloud.ai.copilot.service.stream;
+
+import com.alibaba.cloud.ai.copilot.config.ChatProperties;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatStreamSessionManagerTest {
+
+    private final ChatProperties chatProperties = new ChatProperties();
+    private final ChatStreamRegistry registry = new ChatStreamRegistry(new SimpleMeterRegistry());
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ChatStreamSessionManager manager = new ChatStreamSessionManager(chatProperties, registry,
+            new ChatStreamRelay(chatProperties), scheduler);
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void resumedClientReceivesLiveFramesAfterTheRequestClientDisconnects() {
+        ChatStreamHandle handle = registry.register("c1:s1", Tags.empty());
+        RecordingEmitter producer = new RecordingEmitter();
+        manager.open("c1", producer, handle);
+        assertThat(manager.publish(producer, frame("a"))).isTrue();
+
+        producer.failing = true;
+        manager.detach(producer, "error");
+        assertThat(manager.publish(producer, frame("b"))).isTrue();
+
+        RecordingEmitter viewer = new RecordingEmitter();
+        manager.resume("c1", 1, viewer);
+        assertThat(manager.publish(producer, frame("c"))).isTrue();
+        assertThat(manager.complete(producer, frame("done"))).isTrue();
+
+        assertThat(viewer.frames).containsExactly("id:2\ndata:b\n\n", "id:3\ndata:c\n\n", "id:4\ndata:done\n\n");
+        assertThat(viewer.completed).isTrue();
+        assertThat(producer.frames).containsExactly("id:1\ndata:a\n\n");
+        assertThat(handle.isCancelled()).isFalse();
+    }
+
+    @Test
+    void openingASecondStreamCancelsTheRunningOne() {
+        ChatStreamHandle first = registry.register("c1:s1", Tags.empty());
+        RecordingEmitter firstEmitter = new RecordingEmitter();
+        manager.open("c1", firstEmitter, first);
+        manager.publish(firstEmitter, frame("a"));
+
+        ChatStreamHandle second = registry.register("c1:s2", Tags.empty());
+        RecordingEmitter secondEmitter = new RecordingEmitter();
+        manager.open("c1", secondEmitter, second);
+
+        assertThat(first.isCancelled()).isTrue();
+        assertThat(firstEmitter.completed).isTrue();
+        assertThat(manager.publish(firstEmitter, frame("late"))).isFalse();
+
+        manager.publish(secondEmitter, frame("x"));
+        RecordingEmitter viewer = new RecordingEmitter();
+        manager.resume("c1", 0, viewer);
+        assertThat(viewer.frames).containsExactly("id:1\ndata:x\n\n");
+        assertThat(second.isCancelled()).isFalse();
+    }
+
+    private static byte[] frame(String data) {
+        return ("data:" + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录写入的帧，failing 为 true 时模拟客户端已断开
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<String> frames = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+        private volatile boolean completed;
+
+        @Override
+        public void send(Set<DataWithMediaType> items) throws IOException {
+            if (failing) {
+                throw new IOException("client disconnected");
+            }
+            for (DataWithMediaType item : items) {
+                frames.add(new String((byte[]) item.getData(), StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+}
@@ -22,6 +22,12 @@ export interface PageResult<T> {
   size: number;
 }
 
+export interface CursorPage<T> {
+  records: T[];
+  nextCursor?: string | null;
+  hasMore: boolean;
+}
+
 export interface ChatMessage {
   role: string;
   content: string;
@@ -114,13 +120,19 @@ export const getConversation = async (
 };
 
 /**
- * 获取会话历史消息
+ * 获取会话消息（游标分页，从最新的消息往前翻页）
  */
-export const getConversationMessages = async (
-  conversationId: string
-): Promise<ChatMessage[]> => {
+export const getConversationMessagePage = async (
+  conversationId: string,
+  cursor?: string | null,
+  size = 50
+): Promise<CursorPage<ChatMessage>> => {
+  const params = new URLSearchParams({ size: String(size) });
+  if (cursor) {
+    params.set("cursor", cursor);
+  }
   const response = await fetch(
-    apiUrl(`/api/chat/conversations/${conversationId}/messages`),
+    apiUrl(`/api/chat/conversations/${conversationId}/messages?${params.toString()}`),
     {
       method: "GET",
       headers: {
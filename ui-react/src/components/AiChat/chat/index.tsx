@@ -28,7 +28,7 @@ import useMCPTools from "@/hooks/useMCPTools";
 import {FileSystemStatus} from "./components/FileSystemStatus";
 import {handleFileSystemEvent, isFileSystemEvent} from "../utils/fileSystemEventHandler";
 import {useConversationStore} from "@/stores/conversationSlice";
-import {getConversationMessages} from "@/api/conversation";
+import {ChatMessage as HistoryMessage, getConversationMessagePage} from "@/api/conversation";
 
 type WeMessages = (Message & {
     experimental_attachments?: Array<{
@@ -66,6 +66,28 @@ export const excludeFiles = [
 
 // 统一通过 apiUrl 构造请求地址，避免 APP_BASE_URL 未配置导致的 undefined 前缀
 
+// 会话历史每页条数（滚动到顶部时继续加载更早的一页）
+const HISTORY_PAGE_SIZE = 50;
+
+// 转换为 useChat 期望的格式
+const toWeMessages = (records: HistoryMessage[]): WeMessages =>
+    records
+        .filter((msg) => (msg.role === "user" || msg.role === "assistant") && !!msg.content?.trim())
+        .map((msg) => ({
+            id: uuidv4(),
+            role: msg.role as "user" | "assistant",
+            content: msg.content,
+        }));
+
+const parseHistoryFiles = (messages: WeMessages) => {
+    const historyFiles: Record<string, string> = {};
+    messages.forEach((message) => {
+        const {files: messageFiles} = parseMessage(message.content);
+        Object.assign(historyFiles, messageFiles);
+    });
+    return historyFiles;
+};
+
 enum ModelTypes {
     Claude37sonnet = "claude-3-7-sonnet-20250219",
     Claude35sonnet = "claude-3-5-sonnet-20240620",
@@ -103,6 +125,10 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
     const [checkCount, setCheckCount] = useState(0);
     // 切换会话/加载历史后，等消息真正渲染完成再滚动到底部（展示最新一条）
     const pendingScrollToBottomRef = useRef(false);
+    // 会话历史分页：更早一页的游标、是否正在加载、游标所属会话
+    const historyCursorRef = useRef<string | null>(null);
+    const loadingOlderRef = useRef(false);
+    const historyConversationRef = useRef<string | null>(null);
 
     const [baseModal, setBaseModal] = useState<IModelOption>({
         key: ModelTypes.Claude35sonnet,
@@ -369,27 +395,20 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
     // 加载会话历史消息（新版本）
     const loadConversationHistory = async (conversationId: string) => {
         try {
-            const historyMessages = await getConversationMessages(conversationId);
-            if (historyMessages.length > 0) {
-                // 转换为 useChat 期望的格式
-                const formattedMessages: WeMessages = historyMessages
-                    .filter((msg) => (msg.role === "user" || msg.role === "assistant") && !!msg.content?.trim())
-                    .map((msg) => ({
-                        id: uuidv4(),
-                        role: msg.role as "user" | "assistant",
-                        content: msg.content,
-                    }));
-
-                // 解析文件
-                const historyFiles = {};
-                formattedMessages.forEach((message) => {
-                    const {files: messageFiles} = parseMessage(message.content);
-                    Object.assign(historyFiles, messageFiles);
-                });
+            // 只加载最新一页，更早的消息在滚动到顶部时加载
+            historyConversationRef.current = conversationId;
+            historyCursorRef.current = null;
+            const page = await getConversationMessagePage(conversationId, null, HISTORY_PAGE_SIZE);
+            if (historyConversationRef.current !== conversationId) {
+                return;
+            }
+            historyCursorRef.current = page.hasMore ? page.nextCursor ?? null : null;
+            if (page.records.length > 0) {
+                const formattedMessages = toWeMessages(page.records);
 
                 pendingScrollToBottomRef.current = true;
                 setMessages(formattedMessages);
-                setFiles(historyFiles);
+                setFiles(parseHistoryFiles(formattedMessages));
                 clearImages();
                 setIsFirstSend();
                 setIsUpdateSend();
@@ -407,6 +426,40 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
         }
     };
 
+    // 加载更早的一页会话历史，插入到列表顶部并保持当前的滚动位置
+    const loadOlderMessages = async (container: HTMLDivElement) => {
+        const conversationId = historyConversationRef.current;
+        const cursor = historyCursorRef.current;
+        if (!conversationId || !cursor || loadingOlderRef.current || conversationId !== currentConversationId) {
+            return;
+        }
+        loadingOlderRef.current = true;
+        try {
+            const page = await getConversationMessagePage(conversationId, cursor, HISTORY_PAGE_SIZE);
+            if (historyConversationRef.current !== conversationId) {
+                return;
+            }
+            historyCursorRef.current = page.hasMore ? page.nextCursor ?? null : null;
+            const olderMessages = toWeMessages(page.records);
+            if (olderMessages.length === 0) {
+                return;
+            }
+            const previousHeight = container.scrollHeight;
+            const previousTop = container.scrollTop;
+            setMessages((current) => [...olderMessages, ...current]);
+            // 更早消息中的文件只补充当前没有的路径，较新的内容优先
+            setFiles({...parseHistoryFiles(olderMessages), ...useFileStore.getState().files});
+            requestAnimationFrame(() => {
+                container.scrollTop = container.scrollHeight - previousHeight + previousTop;
+            });
+        } catch (error) {
+            console.error("加载更早的会话历史失败:", error);
+            toast.error("加载会话历史失败");
+        } finally {
+            loadingOlderRef.current = false;
+        }
+    };
+
     // 监听会话切换事件
     useEffect(() => {
         if (currentConversationId) {
@@ -415,6 +468,8 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
             refUuidMessages.current = [];
         } else {
             // 如果没有选中会话，清空消息
+            historyConversationRef.current = null;
+            historyCursorRef.current = null;
             setMessages([]);
             setFiles({});
             clearImages();
@@ -476,6 +531,23 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
         setMcpTools([])
     }, [enabledMCPs])
 
+    // 服务端 error 事件（模型端点熔断或并发已满）：data 为 {code, message, retryAfterMs}
+    const showStreamError = (data: string) => {
+        let message = '';
+        let retryAfterMs = 0;
+        try {
+            const parsed = JSON.parse(data);
+            message = parsed?.message || '';
+            retryAfterMs = Number(parsed?.retryAfterMs) || 0;
+        } catch (e) {
+            console.debug('Failed to parse SSE error event:', e, data);
+        }
+        message = message || t("chat.errors.model_unavailable");
+        toast.error(retryAfterMs > 0
+            ? t("chat.errors.model_retry_after", {message, seconds: Math.ceil(retryAfterMs / 1000)})
+            : message);
+    };
+
     // 自定义 fetch 函数来处理 SSE 流数据
     const customFetch = async (url: string, options: any) => {
         try {
@@ -558,6 +630,14 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
                                         currentEvent = line.slice(6).trim();
                                     } else if (line.startsWith('data:')) {
                                         currentData = line.slice(5).trimStart();
+                                        // 每个命名事件只有一行 data，空行已被过滤，读完后清空事件名
+                                        const eventName = currentEvent;
+                                        currentEvent = '';
+
+                                        if (eventName === 'error') {
+                                            showStreamError(currentData);
+                                            continue;
+                                        }
 
                                         if (currentData === '[DONE]') {
                                             // transformedText += 'data: [DONE]\n\n';
@@ -832,6 +912,10 @@ export const BaseChat = ({uuid: propUuid}: { uuid?: string }) => {
     // 处理用户滚动
     const handleScroll = (e: React.UIEvent<HTMLDivElement>) => {
         const target = e.target as HTMLDivElement
+        if (target.scrollTop < 80 && historyCursorRef.current) {
+            // 接近顶部时加载更早的会话历史
+            loadOlderMessages(target)
+        }
         const isScrolledToBottom = Math.abs(target.scrollHeight - target.scrollTop - target.clientHeight) < 10
 
         if (!isScrolledToBottom) {
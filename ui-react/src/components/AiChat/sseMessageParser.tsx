@@ -43,6 +43,7 @@ export interface FileOperationData extends BaseOperationData {
   filePath: string;
   encoding?: string;
   mode?: string;
+  offset?: number;         // 增量片段在文件中的偏移量（edit-progress）
 }
 
 export interface CommandOperationData extends BaseOperationData {
@@ -105,9 +105,11 @@ const sseMessageParser = new SSEMessageParser({
       const processedPath = extractFilePath(fileData.filePath);
       console.log('[SSE] 文件添加进度:', fileData.filePath, '->', processedPath, fileData.content?.length);
 
-      // 获取当前文件内容并追加新内容
+      // 获取当前文件内容，按偏移量拼接增量片段（重放的帧不会重复追加）
       const currentContent = useFileStore.getState().files[processedPath] || '';
-      const newContent = currentContent + (fileData.content || '');
+      const newContent = fileData.offset !== undefined
+        ? currentContent.slice(0, fileData.offset) + (fileData.content || '')
+        : currentContent + (fileData.content || '');
 
       // 更新文件内容
       await useFileStore.getState().updateContent(processedPath, newContent, false, true);